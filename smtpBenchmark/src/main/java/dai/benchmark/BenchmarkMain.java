@@ -0,0 +1,25 @@
+package dai.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lance les benchmarks avec le profileur GC : chaque résultat donne, en plus du temps,
+ * le débit d'allocation et le nombre d'octets alloués par opération (gc.alloc.rate.norm).
+ * <p>
+ * Accepte les options habituelles de JMH, par exemple un filtre : {@code java -jar target/benchmarks.jar Content}.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package dai.benchmark;
+
+import dai.config.Configuration;
+import dai.model.AddressStore;
+import dai.model.Group;
+import dai.model.GroupGenerator;
+import dai.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Préparation d'une campagne sur des entrées générées : chargement et validation de la configuration,
+ * puis formation des groupes, pour plusieurs nombres de victimes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CampaignBenchmark {
+    private static final List<Message> MESSAGES = List.of(new Message("Sujet", "Corps"), new Message("Été", "Ça gèle"));
+
+    @Param({"10000", "1000000"})
+    private int victimCount;
+
+    private Path directory;
+    private Path configFile;
+    private AddressStore victims;
+    private int numberOfGroups;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Les journaux d'information de la configuration fausseraient les mesures
+        Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+        directory = Files.createTempDirectory("smtp-benchmark");
+        Path emailsFile = directory.resolve("emails.txt");
+        victims = new AddressStore(victimCount);
+        try (BufferedWriter writer = Files.newBufferedWriter(emailsFile)) {
+            for (int i = 0; i < victimCount; i++) {
+                String address = "victim" + i + "@example" + (i % 97) + ".com";
+                writer.write(address);
+                writer.newLine();
+                victims.add(address);
+            }
+        }
+        numberOfGroups = victimCount / 5;
+        configFile = directory.resolve("config.json");
+        Files.writeString(configFile, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": " + numberOfGroups
+                + ", \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 5, \"seed\": 1,"
+                + " \"emailsFile\": \"emails.txt\", \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"}]}");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(configFile);
+        Files.deleteIfExists(directory.resolve("emails.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Configuration loadConfiguration() throws Exception {
+        return new Configuration(configFile.toString());
+    }
+
+    @Benchmark
+    public List<Group> createGroups() {
+        return Group.createGroups(2, 5, numberOfGroups, victims, MESSAGES);
+    }
+
+    /**
+     * Formation paresseuse des groupes, telle que faite à l'envoi : chaque groupe est consommé aussitôt.
+     */
+    @Benchmark
+    public void generateGroups(Blackhole blackhole) {
+        GroupGenerator generator = new GroupGenerator(victims, MESSAGES, numberOfGroups, 2, 5, 1);
+        while (generator.hasNext()) {
+            blackhole.consume(generator.next());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package dai.benchmark;
+
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.SMTPClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mise en forme du contenu des messages : encodage base64, construction complète du message
+ * et écriture en flux par le cache des messages encodés, pour plusieurs tailles de corps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentBenchmark {
+    private static final List<String> RECIPIENTS = List.of("alice@example.com", "bob@example.com", "claire@example.com");
+
+    @Param({"100", "10000", "1000000"})
+    private int bodySize;
+
+    @Param({"ascii", "accents", "emoji"})
+    private String charset;
+
+    private SMTPClient client;
+    private String subject;
+    private String body;
+    private Email email;
+
+    @Setup
+    public void setUp() {
+        String pattern = switch (charset) {
+            case "accents" -> "Déjà vu à l'été, ça gèle ! ";
+            case "emoji" -> "Salut 😀 你好 ";
+            default -> "The quick brown fox jumps. ";
+        };
+        StringBuilder sb = new StringBuilder(bodySize + pattern.length());
+        while (sb.length() < bodySize) {
+            sb.append(pattern);
+        }
+        body = sb.substring(0, bodySize);
+        subject = pattern.strip();
+        client = new SMTPClient("localhost", 25);
+        email = new Email("sender@example.com", RECIPIENTS, new Message(subject, body));
+    }
+
+    @Benchmark
+    public String encodeBase64() {
+        return client.encodeBase64(body);
+    }
+
+    @Benchmark
+    public String prepareContent() {
+        return client.prepareContent("sender@example.com", RECIPIENTS, subject, body);
+    }
+
+    /**
+     * Écriture du contenu telle que faite à l'envoi : le corps encodé vient du cache, seuls les en-têtes sont construits.
+     */
+    @Benchmark
+    public void writeContent() throws IOException {
+        client.writeContent(email, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,71 @@
+package dai.benchmark;
+
+import dai.network.SmtpReply;
+import dai.network.SmtpReplyParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture des réponses du serveur comme le fait le client bloquant : la réponse multiligne à EHLO,
+ * puis les réponses d'un lot d'enveloppe envoyé avec PIPELINING, lues d'un même flux.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplyParserBenchmark {
+    private static final String EHLO = "250-mail.example.com Hello client\r\n250-PIPELINING\r\n250-SIZE 35882577\r\n"
+            + "250-8BITMIME\r\n250-CHUNKING\r\n250-ENHANCEDSTATUSCODES\r\n250 SMTPUTF8\r\n";
+
+    @Param({"1", "10", "100"})
+    private int recipients;
+
+    private final SmtpReplyParser parser = new SmtpReplyParser();
+    private final SmtpReply reply = new SmtpReply();
+    private ByteArrayInputStream ehlo;
+    private ByteArrayInputStream envelope;
+    private int envelopeReplies;
+
+    @Setup
+    public void setUp() {
+        ehlo = new ByteArrayInputStream(EHLO.getBytes(StandardCharsets.US_ASCII));
+        StringBuilder sb = new StringBuilder("250 2.1.0 Sender ok\r\n");
+        for (int i = 0; i < recipients; i++) {
+            sb.append(i % 10 == 9 ? "550 5.1.1 <user@example.com>: Recipient address rejected\r\n" : "250 2.1.5 Recipient ok\r\n");
+        }
+        sb.append("354 End data with <CR><LF>.<CR><LF>\r\n");
+        envelope = new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        envelopeReplies = recipients + 2;
+    }
+
+    @Benchmark
+    public boolean ehlo() throws IOException {
+        ehlo.reset();
+        return parser.read(ehlo, reply).hasKeyword("CHUNKING");
+    }
+
+    @Benchmark
+    public void pipelinedEnvelope(Blackhole blackhole) throws IOException {
+        envelope.reset();
+        for (int i = 0; i < envelopeReplies; i++) {
+            blackhole.consume(parser.read(envelope, reply).isPositive());
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package dai;
 
 import dai.*;
+import dai.config.AddressFileFollower;
 import dai.config.Configuration;
-import dai.model.Group;
-import dai.network.SMTPClient;
-import java.util.List;
+import dai.journal.SendJournal;
+import dai.metrics.SmtpMetrics;
+import dai.model.GroupGenerator;
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.CampaignReport;
+import dai.dispatch.DomainQueues;
+import dai.dispatch.EmailSource;
+import dai.dispatch.NioCampaignDispatcher;
+import dai.dispatch.OutcomeListener;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.dispatch.SendOutcome;
+import java.util.Iterator;
 import dai.model.Email;
 
 public class Main {
@@ -29,23 +41,81 @@ public class Main {
         try {
             // Configuration et préparation du client SMTP
             Configuration config = new Configuration(args[0]);
-            SMTPClient client = new SMTPClient(config.getSmtpHost(), config.getSmtpPort());
-
-            // Création des groupes d'emails
-            List<Group> groups = Group.createGroups(config.getMinNumberOfEmailsPerGroup(), config.getMaxNumberOfEmailsPerGroup(), config.getNumberOfGroups(), config.getVictims(), config.getMessages());
-            // Vérification de la formation des groupes
-
-            if(groups == null) {
-                exitWithError("Error: not enough victims to create groups");
-            }else{
-                // Envoi des emails
-                List<Email> emailList = Email.createEmails(groups);
-                client.connect();
-                for (Email e : emailList ) {
-                    client.sendGroupEmail(e);
+            SmtpMetrics.getInstance().registerMBeans();
+
+            // Journal d'envoi : reprend la graine d'une campagne interrompue et saute les e-mails déjà livrés
+            SendJournal journal = null;
+            long seed = config.getSeed();
+            if (config.getJournalPath() != null) {
+                journal = SendJournal.open(config.getJournalPath(), seed, config.getCampaignFingerprint());
+                seed = journal.getSeed();
+            }
+
+            // Les groupes et les e-mails sont produits au fil de l'envoi
+            Iterator<Email> emails = null;
+            AddressFileFollower follower = null;
+            if (config.getFollowedEmailsFile() != null) {
+                // Les adresses ajoutées au fichier pendant l'envoi sont validées et groupées à leur arrivée
+                follower = new AddressFileFollower(config.getFollowedEmailsFile(), config.getMessages(),
+                        config.getNumberOfGroups(), config.getMinNumberOfEmailsPerGroup(),
+                        config.getMaxNumberOfEmailsPerGroup(), seed, config.getFollowIdleMs()).start();
+            } else {
+                GroupGenerator groups = new GroupGenerator(config.getAddressStore(), config.getMessages(), config.getNumberOfGroups(),
+                        config.getMinNumberOfEmailsPerGroup(), config.getMaxNumberOfEmailsPerGroup(), seed);
+                emails = Email.createEmails(groups);
+            }
+            OutcomeListener listener = outcome -> { };
+            if (journal != null) {
+                SendJournal sendJournal = journal;
+                emails = sendJournal.skipDelivered(emails);
+                listener = outcome -> sendJournal.record(outcome.getEmail().getId(),
+                        outcome.getResult() != null ? outcome.getResult().getFinalReplyCode() : 0,
+                        outcome.getFailureReason(), outcome.isDelivered());
+                if (journal.getDeliveredCount() > 0) {
+                    System.out.println("Resuming campaign: " + journal.getDeliveredCount() + " emails already delivered");
+                }
+            }
+
+            // Envoi des emails
+            // Les échecs temporaires (4xx, connexion perdue) sont retentés plus tard, les échecs définitifs sont signalés
+            RetryScheduler retries = new RetryScheduler(config.getMaxRetries(), config.getRetryDelayMs(), config.getMaxRetryDelayMs());
+            CampaignReport report;
+            try {
+                if (config.isNonBlockingEngine()) {
+                    report = new NioCampaignDispatcher(config.getRelays(), config.getNumberOfConnections(), retries, config.getTimeouts())
+                            .dispatch(emails, listener);
+                } else {
+                    // Le nombre de transactions simultanées et le débit s'adaptent aux réponses du serveur
+                    AdaptiveSendController controller = new AdaptiveSendController(config.getMinConnections(),
+                            config.getInitialConnections(), config.getNumberOfConnections(), config.getMinMessagesPerSecond(),
+                            config.getInitialMessagesPerSecond(), config.getMaxMessagesPerSecond());
+                    // Chaque domaine de destination a sa file et ses limites, adaptées à ses propres réponses
+                    int domainConnections = config.getMaxConnectionsPerDomain();
+                    int domainRate = config.getMaxMessagesPerSecondPerDomain();
+                    DomainQueues domains = new DomainQueues(domain -> new AdaptiveSendController(1,
+                            Math.min(config.getInitialConnections(), domainConnections), domainConnections,
+                            Math.min(1, domainRate), domainRate, domainRate), config.getMaxQueuedEmails());
+                    // Les e-mails sont répartis sur les relais selon leur poids, un relais défaillant est écarté
+                    try (CampaignDispatcher dispatcher = new CampaignDispatcher(new RelayPool(config.getRelays()),
+                            config.getNumberOfConnections(), controller, retries, domains, config.getTraceDirectory(),
+                            config.getTimeouts())) {
+                        dispatcher.open();
+                        report = dispatcher.dispatch(follower != null ? follower : EmailSource.of(emails), listener);
+                    }
+                }
+            } finally {
+                if (follower != null) {
+                    follower.close();
                 }
-                client.close();
+                if (journal != null) {
+                    journal.close();
+                }
+            }
+            for (SendOutcome outcome : report.getFailures()) {
+                System.out.println("Error: email from " + outcome.getEmail().getSender() + " not delivered: " + outcome.getFailureReason());
             }
+            System.out.println(report);
+            System.out.print(SmtpMetrics.getInstance().summary());
         }catch (Exception e) {
             exitWithError("Error: " + e.getMessage());
         }
@@ -0,0 +1,289 @@
+package dai.config;
+
+import dai.dispatch.EmailSource;
+import dai.model.AddressStore;
+import dai.model.Email;
+import dai.model.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Suit un fichier d'adresses, une adresse par ligne, pendant qu'il grandit, et forme les groupes
+ * au fur et à mesure de l'arrivée des adresses.
+ * <p>
+ * Un {@link WatchService} signale les écritures dans le fichier ; seules les lignes ajoutées depuis
+ * la dernière lecture sont lues, à partir de la dernière position connue. Une ligne n'est prise en compte
+ * qu'une fois terminée par un saut de ligne. Les adresses invalides sont écartées et signalées,
+ * les adresses déjà vues sont ignorées : une adresse n'est jamais envoyée deux fois.
+ * <p>
+ * Dès que les adresses en attente suffisent à former un groupe, dont la taille est tirée dans [min, max],
+ * l'e-mail du groupe est mis à disposition du thread de répartition. Le suivi s'arrête après le nombre
+ * de groupes demandé ou après un délai sans nouvelle adresse : les adresses restantes forment alors
+ * un dernier groupe si elles sont assez nombreuses. Il peut aussi être fermé à tout moment.
+ */
+public class AddressFileFollower implements EmailSource, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(AddressFileFollower.class.getName());
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 1024;
+    // Une adresse ne dépasse pas 254 caractères (RFC 5321) ; la marge couvre les espaces autour
+    private static final int MAX_LINE_LENGTH = 512;
+    // Relecture périodique du fichier, pour les systèmes où le WatchService ne signale les écritures qu'en retard
+    private static final long POLL_MILLIS = 1000;
+
+    private final Path file;
+    private final List<Message> messages;
+    private final int numberOfGroups;
+    private final int minGroupSize;
+    private final int maxGroupSize;
+    private final long idleMillis;
+    private final SplittableRandom random;
+    // Adresses déjà vues, pour ignorer les doublons ; n'est utilisé que par le thread de suivi
+    private final AddressStore seen = new AddressStore();
+    private final List<String> pending = new ArrayList<>();
+    // E-mails prêts ; la file bornée retient le suivi quand l'envoi prend du retard
+    private final BlockingQueue<Email> ready = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private long offset;
+    private int nextGroupSize;
+    private long generated;
+    private int invalid;
+    // Vrai pendant que les octets d'une ligne trop longue sont écartés
+    private boolean skippingLine;
+    private boolean longLineReported;
+    private volatile boolean finished;
+    private volatile boolean closed;
+
+    /**
+     * @param file Le fichier d'adresses à suivre.
+     * @param messages Les messages disponibles.
+     * @param numberOfGroups Le nombre de groupes après lequel le suivi s'arrête, ou 0 pour ne pas le limiter.
+     * @param minGroupSize La taille minimale d'un groupe, expéditeur compris.
+     * @param maxGroupSize La taille maximale d'un groupe, expéditeur compris.
+     * @param seed La graine du tirage des tailles de groupes et des messages.
+     * @param idleMillis Le délai sans nouvelle adresse après lequel le suivi s'arrête, ou 0 pour suivre sans fin.
+     */
+    public AddressFileFollower(Path file, List<Message> messages, int numberOfGroups, int minGroupSize, int maxGroupSize,
+                               long seed, long idleMillis) {
+        if (minGroupSize < 2 || minGroupSize > maxGroupSize) {
+            throw new IllegalArgumentException("La taille des groupes doit être comprise entre 2 et " + maxGroupSize + ".");
+        }
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("Au moins un message est nécessaire.");
+        }
+        this.file = file.toAbsolutePath();
+        this.messages = List.copyOf(messages);
+        this.numberOfGroups = numberOfGroups;
+        this.minGroupSize = minGroupSize;
+        this.maxGroupSize = maxGroupSize;
+        this.idleMillis = idleMillis;
+        this.random = new SplittableRandom(seed);
+        this.nextGroupSize = random.nextInt(minGroupSize, maxGroupSize + 1);
+        this.thread = Thread.ofVirtual().name("suivi-" + file.getFileName()).unstarted(this::follow);
+    }
+
+    /**
+     * Commence le suivi du fichier, sur un thread dédié.
+     *
+     * @return Le suivi.
+     */
+    public AddressFileFollower start() {
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public Email poll() {
+        return ready.poll();
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return finished && ready.isEmpty();
+    }
+
+    /**
+     * Boucle du suivi : lit ce qui a été ajouté au fichier à chaque écriture signalée,
+     * et au moins toutes les {@link #POLL_MILLIS} millisecondes.
+     */
+    private void follow() {
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            long lastGrowth = System.nanoTime();
+            while (!closed && !isComplete()) {
+                if (readAppended()) {
+                    lastGrowth = System.nanoTime();
+                } else if (idleMillis > 0 && System.nanoTime() - lastGrowth > TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                    LOGGER.log(Level.INFO, "Aucune nouvelle adresse dans {0} depuis {1} ms, fin du suivi",
+                            new Object[]{file, idleMillis});
+                    break;
+                }
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // Les événements ne servent qu'à réveiller le suivi : le fichier est relu dans tous les cas
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+            if (!isComplete() && pending.size() >= minGroupSize) {
+                nextGroupSize = pending.size();
+                formGroup();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | ClosedByInterruptException e) {
+            // Fermeture du suivi
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Impossible de suivre le fichier d'adresses " + file, e);
+        } finally {
+            LOGGER.log(Level.INFO, "Suivi de {0} terminé : {1} groupes, {2} adresses distinctes, {3} invalides",
+                    new Object[]{file, generated, seen.size(), invalid});
+            finished = true;
+        }
+    }
+
+    /**
+     * Lit les lignes complètes ajoutées depuis la dernière position connue.
+     * Un fichier plus court que cette position a été tronqué ou remplacé : il est relu depuis le début,
+     * les adresses déjà vues étant ignorées.
+     *
+     * @return Vrai si au moins une ligne a été lue.
+     * @throws IOException Si le fichier ne peut pas être lu.
+     * @throws InterruptedException Si le suivi est fermé pendant qu'il attend de la place pour un e-mail.
+     */
+    private boolean readAppended() throws IOException, InterruptedException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        boolean grown = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                LOGGER.log(Level.WARNING, "Le fichier d''adresses {0} a été tronqué, relecture depuis le début", file);
+                offset = 0;
+                skippingLine = false;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (channel.read(buffer, offset) > 0) {
+                byte[] bytes = buffer.array();
+                int length = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (bytes[i] == '\n') {
+                        if (skippingLine) {
+                            // Fin de la ligne trop longue : la suivante est de nouveau lue
+                            skippingLine = false;
+                        } else {
+                            addAddress(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8).strip());
+                            grown = true;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                int consumed = lineStart;
+                if (length - lineStart > MAX_LINE_LENGTH) {
+                    // Ligne trop longue pour être une adresse : ses octets sont écartés jusqu'au prochain saut de ligne
+                    if (!skippingLine) {
+                        skippingLine = true;
+                        invalid++;
+                        if (!longLineReported) {
+                            longLineReported = true;
+                            LOGGER.log(Level.WARNING, "Ligne de plus de {0} octets ignorée dans {1}",
+                                    new Object[]{MAX_LINE_LENGTH, file});
+                        }
+                    }
+                    consumed = length;
+                }
+                if (consumed == 0) {
+                    // Dernière ligne pas encore terminée : elle sera lue à la prochaine écriture
+                    break;
+                }
+                offset += consumed;
+                buffer.clear();
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * Valide une adresse lue, l'ajoute aux adresses en attente si elle est nouvelle et forme
+     * un groupe dès que les adresses en attente suffisent.
+     *
+     * @param address L'adresse lue, sans espaces autour.
+     * @throws InterruptedException Si le suivi est fermé pendant qu'il attend de la place pour un e-mail.
+     */
+    private void addAddress(String address) throws InterruptedException {
+        if (address.isEmpty() || isComplete()) {
+            return;
+        }
+        if (!AddressValidator.isValid(address)) {
+            invalid++;
+            LOGGER.log(Level.WARNING, "Adresse invalide ignorée dans {0} : {1}", new Object[]{file, address});
+            return;
+        }
+        int before = seen.size();
+        seen.add(address);
+        if (seen.size() == before) {
+            return;
+        }
+        pending.add(address);
+        if (pending.size() >= nextGroupSize) {
+            formGroup();
+        }
+    }
+
+    /**
+     * Forme un groupe avec les adresses en attente les plus anciennes : la première est l'expéditeur,
+     * les suivantes les destinataires. L'e-mail du groupe attend une place dans la file des e-mails prêts.
+     *
+     * @throws InterruptedException Si le suivi est fermé pendant l'attente.
+     */
+    private void formGroup() throws InterruptedException {
+        List<String> members = pending.subList(0, nextGroupSize);
+        Message message = messages.get(random.nextInt(messages.size()));
+        Email email = new Email(members.get(0), List.copyOf(members.subList(1, members.size())), message, generated++);
+        members.clear();
+        nextGroupSize = random.nextInt(minGroupSize, maxGroupSize + 1);
+        ready.put(email);
+    }
+
+    /**
+     * Indique si le nombre de groupes demandé est atteint.
+     *
+     * @return Vrai si le suivi n'a plus de groupe à former.
+     */
+    private boolean isComplete() {
+        return numberOfGroups > 0 && generated >= numberOfGroups;
+    }
+
+    /**
+     * Arrête le suivi. Les e-mails déjà prêts restent disponibles.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
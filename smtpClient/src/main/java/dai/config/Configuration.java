@@ -2,15 +2,23 @@ package dai.config;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
+import dai.dispatch.Relay;
+import dai.model.AddressStore;
+import dai.model.Attachment;
 import dai.model.Message;
 import dai.network.SMTPClient;
+import dai.network.SmtpTimeouts;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Classe pour gérer la configuration de l'application depuis un fichier JSON.
@@ -19,13 +27,35 @@ import java.io.IOException;
  */
 public class Configuration {
 
-    private final List<String> victims;
+    private final AddressStore victims;
+    private final ValidationReport addressReport;
     ArrayList<Message> messageList;
     private final String smtpHost;
     private final int smtpPort;
+    private final List<Relay> relays;
+    private final int maxRecipientsPerTransaction;
+    private final int maxConnectionsPerDomain;
+    private final int maxMessagesPerSecondPerDomain;
+    private final int maxQueuedEmails;
     private final int numberOfGroups;
     private final int minNumberOfEmailsPerGroup;
     private final int maxNumberOfEmailsPerGroup;
+    private final int numberOfConnections;
+    private final int minConnections;
+    private final int initialConnections;
+    private final int minMessagesPerSecond;
+    private final int initialMessagesPerSecond;
+    private final int maxMessagesPerSecond;
+    private final int maxRetries;
+    private final int retryDelayMs;
+    private final int maxRetryDelayMs;
+    private final boolean nonBlockingEngine;
+    private final long seed;
+    private final Path journalPath;
+    private final Path traceDirectory;
+    private final Path followedEmailsFile;
+    private final int followIdleMs;
+    private final SmtpTimeouts timeouts;
     private static final Logger LOGGER = Logger.getLogger(SMTPClient.class.getName());
     /**
      * Constructeur de la classe Configuration.
@@ -33,34 +63,62 @@ public class Configuration {
      *
      * @param jsonFilePath Chemin vers le fichier JSON de configuration.
      * @throws FileNotFoundException Si le fichier JSON n'est pas trouvé.
-     * @throws IOException Si une erreur de lecture se produit.
+     * @throws IOException Si une erreur de lecture se produit ou si le fichier est mal formé.
      * @throws IllegalArgumentException Si la configuration est invalide.
      */
     public Configuration(String jsonFilePath) throws Exception, IOException, IllegalArgumentException {
-        ReadJson readJson = new ReadJson();
+        ConfigurationReader reader = new ConfigurationReader();
+        reader.read(Path.of(jsonFilePath));
 
-        Map<String, Object> jsonData = readJson.read(jsonFilePath);
-
-        if (jsonData == null) {
-            throw new IOException("Erreur lors de la lecture du fichier de configuration JSON.");
+        victims = reader.victims;
+        addressReport = new ValidationReport();
+        for (int i = 0; i < reader.duplicateCount; i++) {
+            int handle = reader.duplicates[i * 2 + 1];
+            addressReport.addDuplicate(reader.duplicates[i * 2], victims.get(handle), reader.sourcePositions[handle]);
         }
-
-        victims = safelyCastToList(jsonData.get("emails"));
-        numberOfGroups = safelyCastToInt(jsonData.get("numberOfGroups"));
-        smtpHost = (String) jsonData.get("smtpHost");
-        smtpPort = safelyCastToInt(jsonData.get("smtpPort"));
-        minNumberOfEmailsPerGroup = safelyCastToInt(jsonData.get("minNumberOfEmailsPerGroup"));
-        maxNumberOfEmailsPerGroup = safelyCastToInt(jsonData.get("maxNumberOfEmailsPerGroup"));
-
-
-
-        List<Map<String, Object>> msgList = safelyCastToList(jsonData.get("messages"));
-        messageList = new ArrayList<>();
-        for (Map<String, Object> message : msgList) {
-            String subject = (String) message.get("subject");
-            String body = (String) message.get("body");
-            messageList.add(new Message(subject, body));
+        AddressValidator.validate(victims, reader.sourcePositions, addressReport);
+        if (!addressReport.getDuplicates().isEmpty()) {
+            LOGGER.log(Level.INFO, "Adresses en double ignorées : " + addressReport.getDuplicates().size());
+        }
+        numberOfGroups = reader.numberOfGroups;
+        smtpHost = reader.smtpHost;
+        smtpPort = reader.smtpPort;
+        maxRecipientsPerTransaction = reader.maxRecipientsPerTransaction;
+        // Un relais sans limite propre hérite de celle de la racine ; sans limite, elle est apprise des refus 452
+        relays = new ArrayList<>();
+        if (reader.relays.isEmpty()) {
+            relays.add(new Relay(smtpHost, smtpPort, 1, maxRecipientsPerTransaction));
+        }
+        for (Relay relay : reader.relays) {
+            relays.add(relay.recipientLimit() > 0 ? relay
+                    : new Relay(relay.host(), relay.port(), relay.weight(), maxRecipientsPerTransaction));
         }
+        minNumberOfEmailsPerGroup = reader.minNumberOfEmailsPerGroup;
+        maxNumberOfEmailsPerGroup = reader.maxNumberOfEmailsPerGroup;
+        numberOfConnections = reader.numberOfConnections;
+        // Sans valeur initiale, l'envoi démarre au minimum et les limites montent tant que le serveur suit
+        minConnections = reader.minConnections;
+        initialConnections = reader.initialConnections > 0 ? reader.initialConnections : minConnections;
+        maxMessagesPerSecond = reader.maxMessagesPerSecond;
+        minMessagesPerSecond = reader.minMessagesPerSecond > 0 ? reader.minMessagesPerSecond : Math.min(1, maxMessagesPerSecond);
+        initialMessagesPerSecond = reader.initialMessagesPerSecond > 0 ? reader.initialMessagesPerSecond : minMessagesPerSecond;
+        // Sans limite propre, un domaine peut occuper toutes les connexions
+        maxConnectionsPerDomain = reader.maxConnectionsPerDomain > 0 ? reader.maxConnectionsPerDomain : numberOfConnections;
+        maxMessagesPerSecondPerDomain = reader.maxMessagesPerSecondPerDomain;
+        maxQueuedEmails = reader.maxQueuedEmails;
+        maxRetries = reader.maxRetries;
+        retryDelayMs = reader.retryDelayMs;
+        maxRetryDelayMs = reader.maxRetryDelayMs;
+        nonBlockingEngine = reader.nonBlockingEngine;
+        messageList = new ArrayList<>(reader.messages);
+        // Sans graine fixée, la graine tirée est journalisée pour pouvoir rejouer la même répartition
+        seed = reader.seed != null ? reader.seed : System.nanoTime();
+        LOGGER.log(Level.INFO, "Graine de la répartition des groupes : " + seed);
+        journalPath = reader.journal;
+        traceDirectory = reader.traceDirectory;
+        followedEmailsFile = reader.followedEmailsFile;
+        followIdleMs = reader.followIdleMs;
+        timeouts = new SmtpTimeouts(reader.connectTimeoutMs, reader.readTimeoutMs);
 
         validateConfiguration();
     }
@@ -68,9 +126,17 @@ public class Configuration {
     // region Accessors
 
     public List<String> getVictims() {
+        return victims.asList();
+    }
+
+    public AddressStore getAddressStore() {
         return victims;
     }
 
+    public ValidationReport getAddressReport() {
+        return addressReport;
+    }
+
     public List<Message> getMessages() {
         return messageList;
     }
@@ -83,6 +149,14 @@ public class Configuration {
         return smtpPort;
     }
 
+    public List<Relay> getRelays() {
+        return relays;
+    }
+
+    public int getMaxRecipientsPerTransaction() {
+        return maxRecipientsPerTransaction;
+    }
+
     public int getNumberOfGroups() {
         return numberOfGroups;
     }
@@ -94,12 +168,141 @@ public class Configuration {
         return maxNumberOfEmailsPerGroup;
     }
 
+    public int getNumberOfConnections() {
+        return numberOfConnections;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public int getInitialConnections() {
+        return initialConnections;
+    }
+
+    public int getMinMessagesPerSecond() {
+        return minMessagesPerSecond;
+    }
+
+    public int getInitialMessagesPerSecond() {
+        return initialMessagesPerSecond;
+    }
+
+    public int getMaxMessagesPerSecond() {
+        return maxMessagesPerSecond;
+    }
+
+    public int getMaxConnectionsPerDomain() {
+        return maxConnectionsPerDomain;
+    }
+
+    public int getMaxMessagesPerSecondPerDomain() {
+        return maxMessagesPerSecondPerDomain;
+    }
+
+    public int getMaxQueuedEmails() {
+        return maxQueuedEmails;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public int getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    public int getMaxRetryDelayMs() {
+        return maxRetryDelayMs;
+    }
+
+    public boolean isNonBlockingEngine() {
+        return nonBlockingEngine;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    public Path getTraceDirectory() {
+        return traceDirectory;
+    }
+
+    /**
+     * @return Le fichier d'adresses suivi pendant l'envoi, ou null si les adresses sont toutes lues au démarrage.
+     */
+    public Path getFollowedEmailsFile() {
+        return followedEmailsFile;
+    }
+
+    public int getFollowIdleMs() {
+        return followIdleMs;
+    }
+
+    /**
+     * @return Les délais de connexion et d'attente des réponses des sessions SMTP.
+     */
+    public SmtpTimeouts getTimeouts() {
+        return timeouts;
+    }
+
     // endregion Accessors
 
 
 
     // region Methods
 
+    /**
+     * Calcule une empreinte des paramètres qui déterminent la répartition et le contenu des e-mails :
+     * adresses, groupes, messages et pièces jointes, identifiées par leur chemin, leur taille et leur date
+     * de modification. Il s'agit des 64 premiers bits d'un SHA-256 de ces paramètres.
+     * Un journal d'envoi ne peut être repris qu'avec une configuration de même empreinte.
+     *
+     * @return L'empreinte de la configuration.
+     * @throws IOException Si une pièce jointe est introuvable.
+     */
+    public long getCampaignFingerprint() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 est fourni par toute JVM
+            throw new IllegalStateException(e);
+        }
+        victims.updateDigest(digest);
+        digest.update(ByteBuffer.allocate(5 * Integer.BYTES).putInt(victims.size()).putInt(numberOfGroups)
+                .putInt(minNumberOfEmailsPerGroup).putInt(maxNumberOfEmailsPerGroup).putInt(messageList.size()).array());
+        for (Message message : messageList) {
+            updateDigest(digest, message.getSubject());
+            updateDigest(digest, message.getBody());
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(message.getAttachments().size()).array());
+            for (Attachment attachment : message.getAttachments()) {
+                Path path = attachment.getPath().toAbsolutePath();
+                updateDigest(digest, path.toString());
+                digest.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(Files.size(path))
+                        .putLong(Files.getLastModifiedTime(path).toMillis()).array());
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Ajoute une chaîne à une empreinte, précédée de sa longueur pour que deux découpages différents
+     * des mêmes caractères donnent des empreintes différentes.
+     *
+     * @param digest L'empreinte à mettre à jour.
+     * @param text La chaîne, éventuellement null.
+     */
+    private static void updateDigest(MessageDigest digest, String text) {
+        byte[] bytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(text != null ? bytes.length : -1).array());
+        digest.update(bytes);
+    }
+
     /**
      * Valide le nombre de groupes basé sur les paramètres de configuration.
      * @throws Exception Si la configuration n'est pas valide.
@@ -108,7 +311,11 @@ public class Configuration {
         if(minNumberOfEmailsPerGroup > maxNumberOfEmailsPerGroup){
             throw new IllegalArgumentException("Minimum number of groups must be less than maximum number of groups");
         }
-        if (victims.size() < numberOfGroups * maxNumberOfEmailsPerGroup) {
+        if (minNumberOfEmailsPerGroup < 2) {
+            throw new IllegalArgumentException("A group needs at least 2 emails: one sender and one recipient");
+        }
+        // Un fichier suivi n'a pas encore ses adresses : les groupes sont formés à leur arrivée
+        if (followedEmailsFile == null && victims.size() < numberOfGroups * maxNumberOfEmailsPerGroup) {
             throw new Exception("Error, not enough victims to form groups.\nNumber of groups : " + numberOfGroups + "\nMax number of emails per group : " + maxNumberOfEmailsPerGroup + "\nNumber of victims : " + victims.size() + "\n");
         }
     }
@@ -121,19 +328,52 @@ public class Configuration {
         validateEmails();
         validateMessages();
         validateNbGroups();
+        validateConnections();
+        validateFollow();
+    }
+
+    /**
+     * Valide le suivi d'un fichier d'adresses : un journal ne reprend qu'une campagne dont toutes les adresses
+     * sont connues au démarrage, et seul le moteur bloquant lit une source qui grandit.
+     * @throws IllegalArgumentException Si le suivi est combiné au moteur NIO ou à un journal d'envoi.
+     */
+    private void validateFollow() {
+        if (followedEmailsFile != null && (nonBlockingEngine || journalPath != null)) {
+            throw new IllegalArgumentException("followEmailsFile cannot be combined with the nio engine or a journal");
+        }
+    }
+
+    /**
+     * Valide le nombre de connexions simultanées au serveur SMTP, les limites de débit et les délais des nouvelles tentatives.
+     * @throws IllegalArgumentException Si le nombre de connexions n'est pas positif ou si les limites sont incohérentes.
+     */
+    private void validateConnections() {
+        if (numberOfConnections <= 0) {
+            throw new IllegalArgumentException("Number of connections must be positive");
+        }
+        if (minConnections > initialConnections || initialConnections > numberOfConnections) {
+            throw new IllegalArgumentException("Connections must satisfy minConnections <= initialConnections <= numberOfConnections");
+        }
+        if (maxMessagesPerSecond > 0 && (minMessagesPerSecond > initialMessagesPerSecond || initialMessagesPerSecond > maxMessagesPerSecond)) {
+            throw new IllegalArgumentException("Rates must satisfy minMessagesPerSecond <= initialMessagesPerSecond <= maxMessagesPerSecond");
+        }
+        if (maxConnectionsPerDomain > numberOfConnections) {
+            throw new IllegalArgumentException("Connections must satisfy maxConnectionsPerDomain <= numberOfConnections");
+        }
+        if (retryDelayMs > maxRetryDelayMs) {
+            throw new IllegalArgumentException("Retry delays must satisfy retryDelayMs <= maxRetryDelayMs");
+        }
     }
 
     /**
      * Valide les adresses e-mail dans la liste des victimes.
-     * @throws Exception Si une adresse e-mail est invalide.
+     * Les adresses ont été vérifiées au chargement ; toutes les erreurs sont signalées ensemble.
+     * @throws Exception Si au moins une adresse e-mail est invalide.
      */
     private void validateEmails() throws Exception {
-        Pattern emailPattern = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$");
-        for (String email : victims) {
-            if (!emailPattern.matcher(email).matches()) {
-                LOGGER.log(Level.INFO, "Adresse e-mail invalide trouvée : " + email);
-                throw new Exception("E-mail invalide trouvée : " + email);
-            }
+        if (!addressReport.isValid()) {
+            LOGGER.log(Level.INFO, "Adresses e-mail invalides trouvées : " + addressReport.getErrors().size());
+            throw new Exception("E-mails invalides trouvés : " + addressReport);
         }
     }
 
@@ -149,38 +389,14 @@ public class Configuration {
                 LOGGER.log(Level.INFO, "Message invalide : " + message.getSubject() + " " + message.getBody());
                 throw new Exception("Message Invalide : " + message.getSubject() + " " + message.getBody());
             }
+            for (Attachment attachment : message.getAttachments()) {
+                if (!Files.isRegularFile(attachment.getPath()) || !Files.isReadable(attachment.getPath())) {
+                    LOGGER.log(Level.INFO, "Pièce jointe illisible : " + attachment.getPath());
+                    throw new Exception("Pièce jointe illisible : " + attachment.getPath());
+                }
+            }
         }
     }
 
-    /**
-     * Tente de convertir en toute sécurité un objet en List.
-     *
-     * @param object L'objet à convertir.
-     * @return Une List ou lance une IllegalArgumentException si la conversion échoue.
-     */
-    @SuppressWarnings("unchecked")
-    private <T> List<T> safelyCastToList(Object object) {
-        if (object instanceof List) {
-            return (List<T>) object;
-        } else {
-            LOGGER.log(Level.INFO, "L'objet n'est pas une liste.");
-            throw new IllegalArgumentException("L'objet n'est pas une liste.");
-        }
-    }
-
-    /**
-     * Tente de convertir en toute sécurité un objet en int.
-     *
-     * @param object L'objet à convertir.
-     * @return Un int ou lance une IllegalArgumentException si la conversion échoue.
-     */
-    private int safelyCastToInt(Object object) {
-        if (object instanceof Double) {
-            return ((Double) object).intValue();
-        } else {
-            LOGGER.log(Level.INFO, "L'objet n'est pas un nombre.");
-            throw new IllegalArgumentException("L'objet n'est pas un nombre.");
-        }
-    }
     // endregion Methods
 }
\ No newline at end of file
@@ -0,0 +1,366 @@
+package dai.config;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import dai.dispatch.Relay;
+import dai.model.AddressStore;
+import dai.model.Attachment;
+import dai.model.Message;
+import dai.network.SmtpTimeouts;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lecteur du fichier de configuration JSON en un seul passage, sans arbre intermédiaire.
+ * Les valeurs sont lues une à une avec le {@link JsonReader} de Gson et rangées directement
+ * dans des champs typés : les nombres ne passent plus par des Double et les adresses sont rangées,
+ * sans doublon, dans un {@link AddressStore}. La première erreur est signalée avec sa ligne et sa colonne.
+ * Les adresses peuvent aussi être lues depuis un fichier texte, une adresse par ligne (« emailsFile »).
+ */
+class ConfigurationReader {
+    private static final Pattern LOCATION = Pattern.compile("line (\\d+) column (\\d+) path (\\S+)");
+
+    String smtpHost;
+    int smtpPort = -1;
+    int numberOfGroups = -1;
+    int minNumberOfEmailsPerGroup = -1;
+    int maxNumberOfEmailsPerGroup = -1;
+    int numberOfConnections = 1;
+    int minConnections = 1;
+    int initialConnections = -1;
+    int minMessagesPerSecond = -1;
+    int initialMessagesPerSecond = -1;
+    int maxMessagesPerSecond;
+    int maxRetries = 3;
+    int retryDelayMs = 1000;
+    int maxRetryDelayMs = 300_000;
+    int maxRecipientsPerTransaction;
+    int maxConnectionsPerDomain;
+    int maxMessagesPerSecondPerDomain;
+    int maxQueuedEmails = 10_000;
+    boolean nonBlockingEngine;
+    Long seed;
+    Path journal;
+    Path traceDirectory;
+    Path followedEmailsFile;
+    int followIdleMs;
+    int connectTimeoutMs = SmtpTimeouts.DEFAULT.connectMillis();
+    int readTimeoutMs = SmtpTimeouts.DEFAULT.readMillis();
+    final List<Relay> relays = new ArrayList<>();
+    final AddressStore victims = new AddressStore();
+    final List<Message> messages = new ArrayList<>();
+    private boolean hasVictims;
+    // Position dans la source de chaque adresse retenue, puis des doublons (position, indice de l'adresse)
+    int[] sourcePositions = new int[1024];
+    int[] duplicates = new int[16];
+    int duplicateCount;
+    private int sourceCount;
+
+    /**
+     * Lit le fichier de configuration et remplit les champs.
+     *
+     * @param configFile Le fichier de configuration JSON.
+     * @throws IOException Si le fichier ne peut pas être lu ou s'il est invalide.
+     */
+    void read(Path configFile) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(configFile, StandardCharsets.UTF_8))) {
+            // Même tolérance que Gson.fromJson, utilisé auparavant (commentaires, guillemets simples)
+            reader.setLenient(true);
+            try {
+                readRoot(reader, configFile);
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw error(reader, "contenu inattendu après la configuration");
+                }
+            } catch (MalformedJsonException | EOFException e) {
+                throw new IOException("JSON invalide dans " + configFile + " : " + e.getMessage(), e);
+            }
+        }
+        // Sans liste de relais, smtpHost et smtpPort désignent l'unique relais
+        checkPresent(smtpHost != null || !relays.isEmpty(), "smtpHost");
+        checkPresent(smtpPort >= 0 || !relays.isEmpty(), "smtpPort");
+        checkPresent(numberOfGroups >= 0, "numberOfGroups");
+        checkPresent(minNumberOfEmailsPerGroup >= 0, "minNumberOfEmailsPerGroup");
+        checkPresent(maxNumberOfEmailsPerGroup >= 0, "maxNumberOfEmailsPerGroup");
+        checkPresent(hasVictims, "emails");
+        checkPresent(!messages.isEmpty(), "messages");
+        victims.trimToSize();
+    }
+
+    /**
+     * Lit l'objet racine de la configuration. Les clés inconnues sont ignorées.
+     *
+     * @param reader Le lecteur JSON.
+     * @param configFile Le fichier de configuration, pour résoudre le chemin du fichier d'adresses.
+     * @throws IOException Si une valeur est invalide.
+     */
+    private void readRoot(JsonReader reader, Path configFile) throws IOException {
+        expect(reader, JsonToken.BEGIN_OBJECT);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "smtpHost" -> smtpHost = nextString(reader);
+                case "smtpPort" -> smtpPort = nextInt(reader, 0);
+                case "numberOfGroups" -> numberOfGroups = nextInt(reader, 0);
+                case "minNumberOfEmailsPerGroup" -> minNumberOfEmailsPerGroup = nextInt(reader, 0);
+                case "maxNumberOfEmailsPerGroup" -> maxNumberOfEmailsPerGroup = nextInt(reader, 0);
+                case "numberOfConnections" -> numberOfConnections = nextInt(reader, 1);
+                case "minConnections" -> minConnections = nextInt(reader, 1);
+                case "initialConnections" -> initialConnections = nextInt(reader, 1);
+                case "minMessagesPerSecond" -> minMessagesPerSecond = nextInt(reader, 1);
+                case "initialMessagesPerSecond" -> initialMessagesPerSecond = nextInt(reader, 1);
+                case "maxMessagesPerSecond" -> maxMessagesPerSecond = nextInt(reader, 0);
+                case "maxRetries" -> maxRetries = nextInt(reader, 0);
+                case "retryDelayMs" -> retryDelayMs = nextInt(reader, 1);
+                case "maxRetryDelayMs" -> maxRetryDelayMs = nextInt(reader, 1);
+                case "maxRecipientsPerTransaction" -> maxRecipientsPerTransaction = nextInt(reader, 0);
+                case "maxConnectionsPerDomain" -> maxConnectionsPerDomain = nextInt(reader, 0);
+                case "maxMessagesPerSecondPerDomain" -> maxMessagesPerSecondPerDomain = nextInt(reader, 0);
+                case "maxQueuedEmails" -> maxQueuedEmails = nextInt(reader, 1);
+                case "seed" -> {
+                    expect(reader, JsonToken.NUMBER);
+                    try {
+                        seed = reader.nextLong();
+                    } catch (NumberFormatException e) {
+                        throw error(reader, "un nombre entier est attendu");
+                    }
+                }
+                case "relays" -> readRelays(reader);
+                case "engine" -> nonBlockingEngine = "nio".equals(nextString(reader));
+                case "emails" -> readEmails(reader);
+                case "emailsFile" -> readEmailsFile(configFile.toAbsolutePath().resolveSibling(nextString(reader)));
+                case "followEmailsFile" -> {
+                    // Les adresses sont lues au fil de l'envoi, à mesure que le fichier grandit
+                    followedEmailsFile = configFile.toAbsolutePath().resolveSibling(nextString(reader));
+                    hasVictims = true;
+                }
+                case "followIdleMs" -> followIdleMs = nextInt(reader, 0);
+                case "connectTimeoutMs" -> connectTimeoutMs = nextInt(reader, 1);
+                case "readTimeoutMs" -> readTimeoutMs = nextInt(reader, 1);
+                case "messages" -> readMessages(reader, configFile);
+                case "journal" -> journal = configFile.toAbsolutePath().resolveSibling(nextString(reader));
+                case "traceDirectory" -> traceDirectory = configFile.toAbsolutePath().resolveSibling(nextString(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Lit la liste des adresses e-mail.
+     *
+     * @param reader Le lecteur JSON, placé sur le tableau.
+     * @throws IOException Si un élément n'est pas une chaîne.
+     */
+    private void readEmails(JsonReader reader) throws IOException {
+        expect(reader, JsonToken.BEGIN_ARRAY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            addVictim(nextString(reader));
+        }
+        reader.endArray();
+        hasVictims = true;
+    }
+
+    /**
+     * Lit les adresses e-mail depuis un fichier texte, une adresse par ligne. Les lignes vides sont ignorées.
+     *
+     * @param file Le fichier d'adresses.
+     * @throws IOException Si le fichier ne peut pas être lu.
+     */
+    private void readEmailsFile(Path file) throws IOException {
+        try (BufferedReader lines = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty()) {
+                    addVictim(line);
+                }
+            }
+        }
+        hasVictims = true;
+    }
+
+    /**
+     * Ajoute une adresse au stockage en retenant sa position dans la source, pour le rapport de validation.
+     *
+     * @param address L'adresse lue.
+     */
+    private void addVictim(String address) {
+        int before = victims.size();
+        int handle = victims.add(address);
+        if (victims.size() > before) {
+            if (handle == sourcePositions.length) {
+                sourcePositions = Arrays.copyOf(sourcePositions, sourcePositions.length * 2);
+            }
+            sourcePositions[handle] = sourceCount;
+        } else {
+            if (duplicateCount * 2 == duplicates.length) {
+                duplicates = Arrays.copyOf(duplicates, duplicates.length * 2);
+            }
+            duplicates[duplicateCount * 2] = sourceCount;
+            duplicates[duplicateCount * 2 + 1] = handle;
+            duplicateCount++;
+        }
+        sourceCount++;
+    }
+
+    /**
+     * Lit la liste des messages. Les chemins des pièces jointes sont relatifs au fichier de configuration.
+     *
+     * @param reader Le lecteur JSON, placé sur le tableau.
+     * @param configFile Le fichier de configuration, pour résoudre le chemin des pièces jointes.
+     * @throws IOException Si un message est invalide.
+     */
+    private void readMessages(JsonReader reader, Path configFile) throws IOException {
+        expect(reader, JsonToken.BEGIN_ARRAY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            expect(reader, JsonToken.BEGIN_OBJECT);
+            reader.beginObject();
+            String subject = null;
+            String body = null;
+            List<Attachment> attachments = new ArrayList<>();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "subject" -> subject = nextString(reader);
+                    case "body" -> body = nextString(reader);
+                    case "attachments" -> {
+                        expect(reader, JsonToken.BEGIN_ARRAY);
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            attachments.add(Attachment.of(configFile.toAbsolutePath().resolveSibling(nextString(reader))));
+                        }
+                        reader.endArray();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            messages.add(new Message(subject, body, attachments));
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Lit la liste des relais SMTP : adresse, port, poids facultatif (1 par défaut)
+     * et limite facultative de destinataires par transaction (à défaut, celle de la racine s'applique).
+     *
+     * @param reader Le lecteur JSON, placé sur le tableau.
+     * @throws IOException Si un relais est invalide.
+     */
+    private void readRelays(JsonReader reader) throws IOException {
+        expect(reader, JsonToken.BEGIN_ARRAY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            expect(reader, JsonToken.BEGIN_OBJECT);
+            reader.beginObject();
+            String host = null;
+            int port = -1;
+            int weight = 1;
+            int recipientLimit = 0;
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "host" -> host = nextString(reader);
+                    case "port" -> port = nextInt(reader, 0);
+                    case "weight" -> weight = nextInt(reader, 1);
+                    case "maxRecipientsPerTransaction" -> recipientLimit = nextInt(reader, 0);
+                    default -> reader.skipValue();
+                }
+            }
+            if (host == null || port < 0) {
+                throw error(reader, "un relais doit avoir une adresse (host) et un port");
+            }
+            reader.endObject();
+            relays.add(new Relay(host, port, weight, recipientLimit));
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Lit une chaîne.
+     *
+     * @param reader Le lecteur JSON.
+     * @return La chaîne lue.
+     * @throws IOException Si la valeur n'est pas une chaîne.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        expect(reader, JsonToken.STRING);
+        return reader.nextString();
+    }
+
+    /**
+     * Lit un entier positif ou nul.
+     *
+     * @param reader Le lecteur JSON.
+     * @param min La valeur minimale acceptée.
+     * @return L'entier lu.
+     * @throws IOException Si la valeur n'est pas un entier ou est trop petite.
+     */
+    private static int nextInt(JsonReader reader, int min) throws IOException {
+        expect(reader, JsonToken.NUMBER);
+        int value;
+        try {
+            value = reader.nextInt();
+        } catch (NumberFormatException e) {
+            throw error(reader, "un nombre entier est attendu");
+        }
+        if (value < min) {
+            throw error(reader, "la valeur doit être au moins " + min);
+        }
+        return value;
+    }
+
+    /**
+     * Vérifie le type de la prochaine valeur.
+     *
+     * @param reader Le lecteur JSON.
+     * @param expected Le type attendu.
+     * @throws IOException Si la valeur est d'un autre type.
+     */
+    private static void expect(JsonReader reader, JsonToken expected) throws IOException {
+        JsonToken actual = reader.peek();
+        if (actual != expected) {
+            throw error(reader, expected + " attendu, " + actual + " trouvé");
+        }
+    }
+
+    /**
+     * Vérifie qu'un paramètre obligatoire a été lu.
+     *
+     * @param present Vrai si le paramètre a été lu.
+     * @param name Le nom du paramètre.
+     */
+    private static void checkPresent(boolean present, String name) {
+        if (!present) {
+            throw new IllegalArgumentException("Paramètre manquant dans la configuration : " + name);
+        }
+    }
+
+    /**
+     * Crée une erreur de configuration indiquant la position courante du lecteur.
+     *
+     * @param reader Le lecteur JSON.
+     * @param message La description de l'erreur.
+     * @return L'exception à lancer.
+     */
+    private static IOException error(JsonReader reader, String message) {
+        // JsonReader n'expose sa position que dans toString() : « JsonReader at line L column C path P »
+        Matcher location = LOCATION.matcher(reader.toString());
+        if (location.find()) {
+            return new IOException("Configuration invalide à la ligne " + location.group(1) + ", colonne "
+                    + location.group(2) + " (" + location.group(3) + ") : " + message);
+        }
+        return new IOException("Configuration invalide (" + reader.getPath() + ") : " + message);
+    }
+}
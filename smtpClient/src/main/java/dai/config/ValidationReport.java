@@ -0,0 +1,79 @@
+package dai.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe représentant le rapport de validation des adresses de la configuration.
+ * Contient toutes les adresses refusées et tous les doublons, avec leur position dans la source :
+ * l'indice dans la liste « emails », ou parmi les lignes non vides du fichier d'adresses.
+ * Les doublons ne sont pas des erreurs : ils sont ignorés au chargement.
+ */
+public class ValidationReport {
+    private static final int MAX_PRINTED = 20;
+
+    final private List<Entry> errors = new ArrayList<>();
+    final private List<Entry> duplicates = new ArrayList<>();
+
+    /**
+     * Erreur ou doublon à une position de la source.
+     *
+     * @param position La position de l'adresse dans la source.
+     * @param address L'adresse concernée.
+     * @param reason La raison du refus, ou la position de la première occurrence pour un doublon.
+     */
+    public record Entry(int position, String address, String reason) {
+        @Override
+        public String toString() {
+            return "[" + position + "] " + address + " : " + reason;
+        }
+    }
+
+    void addError(Entry error) {
+        errors.add(error);
+    }
+
+    void addDuplicate(int position, String address, int firstPosition) {
+        duplicates.add(new Entry(position, address, "doublon de l'indice " + firstPosition));
+    }
+
+    /**
+     * Indique si toutes les adresses sont valides.
+     *
+     * @return Vrai si aucune erreur n'a été trouvée.
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * Décrit les erreurs trouvées, limitées aux premières.
+     *
+     * @return Le résumé des erreurs.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(errors.size()).append(" adresse(s) invalide(s), ").append(duplicates.size()).append(" doublon(s)");
+        for (int i = 0; i < Math.min(MAX_PRINTED, errors.size()); i++) {
+            sb.append("\n  ").append(errors.get(i));
+        }
+        if (errors.size() > MAX_PRINTED) {
+            sb.append("\n  ... et ").append(errors.size() - MAX_PRINTED).append(" autre(s)");
+        }
+        return sb.toString();
+    }
+
+    // region Accessors
+
+    public List<Entry> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public List<Entry> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
+    }
+
+    // endregion Accessors
+}
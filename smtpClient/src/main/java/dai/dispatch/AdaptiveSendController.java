@@ -0,0 +1,295 @@
+package dai.dispatch;
+
+import dai.network.ContentException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Régulateur du nombre de transactions simultanées et du débit d'envoi, piloté par les réponses du serveur (AIMD).
+ * <p>
+ * Tant que les transactions aboutissent et que leur durée reste stable, les limites augmentent :
+ * d'abord en doublant à chaque aller-retour (démarrage lent), puis de façon additive.
+ * Une réponse 4xx (421, 451, 452...), une erreur de connexion ou une durée qui dépasse
+ * {@value #LATENCY_TOLERANCE} fois la plus courte observée divisent les limites par deux,
+ * au plus une fois par fenêtre, c'est-à-dire tant que les transactions lancées avant la réduction se terminent.
+ * <p>
+ * Un débit maximal nul désactive la limitation du débit : seul le nombre de transactions simultanées est régulé.
+ */
+public class AdaptiveSendController {
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double RATE_INCREASE = 0.05;
+    private static final double RTT_SMOOTHING = 0.125;
+    private static final int MIN_RTT_SAMPLES = 10;
+
+    /**
+     * Issue d'une transaction, vue par le régulateur.
+     */
+    public enum Signal {
+        /** Transaction acceptée (2xx). */
+        SUCCESS,
+        /** Serveur saturé : réponse 4xx ou connexion perdue. */
+        OVERLOADED,
+        /** Refus définitif (5xx), sans lien avec la charge. */
+        NEUTRAL
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double minRate;
+    private final double maxRate;
+
+    private double concurrencyLimit;
+    private double rate;
+    private int inFlight;
+    private long nextSendNanos;
+    private boolean slowStart = true;
+    private int completedSinceDecrease;
+    private double minRttNanos = Double.MAX_VALUE;
+    private double smoothedRttNanos;
+    private int rttSamples;
+    private long decreases;
+
+    /**
+     * @param minConcurrency Le nombre minimal de transactions simultanées.
+     * @param initialConcurrency Le nombre initial de transactions simultanées.
+     * @param maxConcurrency Le nombre maximal de transactions simultanées.
+     * @param minRate Le débit minimal, en messages par seconde.
+     * @param initialRate Le débit initial, en messages par seconde.
+     * @param maxRate Le débit maximal, en messages par seconde, 0 pour ne pas limiter le débit.
+     */
+    public AdaptiveSendController(int minConcurrency, int initialConcurrency, int maxConcurrency,
+                                  double minRate, double initialRate, double maxRate) {
+        if (minConcurrency <= 0 || minConcurrency > initialConcurrency || initialConcurrency > maxConcurrency) {
+            throw new IllegalArgumentException("Les limites de sessions doivent vérifier 0 < min <= initial <= max.");
+        }
+        if (maxRate < 0 || (maxRate > 0 && (minRate <= 0 || minRate > initialRate || initialRate > maxRate))) {
+            throw new IllegalArgumentException("Les limites de débit doivent vérifier 0 < min <= initial <= max.");
+        }
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.concurrencyLimit = initialConcurrency;
+        this.rate = maxRate > 0 ? initialRate : 0;
+    }
+
+    /**
+     * Crée un régulateur aux limites fixes : toutes les sessions, sans limite de débit.
+     *
+     * @param concurrency Le nombre de transactions simultanées.
+     * @return Le régulateur.
+     */
+    public static AdaptiveSendController fixed(int concurrency) {
+        return new AdaptiveSendController(concurrency, concurrency, concurrency, 0, 0, 0);
+    }
+
+    /**
+     * Attend qu'une transaction puisse commencer : une place parmi les transactions simultanées,
+     * puis le créneau d'envoi imposé par le débit.
+     *
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = 0;
+        lock.lock();
+        try {
+            while (inFlight >= (int) concurrencyLimit) {
+                permitReleased.await();
+            }
+            inFlight++;
+            if (rate > 0) {
+                long now = System.nanoTime();
+                long slot = Math.max(now, nextSendNanos);
+                nextSendNanos = slot + (long) (1_000_000_000L / rate);
+                waitNanos = slot - now;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Réserve une place sans attendre : une transaction peut commencer tout de suite si le nombre
+     * de transactions simultanées le permet et si le créneau imposé par le débit est arrivé.
+     *
+     * @return Vrai si une place a été réservée, à libérer ensuite par {@link #release(Signal, long)}.
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) concurrencyLimit) {
+                return false;
+            }
+            if (rate > 0) {
+                long now = System.nanoTime();
+                if (nextSendNanos - now > 0) {
+                    return false;
+                }
+                nextSendNanos = now + (long) (1_000_000_000L / rate);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libère la place d'une transaction qui n'a pas eu lieu, sans ajuster les limites.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libère la place d'une transaction terminée et ajuste les limites selon son issue.
+     *
+     * @param signal L'issue de la transaction.
+     * @param rttNanos La durée de la transaction, en nanosecondes.
+     */
+    public void release(Signal signal, long rttNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            completedSinceDecrease++;
+            boolean congested = signal == Signal.OVERLOADED;
+            if (signal == Signal.SUCCESS) {
+                updateRtt(rttNanos);
+                congested = rttSamples >= MIN_RTT_SAMPLES && smoothedRttNanos > minRttNanos * LATENCY_TOLERANCE;
+            }
+            if (congested) {
+                decrease();
+            } else if (signal == Signal.SUCCESS) {
+                increase();
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateRtt(long rttNanos) {
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+        smoothedRttNanos = rttSamples == 0 ? rttNanos : smoothedRttNanos + RTT_SMOOTHING * (rttNanos - smoothedRttNanos);
+        rttSamples++;
+    }
+
+    /**
+     * Augmente les limites après une transaction réussie.
+     * En démarrage lent, chaque succès ajoute une unité : les limites doublent à chaque aller-retour.
+     */
+    private void increase() {
+        if (slowStart) {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1);
+            if (rate > 0) {
+                rate = Math.min(maxRate, rate + 1);
+            }
+        } else {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            if (rate > 0) {
+                rate = Math.min(maxRate, rate + RATE_INCREASE);
+            }
+        }
+    }
+
+    /**
+     * Divise les limites, au plus une fois par fenêtre pour ne pas réagir plusieurs fois
+     * à la même saturation : les transactions déjà lancées doivent d'abord se terminer.
+     */
+    private void decrease() {
+        if (decreases > 0 && completedSinceDecrease < concurrencyLimit) {
+            return;
+        }
+        slowStart = false;
+        completedSinceDecrease = 0;
+        decreases++;
+        concurrencyLimit = Math.max(minConcurrency, concurrencyLimit * DECREASE_FACTOR);
+        if (rate > 0) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        }
+        // La durée de référence est remesurée sur la fenêtre suivante, la charge du serveur ayant pu changer
+        minRttNanos = Double.MAX_VALUE;
+        rttSamples = 0;
+    }
+
+    /**
+     * Déduit le signal de régulation de l'issue d'un envoi.
+     *
+     * @param outcome L'issue de l'envoi.
+     * @return Le signal correspondant.
+     */
+    public static Signal signalOf(SendOutcome outcome) {
+        if (outcome.getError() instanceof ContentException) {
+            return Signal.NEUTRAL;
+        }
+        if (outcome.getError() != null) {
+            return Signal.OVERLOADED;
+        }
+        int code = outcome.getResult().getFinalReplyCode();
+        if (code / 100 == 4) {
+            return Signal.OVERLOADED;
+        }
+        return code / 100 == 2 ? Signal.SUCCESS : Signal.NEUTRAL;
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("%.1f sessions, %s, %d backoff(s)", concurrencyLimit,
+                    rate > 0 ? String.format("%.1f messages/s", rate) : "unlimited rate", decreases);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // region Accessors
+
+    public double getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDecreases() {
+        lock.lock();
+        try {
+            return decreases;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // endregion Accessors
+}
@@ -0,0 +1,385 @@
+package dai.dispatch;
+
+import dai.model.Email;
+import dai.network.ContentException;
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import dai.network.SmtpTimeouts;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Classe répartissant l'envoi d'une liste d'e-mails sur un ensemble de sessions SMTP.
+ * Chaque e-mail est envoyé depuis un thread virtuel qui emprunte une session libre du pool
+ * et la rend une fois la transaction terminée. Les e-mails en échec temporaire sont renvoyés
+ * par la file des nouvelles tentatives ; un e-mail livré en partie n'est renvoyé qu'à ses destinataires restants.
+ * <p>
+ * Les e-mails peuvent être répartis sur plusieurs relais selon leur poids : chaque relais a ses propres
+ * sessions, et un relais en mauvaise santé est écarté puis sondé jusqu'à ce qu'il réponde (voir {@link RelayPool}).
+ * <p>
+ * Les e-mails attendent leur tour dans des files par domaine de destination, servies à tour de rôle
+ * avec des limites propres à chaque domaine (voir {@link DomainQueues}) : un domaine lent ne retient
+ * que ses propres e-mails.
+ */
+public class CampaignDispatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(CampaignDispatcher.class.getName());
+    private final RelayPool relays;
+    private final int poolSize;
+    // Sessions libres de chaque relais ; le régulateur borne leur nombre total à poolSize
+    private final Map<Relay, BlockingQueue<SMTPClient>> sessions = new IdentityHashMap<>();
+    private final AdaptiveSendController controller;
+    private final RetryScheduler retries;
+    private final DomainQueues domains;
+    private final Path traceDirectory;
+    private final SmtpTimeouts timeouts;
+
+    public CampaignDispatcher(String smtpHost, int smtpPort, int poolSize) {
+        this(smtpHost, smtpPort, poolSize, poolSize > 0 ? AdaptiveSendController.fixed(poolSize) : null, RetryScheduler.none());
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param poolSize Le nombre de sessions du pool, qui borne le nombre de transactions simultanées.
+     * @param controller Le régulateur du nombre de transactions simultanées et du débit.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     */
+    public CampaignDispatcher(String smtpHost, int smtpPort, int poolSize, AdaptiveSendController controller, RetryScheduler retries) {
+        this(new RelayPool(List.of(new Relay(smtpHost, smtpPort))), poolSize, controller, retries);
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les e-mails.
+     * @param poolSize Le nombre maximal de transactions simultanées, tous relais confondus.
+     * @param controller Le régulateur du nombre de transactions simultanées et du débit.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     */
+    public CampaignDispatcher(RelayPool relays, int poolSize, AdaptiveSendController controller, RetryScheduler retries) {
+        this(relays, poolSize, controller, retries, DomainQueues.unlimited(poolSize));
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les e-mails.
+     * @param poolSize Le nombre maximal de transactions simultanées, tous relais confondus.
+     * @param controller Le régulateur du nombre total de transactions simultanées et du débit.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     * @param domains Les files d'attente par domaine de destination et leurs limites.
+     */
+    public CampaignDispatcher(RelayPool relays, int poolSize, AdaptiveSendController controller, RetryScheduler retries,
+                              DomainQueues domains) {
+        this(relays, poolSize, controller, retries, domains, null);
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les e-mails.
+     * @param poolSize Le nombre maximal de transactions simultanées, tous relais confondus.
+     * @param controller Le régulateur du nombre total de transactions simultanées et du débit.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     * @param domains Les files d'attente par domaine de destination et leurs limites.
+     * @param traceDirectory Le répertoire où les sessions vident la trace de leur dialogue après un échec, ou null.
+     */
+    public CampaignDispatcher(RelayPool relays, int poolSize, AdaptiveSendController controller, RetryScheduler retries,
+                              DomainQueues domains, Path traceDirectory) {
+        this(relays, poolSize, controller, retries, domains, traceDirectory, SmtpTimeouts.DEFAULT);
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les e-mails.
+     * @param poolSize Le nombre maximal de transactions simultanées, tous relais confondus.
+     * @param controller Le régulateur du nombre total de transactions simultanées et du débit.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     * @param domains Les files d'attente par domaine de destination et leurs limites.
+     * @param traceDirectory Le répertoire où les sessions vident la trace de leur dialogue après un échec, ou null.
+     * @param timeouts Les délais de connexion et d'attente des réponses des sessions.
+     */
+    public CampaignDispatcher(RelayPool relays, int poolSize, AdaptiveSendController controller, RetryScheduler retries,
+                              DomainQueues domains, Path traceDirectory, SmtpTimeouts timeouts) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("La taille du pool doit être un nombre positif.");
+        }
+        this.relays = relays;
+        this.poolSize = poolSize;
+        for (Relay relay : relays.getRelays()) {
+            sessions.put(relay, new ArrayBlockingQueue<>(poolSize));
+        }
+        this.controller = controller;
+        this.retries = retries;
+        this.domains = domains;
+        this.traceDirectory = traceDirectory;
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Ouvre les sessions du pool, réparties entre les relais selon leur poids.
+     * Un relais injoignable est écarté de la rotation ; l'ouverture n'échoue que si aucun relais ne répond.
+     *
+     * @throws IOException Si aucune session ne peut être établie.
+     */
+    public void open() throws IOException {
+        IOException failure = null;
+        boolean opened = false;
+        for (int i = 0; i < poolSize; i++) {
+            Relay relay = relays.select();
+            SMTPClient client = newClient(relay);
+            try {
+                client.connect();
+                opened = true;
+            } catch (IOException e) {
+                failure = e;
+                relays.recordConnectFailure(relay);
+                continue;
+            }
+            sessions.get(relay).add(client);
+        }
+        if (!opened) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Envoie tous les e-mails en parallèle sur les sessions du pool.
+     *
+     * @param emails Les e-mails à envoyer.
+     * @return Le bilan de la campagne.
+     */
+    public CampaignReport dispatch(List<Email> emails) {
+        return dispatch(emails.iterator());
+    }
+
+    /**
+     * Envoie les e-mails d'une source au fur et à mesure de leur production.
+     * Le nombre d'e-mails en cours et le débit sont bornés par les régulateurs : la source n'est lue
+     * qu'au rythme des envois, au plus la capacité des files d'avance, et la mémoire utilisée
+     * ne dépend pas de la taille de la campagne.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @return Le bilan de la campagne.
+     */
+    public CampaignReport dispatch(Iterator<Email> emails) {
+        return dispatch(emails, outcome -> { });
+    }
+
+    /**
+     * Envoie les e-mails d'une source en signalant l'issue définitive de chacun.
+     * Les nouvelles tentatives arrivées à échéance rejoignent les files de leur domaine dès leur échéance,
+     * sans que la source n'attende jamais : l'envoi ne patiente sur les tentatives restantes
+     * qu'une fois la source épuisée.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @param listener Le destinataire de l'issue de chaque e-mail.
+     * @return Le bilan de la campagne.
+     */
+    public CampaignReport dispatch(Iterator<Email> emails, OutcomeListener listener) {
+        return dispatch(EmailSource.of(emails), listener);
+    }
+
+    /**
+     * Envoie les e-mails d'une source qui peut en produire de nouveaux au fil de l'envoi,
+     * en signalant l'issue définitive de chacun. Une source momentanément vide est relue
+     * à chaque tour de la répartition ; l'envoi se termine une fois la source épuisée
+     * et tous ses e-mails partis.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @param listener Le destinataire de l'issue de chaque e-mail.
+     * @return Le bilan de la campagne.
+     */
+    public CampaignReport dispatch(EmailSource emails, OutcomeListener listener) {
+        long start = System.nanoTime();
+        CampaignReport report = new CampaignReport();
+        // E-mails tirés de la source dont l'issue définitive n'est pas encore connue
+        AtomicInteger unfinished = new AtomicInteger();
+        // Résultats des e-mails livrés en partie, par e-mail réduit à leurs destinataires restants (égalité d'identité)
+        Map<Email, DeliveryResult> partials = new ConcurrentHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                for (Relay relay : relays.dueProbes()) {
+                    executor.execute(() -> probe(relay));
+                }
+                RetryScheduler.Retry retry;
+                while ((retry = retries.poll()) != null) {
+                    domains.add(retry.email(), retry.attempt());
+                }
+                Email next;
+                while (!domains.isFull() && (next = emails.poll()) != null) {
+                    domains.add(next, 0);
+                    unfinished.incrementAndGet();
+                }
+                if (unfinished.get() == 0 && emails.isExhausted()) {
+                    break;
+                }
+
+                DomainQueues.Entry entry = domains.poll();
+                try {
+                    if (entry == null) {
+                        // Aucun domaine ne peut envoyer : attente d'une place, d'un créneau de débit,
+                        // d'une nouvelle tentative ou d'un nouvel e-mail de la source
+                        domains.awaitRelease(domains.getQueuedCount() > 0 ? 1 : RetryScheduler.TICK_MILLIS);
+                        continue;
+                    }
+                    controller.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.log(Level.WARNING, "Envoi de la campagne interrompu");
+                    if (entry != null) {
+                        // La place du domaine a été prise par poll() : l'e-mail ne partira pas
+                        domains.release(entry);
+                    }
+                    break;
+                }
+                executor.execute(() -> {
+                    Email email = entry.email();
+                    long sendStart = System.nanoTime();
+                    SendOutcome outcome;
+                    try {
+                        Relay relay = relays.select();
+                        outcome = send(relay, email);
+                        relays.recordOutcome(relay, outcome, System.nanoTime() - sendStart);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Erreur inattendue lors de la répartition de l'e-mail de " + email.getSender(), e);
+                        outcome = SendOutcome.failed(email, e);
+                    }
+                    long elapsed = System.nanoTime() - sendStart;
+                    AdaptiveSendController.Signal signal = AdaptiveSendController.signalOf(outcome);
+                    controller.release(signal, elapsed);
+                    domains.release(entry, signal, elapsed);
+                    // Une nouvelle tentative après une livraison partielle complète le résultat des précédentes
+                    DeliveryResult earlier = partials.remove(email);
+                    if (earlier != null && outcome.getResult() != null) {
+                        earlier.mergeRetry(outcome.getResult());
+                        outcome = SendOutcome.completed(email, earlier);
+                    }
+                    DeliveryResult result = earlier != null ? earlier : outcome.getResult();
+                    if (result != null && result.isPartiallyDelivered()) {
+                        // Seuls les destinataires restants sont retentés : les autres ont déjà reçu le message
+                        Email rest = email.withRecipients(result.getPendingRecipients());
+                        if (retries.schedule(rest, entry.attempt())) {
+                            partials.put(rest, result);
+                            report.recordRetry();
+                            return;
+                        }
+                    } else if (RetryScheduler.isTransient(outcome) && retries.schedule(email, entry.attempt())) {
+                        if (earlier != null) {
+                            partials.put(email, earlier);
+                        }
+                        report.recordRetry();
+                        return;
+                    }
+                    if (earlier != null) {
+                        // Tentatives épuisées : l'issue reste la livraison partielle
+                        outcome = SendOutcome.completed(email, earlier);
+                    }
+                    // L'issue est comptée même si le destinataire échoue : sinon la campagne ne se terminerait jamais
+                    try {
+                        listener.onOutcome(outcome);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Erreur lors du signalement de l'issue d'un e-mail", e);
+                    } finally {
+                        report.record(outcome);
+                        unfinished.decrementAndGet();
+                    }
+                });
+            }
+        }
+        LOGGER.log(Level.INFO, "Limites d''envoi finales : {0}", controller);
+        LOGGER.log(Level.INFO, "Relais : {0}", relays);
+        LOGGER.log(Level.INFO, "Files par domaine : {0}", domains);
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Envoie un e-mail sur une session libre du relais, ouverte au besoin.
+     * Une session dont la connexion a été perdue est refermée puis rétablie par le prochain envoi.
+     *
+     * @param relay Le relais choisi pour l'e-mail.
+     * @param email L'e-mail à envoyer.
+     * @return L'issue de l'envoi.
+     */
+    private SendOutcome send(Relay relay, Email email) {
+        BlockingQueue<SMTPClient> idle = sessions.get(relay);
+        SMTPClient client = idle.poll();
+        if (client == null) {
+            client = newClient(relay);
+        }
+        try {
+            if (!client.isConnected()) {
+                client.connect();
+            }
+            return SendOutcome.completed(email, client.sendGroupEmail(email));
+        } catch (ContentException e) {
+            // Contenu impossible à produire, pièce jointe illisible : échec définitif de l'e-mail.
+            // La session a déjà coupé sa connexion sans QUIT et sera rétablie par le prochain envoi
+            LOGGER.log(Level.SEVERE, "Contenu de l''e-mail de {0} illisible : {1}", new Object[]{email.getSender(), e.getMessage()});
+            return SendOutcome.failed(email, e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Échec de l''envoi depuis {0} : {1}", new Object[]{email.getSender(), e.getMessage()});
+            client.close();
+            return SendOutcome.failed(email, e);
+        } catch (RuntimeException e) {
+            // Erreur de programmation ou donnée inattendue : échec définitif de l'e-mail,
+            // et la session, interrompue au milieu d'une transaction, est refermée
+            LOGGER.log(Level.SEVERE, "Erreur inattendue lors de l'envoi depuis " + email.getSender(), e);
+            client.close();
+            return SendOutcome.failed(email, e);
+        } finally {
+            // Une session qui ne trouve pas de place parmi les sessions libres est fermée, pas abandonnée
+            if (!idle.offer(client)) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Crée une session, non connectée, vers un relais.
+     *
+     * @param relay Le relais.
+     * @return La session.
+     */
+    private SMTPClient newClient(Relay relay) {
+        return new SMTPClient(relay.host(), relay.port(), relay.recipientLimit(), SMTPClient.DEFAULT_MAX_IN_FLIGHT,
+                traceDirectory, timeouts);
+    }
+
+    /**
+     * Sonde un relais écarté par une connexion suivie de QUIT.
+     *
+     * @param relay Le relais à sonder.
+     */
+    private void probe(Relay relay) {
+        SMTPClient client = new SMTPClient(relay.host(), relay.port(), 0, SMTPClient.DEFAULT_MAX_IN_FLIGHT, null, timeouts);
+        try {
+            client.connect();
+            relays.recordProbe(relay, true);
+        } catch (IOException e) {
+            relays.recordProbe(relay, false);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Ferme toutes les sessions du pool.
+     */
+    @Override
+    public void close() {
+        for (BlockingQueue<SMTPClient> idle : sessions.values()) {
+            SMTPClient client;
+            while ((client = idle.poll()) != null) {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package dai.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe représentant le bilan d'une campagne d'envoi.
+ * Les issues sont comptées au fil de l'envoi : seules celles en échec sont conservées,
+ * afin que la mémoire utilisée ne dépende pas du nombre d'e-mails envoyés.
+ */
+public final class CampaignReport {
+    final private List<SendOutcome> failures = new ArrayList<>();
+    private long deliveredCount;
+    private long partialCount;
+    private long acceptedRecipientCount;
+    private long retryCount;
+    private long elapsedNanos;
+
+    public CampaignReport() {
+    }
+
+    public CampaignReport(List<SendOutcome> outcomes, long elapsedNanos) {
+        outcomes.forEach(this::record);
+        finish(elapsedNanos);
+    }
+
+    /**
+     * Compte l'issue d'un e-mail. Peut être appelée depuis plusieurs threads.
+     *
+     * @param outcome L'issue de l'envoi.
+     */
+    synchronized void record(SendOutcome outcome) {
+        if (outcome.getResult() != null) {
+            acceptedRecipientCount += outcome.getResult().getAcceptedRecipients().size();
+        }
+        if (outcome.isDelivered()) {
+            deliveredCount++;
+            if (outcome.getResult().isPartiallyDelivered()) {
+                partialCount++;
+            }
+        } else {
+            failures.add(outcome);
+        }
+    }
+
+    /**
+     * Compte un échec temporaire suivi d'une nouvelle tentative. Peut être appelée depuis plusieurs threads.
+     */
+    synchronized void recordRetry() {
+        retryCount++;
+    }
+
+    /**
+     * Enregistre la durée de la campagne, une fois tous les envois terminés.
+     *
+     * @param elapsedNanos La durée de la campagne en nanosecondes.
+     */
+    synchronized void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Compte les messages qui n'ont pas été acceptés.
+     *
+     * @return Le nombre de messages en échec.
+     */
+    public synchronized long getFailedCount() {
+        return failures.size();
+    }
+
+    /**
+     * Calcule le débit moyen de la campagne.
+     *
+     * @return Le nombre de messages traités par seconde.
+     */
+    public synchronized double getMessagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (deliveredCount + failures.size()) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d sent (%d partially), %d failed, %d retried, %d recipients accepted in %.3f s (%.1f messages/s)",
+                deliveredCount, partialCount, getFailedCount(), retryCount, acceptedRecipientCount,
+                elapsedNanos / 1_000_000_000.0, getMessagesPerSecond());
+    }
+
+    // region Accessors
+
+    public synchronized List<SendOutcome> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return Le nombre de messages livrés à une partie seulement de leurs destinataires, les autres n'ayant pu être servis.
+     */
+    public synchronized long getPartialCount() {
+        return partialCount;
+    }
+
+    public synchronized long getAcceptedRecipientCount() {
+        return acceptedRecipientCount;
+    }
+
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    public synchronized long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // endregion Accessors
+}
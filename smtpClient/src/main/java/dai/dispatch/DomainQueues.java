@@ -0,0 +1,200 @@
+package dai.dispatch;
+
+import dai.model.Email;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * Files d'attente des e-mails par domaine de destination, chacune avec ses propres limites de transactions
+ * simultanées et de débit, régulées par un {@link AdaptiveSendController} à partir des réponses reçues.
+ * <p>
+ * Les domaines ayant des e-mails en attente sont servis à tour de rôle : un domaine lent ou qui limite
+ * le débit n'occupe que ses propres places, et les e-mails des autres domaines passent devant les siens.
+ * Un e-mail part en une seule transaction : il est rangé selon le domaine de son premier destinataire.
+ * <p>
+ * Les méthodes sont synchronisées : les e-mails sont rangés et tirés par le thread de répartition,
+ * et les places libérées par les threads d'envoi.
+ */
+public class DomainQueues {
+    private final Function<String, AdaptiveSendController> limits;
+    private final int capacity;
+    private final Map<String, DomainQueue> domains = new HashMap<>();
+    // Domaines ayant des e-mails en attente, dans l'ordre du tour de rôle
+    private final ArrayDeque<DomainQueue> active = new ArrayDeque<>();
+    private int queued;
+
+    /**
+     * E-mail tiré d'une file, qui occupe une place de son domaine jusqu'à {@link #release}.
+     *
+     * @param email L'e-mail à envoyer.
+     * @param attempt Le numéro de la tentative, 0 pour le premier envoi.
+     * @param domain Le domaine de destination de l'e-mail.
+     */
+    public record Entry(Email email, int attempt, String domain) {
+    }
+
+    /**
+     * File d'un domaine et son régulateur.
+     */
+    private static final class DomainQueue {
+        final private String domain;
+        final private AdaptiveSendController controller;
+        final private ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        DomainQueue(String domain, AdaptiveSendController controller) {
+            this.domain = domain;
+            this.controller = controller;
+        }
+    }
+
+    /**
+     * @param limits La fabrique du régulateur de chaque nouveau domaine, selon le domaine.
+     * @param capacity Le nombre d'e-mails de la source mis en attente au-delà duquel la source n'est plus lue.
+     */
+    public DomainQueues(Function<String, AdaptiveSendController> limits, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacité des files doit être un nombre positif.");
+        }
+        this.limits = limits;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Crée des files sans limite propre aux domaines : seul le tour de rôle entre domaines s'applique.
+     *
+     * @param concurrency Le nombre total de transactions simultanées.
+     * @return Les files.
+     */
+    public static DomainQueues unlimited(int concurrency) {
+        return new DomainQueues(domain -> AdaptiveSendController.fixed(concurrency), concurrency);
+    }
+
+    /**
+     * Retourne le domaine de destination d'un e-mail : celui de son premier destinataire, en minuscules.
+     *
+     * @param email L'e-mail.
+     * @return Le domaine, vide si l'e-mail n'a pas de destinataire.
+     */
+    public static String domainOf(Email email) {
+        List<String> recipients = email.getRecipients();
+        if (recipients.isEmpty()) {
+            return "";
+        }
+        String address = recipients.get(0);
+        return address.substring(address.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Range un e-mail dans la file de son domaine.
+     * Une nouvelle tentative est toujours acceptée, même au-delà de la capacité.
+     *
+     * @param email L'e-mail.
+     * @param attempt Le numéro de la tentative, 0 pour le premier envoi.
+     */
+    public synchronized void add(Email email, int attempt) {
+        String domain = domainOf(email);
+        DomainQueue queue = domains.get(domain);
+        if (queue == null) {
+            queue = new DomainQueue(domain, limits.apply(domain));
+            domains.put(domain, queue);
+        }
+        if (queue.entries.isEmpty()) {
+            active.addLast(queue);
+        }
+        queue.entries.add(new Entry(email, attempt, domain));
+        queued++;
+    }
+
+    /**
+     * Tire le prochain e-mail dont le domaine a une place libre, en servant les domaines à tour de rôle.
+     *
+     * @return L'e-mail et son domaine, ou null si aucun domaine en attente ne peut envoyer maintenant.
+     */
+    public synchronized Entry poll() {
+        for (int i = active.size(); i > 0; i--) {
+            DomainQueue queue = active.pollFirst();
+            if (!queue.controller.tryAcquire()) {
+                active.addLast(queue);
+                continue;
+            }
+            Entry entry = queue.entries.poll();
+            if (!queue.entries.isEmpty()) {
+                active.addLast(queue);
+            }
+            queued--;
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Libère la place d'un e-mail envoyé et ajuste les limites de son domaine selon l'issue.
+     *
+     * @param entry L'e-mail tiré par {@link #poll()}.
+     * @param signal L'issue de la transaction.
+     * @param rttNanos La durée de la transaction.
+     */
+    public synchronized void release(Entry entry, AdaptiveSendController.Signal signal, long rttNanos) {
+        domains.get(entry.domain()).controller.release(signal, rttNanos);
+        notifyAll();
+    }
+
+    /**
+     * Libère la place d'un e-mail tiré qui ne sera pas envoyé, sans ajuster les limites de son domaine.
+     *
+     * @param entry L'e-mail tiré par {@link #poll()}.
+     */
+    public synchronized void release(Entry entry) {
+        domains.get(entry.domain()).controller.release();
+        notifyAll();
+    }
+
+    /**
+     * Attend qu'une place se libère, au plus le délai donné : une place libérée par le débit
+     * n'est pas signalée et se découvre à l'expiration du délai.
+     *
+     * @param timeoutMillis Le délai d'attente maximal.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public synchronized void awaitRelease(long timeoutMillis) throws InterruptedException {
+        wait(timeoutMillis);
+    }
+
+    /**
+     * Indique si la source ne doit plus être lue tant que des e-mails en attente ne sont pas partis.
+     *
+     * @return Vrai si la capacité est atteinte.
+     */
+    public synchronized boolean isFull() {
+        return queued >= capacity;
+    }
+
+    // region Accessors
+
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    public synchronized int getDomainCount() {
+        return domains.size();
+    }
+
+    // endregion Accessors
+
+    @Override
+    public synchronized String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (DomainQueue queue : domains.values()) {
+            if (queue.controller.getDecreases() > 0) {
+                joiner.add(queue.domain + " " + queue.controller);
+            }
+        }
+        return domains.size() + " domaines" + (joiner.length() > 0 ? ", ralentis : " + joiner : "");
+    }
+}
@@ -0,0 +1,47 @@
+package dai.dispatch;
+
+import dai.model.Email;
+
+import java.util.Iterator;
+
+/**
+ * Source des e-mails d'une campagne, lue par le thread de répartition sans jamais l'attendre.
+ * Contrairement à un {@link Iterator}, une source peut n'avoir aucun e-mail disponible pour l'instant
+ * sans être épuisée : c'est le cas d'un fichier d'adresses suivi pendant qu'il grandit.
+ */
+public interface EmailSource {
+    /**
+     * Retourne le prochain e-mail disponible, sans attendre.
+     *
+     * @return L'e-mail, ou null si aucun n'est disponible pour l'instant.
+     */
+    Email poll();
+
+    /**
+     * Indique si la source ne produira plus aucun e-mail.
+     * Une source épuisée n'a plus non plus d'e-mail disponible : un {@link #poll()} suivant retourne null.
+     *
+     * @return Vrai si la source est épuisée.
+     */
+    boolean isExhausted();
+
+    /**
+     * Adapte un itérateur, dont les e-mails sont tous disponibles sans attente.
+     *
+     * @param emails Les e-mails.
+     * @return La source.
+     */
+    static EmailSource of(Iterator<Email> emails) {
+        return new EmailSource() {
+            @Override
+            public Email poll() {
+                return emails.hasNext() ? emails.next() : null;
+            }
+
+            @Override
+            public boolean isExhausted() {
+                return !emails.hasNext();
+            }
+        };
+    }
+}
@@ -0,0 +1,191 @@
+package dai.dispatch;
+
+import dai.model.Email;
+import dai.network.DeliveryResult;
+import dai.network.NioSmtpEngine;
+import dai.network.SmtpTimeouts;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe répartissant l'envoi d'une liste d'e-mails sur le moteur SMTP non bloquant.
+ * Toutes les sessions sont menées par le thread appelant, sans thread par connexion.
+ * Les e-mails en échec temporaire sont renvoyés par la file des nouvelles tentatives.
+ * <p>
+ * Avec plusieurs relais, les sessions sont réparties entre eux selon leur poids. Chaque session puisant
+ * dans la source commune à son propre rythme, les sessions d'un relais injoignable ou lent en prennent
+ * d'elles-mêmes moins, sans suivi de santé séparé.
+ */
+public class NioCampaignDispatcher {
+    private final NioSmtpEngine engine;
+    private final RetryScheduler retries;
+
+    public NioCampaignDispatcher(String smtpHost, int smtpPort, int sessionCount) {
+        this(smtpHost, smtpPort, sessionCount, RetryScheduler.none());
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param sessionCount Le nombre de sessions simultanées.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     */
+    public NioCampaignDispatcher(String smtpHost, int smtpPort, int sessionCount, RetryScheduler retries) {
+        this(List.of(new Relay(smtpHost, smtpPort)), sessionCount, retries);
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les sessions.
+     * @param sessionCount Le nombre de sessions simultanées, tous relais confondus.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     */
+    public NioCampaignDispatcher(List<Relay> relays, int sessionCount, RetryScheduler retries) {
+        this(relays, sessionCount, retries, SmtpTimeouts.DEFAULT);
+    }
+
+    /**
+     * @param relays Les relais sur lesquels répartir les sessions.
+     * @param sessionCount Le nombre de sessions simultanées, tous relais confondus.
+     * @param retries La file des nouvelles tentatives après un échec temporaire.
+     * @param timeouts Les délais de connexion et d'attente des réponses des sessions.
+     */
+    public NioCampaignDispatcher(List<Relay> relays, int sessionCount, RetryScheduler retries, SmtpTimeouts timeouts) {
+        this.engine = new NioSmtpEngine(sessionRelays(relays), sessionCount, relays.get(0).host(), timeouts);
+        this.retries = retries;
+    }
+
+    /**
+     * Ordonne les adresses des relais pour que le moteur, qui les attribue aux sessions à tour de rôle,
+     * donne à chaque relais une part des sessions proportionnelle à son poids.
+     *
+     * @param relays Les relais.
+     * @return Une période du tour de rôle pondéré, un relais pouvant y figurer plusieurs fois.
+     */
+    private static List<InetSocketAddress> sessionRelays(List<Relay> relays) {
+        RelayPool pool = new RelayPool(relays);
+        int period = 0;
+        for (Relay relay : relays) {
+            period += relay.weight();
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>(period);
+        for (int i = 0; i < period; i++) {
+            Relay relay = pool.select();
+            addresses.add(new InetSocketAddress(relay.host(), relay.port()));
+        }
+        return addresses;
+    }
+
+    /**
+     * Envoie tous les e-mails sur les sessions du moteur non bloquant.
+     *
+     * @param emails Les e-mails à envoyer.
+     * @return Le bilan de la campagne.
+     * @throws IOException Si la boucle d'événements ne peut pas être démarrée.
+     */
+    public CampaignReport dispatch(List<Email> emails) throws IOException {
+        return dispatch(emails.iterator());
+    }
+
+    /**
+     * Envoie les e-mails d'une source au fur et à mesure de leur production :
+     * chaque session ne tire l'e-mail suivant qu'à la fin de sa transaction.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @return Le bilan de la campagne.
+     * @throws IOException Si la boucle d'événements ne peut pas être démarrée.
+     */
+    public CampaignReport dispatch(Iterator<Email> emails) throws IOException {
+        return dispatch(emails, outcome -> { });
+    }
+
+    /**
+     * Envoie les e-mails d'une source en signalant l'issue définitive de chacun.
+     * Le destinataire est appelé depuis la boucle d'événements et doit rendre la main rapidement.
+     * <p>
+     * Les sessions puisent d'abord dans les nouvelles tentatives arrivées à échéance, sans jamais les attendre.
+     * Lorsque la source est épuisée et que des tentatives restent programmées, le moteur est relancé
+     * à leur échéance.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @param listener Le destinataire de l'issue de chaque e-mail.
+     * @return Le bilan de la campagne.
+     * @throws IOException Si la boucle d'événements ne peut pas être démarrée.
+     */
+    public CampaignReport dispatch(Iterator<Email> emails, OutcomeListener listener) throws IOException {
+        long start = System.nanoTime();
+        CampaignReport report = new CampaignReport();
+        // Numéro de tentative des e-mails renvoyés, lu et écrit par la seule boucle d'événements
+        Map<Email, Integer> attempts = new IdentityHashMap<>();
+        Iterator<Email> source = new Iterator<>() {
+            private Email next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    RetryScheduler.Retry retry = retries.poll();
+                    if (retry != null) {
+                        attempts.put(retry.email(), retry.attempt());
+                        next = retry.email();
+                    } else if (emails.hasNext()) {
+                        next = emails.next();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Email next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Email email = next;
+                next = null;
+                return email;
+            }
+        };
+        NioSmtpEngine.Listener engineListener = new NioSmtpEngine.Listener() {
+            @Override
+            public void onCompleted(Email email, DeliveryResult result) {
+                onOutcome(SendOutcome.completed(email, result));
+            }
+
+            @Override
+            public void onFailed(Email email, IOException error) {
+                onOutcome(SendOutcome.failed(email, error));
+            }
+
+            private void onOutcome(SendOutcome outcome) {
+                Integer attempt = attempts.remove(outcome.getEmail());
+                if (RetryScheduler.isTransient(outcome) && retries.schedule(outcome.getEmail(), attempt != null ? attempt : 0)) {
+                    report.recordRetry();
+                    return;
+                }
+                listener.onOutcome(outcome);
+                report.record(outcome);
+            }
+        };
+
+        engine.run(source, engineListener);
+        while (retries.getPendingCount() > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(RetryScheduler.TICK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (source.hasNext()) {
+                engine.run(source, engineListener);
+            }
+        }
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+}
@@ -0,0 +1,16 @@
+package dai.dispatch;
+
+/**
+ * Interface recevant l'issue de chaque e-mail dès la fin de sa transaction,
+ * par exemple pour l'inscrire dans un journal d'envoi.
+ * Les méthodes peuvent être appelées depuis plusieurs threads à la fois.
+ */
+@FunctionalInterface
+public interface OutcomeListener {
+    /**
+     * Appelé lorsque l'envoi d'un e-mail est terminé, qu'il ait réussi ou non.
+     *
+     * @param outcome L'issue de l'envoi.
+     */
+    void onOutcome(SendOutcome outcome);
+}
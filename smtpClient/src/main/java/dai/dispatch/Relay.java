@@ -0,0 +1,36 @@
+package dai.dispatch;
+
+/**
+ * Relais SMTP sur lequel une campagne peut être répartie.
+ *
+ * @param host L'adresse du relais.
+ * @param port Le port du relais.
+ * @param weight Le poids du relais : sa part des e-mails est proportionnelle à son poids.
+ * @param recipientLimit Le nombre maximal de destinataires par transaction, ou 0 pour l'apprendre du relais.
+ */
+public record Relay(String host, int port, int weight, int recipientLimit) {
+    public Relay {
+        if (host == null || host.isBlank()) {
+            throw new IllegalArgumentException("L'adresse du relais doit être renseignée.");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Le poids du relais doit être un nombre positif.");
+        }
+        if (recipientLimit < 0) {
+            throw new IllegalArgumentException("La limite de destinataires ne peut pas être négative.");
+        }
+    }
+
+    public Relay(String host, int port, int weight) {
+        this(host, port, weight, 0);
+    }
+
+    public Relay(String host, int port) {
+        this(host, port, 1);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
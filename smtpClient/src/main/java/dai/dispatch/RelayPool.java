@@ -0,0 +1,286 @@
+package dai.dispatch;
+
+import dai.network.ContentException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Classe répartissant les e-mails sur plusieurs relais SMTP selon leur poids, en suivant leur santé.
+ * Les relais sains sont choisis à tour de rôle pondéré lissé : sur une période égale à la somme des poids,
+ * chaque relais est choisi autant de fois que son poids, sans rafale sur un même relais.
+ * <p>
+ * Un relais est écarté de la rotation après plusieurs échecs de connexion consécutifs, ou lorsque son taux
+ * d'échecs temporaires ou sa latence dérivent. Il est alors sondé par une simple connexion, à intervalles
+ * croissants, et revient dans la rotation dès qu'une sonde réussit. Si tous les relais sont écartés,
+ * ils restent tous choisis selon leur poids plutôt que de bloquer l'envoi.
+ */
+public class RelayPool {
+    private static final Logger LOGGER = Logger.getLogger(RelayPool.class.getName());
+    /** Nombre d'échecs de connexion consécutifs qui écartent un relais. */
+    static final int MAX_CONNECT_FAILURES = 3;
+    /** Nombre d'envois observés avant de juger le taux d'échec et la latence d'un relais. */
+    static final int MIN_SAMPLES = 20;
+    /** Taux moyen d'échecs temporaires au-delà duquel un relais est écarté. */
+    static final double MAX_ERROR_RATE = 0.5;
+    /** Rapport à la latence du relais sain le plus rapide au-delà duquel un relais est écarté. */
+    static final double MAX_LATENCY_RATIO = 5;
+    /** Latence en dessous de laquelle un relais n'est jamais jugé lent, quel que soit le rapport. */
+    static final long MIN_SLOW_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double SMOOTHING = 0.1;
+    private static final long MAX_PROBE_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final List<RelayState> states = new ArrayList<>();
+    private final long probeDelayNanos;
+
+    /**
+     * État d'un relais : santé, mesures lissées et crédit du tour de rôle pondéré.
+     */
+    private static final class RelayState {
+        final private Relay relay;
+        private int credit;
+        private boolean healthy = true;
+        private boolean probing;
+        private long probeDelay;
+        private long nextProbe;
+        private int samples;
+        private int consecutiveConnectFailures;
+        private double errorRate;
+        private double latencyNanos;
+        private long sent;
+        private long failed;
+
+        RelayState(Relay relay) {
+            this.relay = relay;
+        }
+    }
+
+    public RelayPool(List<Relay> relays) {
+        this(relays, 1000);
+    }
+
+    /**
+     * @param relays Les relais, dans l'ordre de la configuration.
+     * @param probeDelayMillis Le délai avant la première sonde d'un relais écarté, doublé à chaque sonde en échec.
+     */
+    public RelayPool(List<Relay> relays, long probeDelayMillis) {
+        if (relays == null || relays.isEmpty()) {
+            throw new IllegalArgumentException("Au moins un relais SMTP doit être fourni.");
+        }
+        for (Relay relay : relays) {
+            states.add(new RelayState(relay));
+        }
+        this.probeDelayNanos = TimeUnit.MILLISECONDS.toNanos(probeDelayMillis);
+    }
+
+    /**
+     * Choisit le relais du prochain e-mail parmi les relais sains, selon leur poids.
+     *
+     * @return Le relais choisi.
+     */
+    public synchronized Relay select() {
+        boolean anyHealthy = false;
+        for (RelayState state : states) {
+            anyHealthy |= state.healthy;
+        }
+        RelayState chosen = null;
+        int totalWeight = 0;
+        for (RelayState state : states) {
+            if (anyHealthy && !state.healthy) {
+                continue;
+            }
+            state.credit += state.relay.weight();
+            totalWeight += state.relay.weight();
+            if (chosen == null || state.credit > chosen.credit) {
+                chosen = state;
+            }
+        }
+        chosen.credit -= totalWeight;
+        return chosen.relay;
+    }
+
+    /**
+     * Enregistre l'issue d'un envoi sur un relais et l'écarte si sa santé s'est dégradée.
+     * Les issues d'un relais déjà écarté sont ignorées : seule une sonde le rétablit.
+     *
+     * @param relay Le relais utilisé.
+     * @param outcome L'issue de l'envoi.
+     * @param latencyNanos La durée de l'envoi.
+     */
+    public synchronized void recordOutcome(Relay relay, SendOutcome outcome, long latencyNanos) {
+        if (outcome.getError() instanceof ContentException) {
+            // Erreur du contenu de l'e-mail, qui ne dit rien de l'état du relais
+            return;
+        }
+        record(state(relay), outcome.getError() instanceof IOException, RetryScheduler.isTransient(outcome),
+                outcome.isDelivered(), latencyNanos);
+    }
+
+    /**
+     * Enregistre l'échec de l'ouverture d'une session sur un relais, en dehors de tout envoi.
+     *
+     * @param relay Le relais injoignable.
+     */
+    public synchronized void recordConnectFailure(Relay relay) {
+        record(state(relay), true, true, false, 0);
+    }
+
+    /**
+     * Met à jour les mesures d'un relais et l'écarte si sa santé s'est dégradée.
+     *
+     * @param state L'état du relais.
+     * @param connectionFailure Vrai si la connexion au relais a échoué ou a été perdue.
+     * @param failure Vrai si l'envoi a échoué temporairement.
+     * @param delivered Vrai si le message a été accepté.
+     * @param latencyNanos La durée de l'envoi.
+     */
+    private void record(RelayState state, boolean connectionFailure, boolean failure, boolean delivered, long latencyNanos) {
+        state.sent++;
+        if (!delivered) {
+            state.failed++;
+        }
+        if (!state.healthy) {
+            return;
+        }
+        state.consecutiveConnectFailures = connectionFailure ? state.consecutiveConnectFailures + 1 : 0;
+        state.errorRate += SMOOTHING * ((failure ? 1 : 0) - state.errorRate);
+        if (!connectionFailure) {
+            state.latencyNanos = state.latencyNanos == 0 ? latencyNanos
+                    : state.latencyNanos + SMOOTHING * (latencyNanos - state.latencyNanos);
+        }
+        state.samples++;
+
+        String reason = unhealthyReason(state);
+        if (reason != null) {
+            state.healthy = false;
+            state.probeDelay = probeDelayNanos;
+            state.nextProbe = System.nanoTime() + state.probeDelay;
+            LOGGER.log(Level.WARNING, "Relais {0} écarté : {1}", new Object[]{state.relay, reason});
+        }
+    }
+
+    /**
+     * Indique pourquoi un relais sain doit être écarté.
+     *
+     * @param state L'état du relais.
+     * @return La raison, ou null si le relais reste sain.
+     */
+    private String unhealthyReason(RelayState state) {
+        if (state.consecutiveConnectFailures >= MAX_CONNECT_FAILURES) {
+            return state.consecutiveConnectFailures + " échecs de connexion consécutifs";
+        }
+        if (state.samples < MIN_SAMPLES) {
+            return null;
+        }
+        if (state.errorRate > MAX_ERROR_RATE) {
+            return String.format("%.0f %% d'échecs temporaires", state.errorRate * 100);
+        }
+        double fastest = Double.MAX_VALUE;
+        for (RelayState other : states) {
+            if (other != state && other.healthy && other.samples >= MIN_SAMPLES && other.latencyNanos > 0) {
+                fastest = Math.min(fastest, other.latencyNanos);
+            }
+        }
+        if (state.latencyNanos > MIN_SLOW_LATENCY_NANOS && state.latencyNanos > MAX_LATENCY_RATIO * fastest) {
+            return String.format("latence de %.1f ms", state.latencyNanos / 1e6);
+        }
+        return null;
+    }
+
+    /**
+     * Renvoie les relais écartés dont la prochaine sonde est due et les marque comme en cours de sonde.
+     *
+     * @return Les relais à sonder, vide le plus souvent.
+     */
+    public synchronized List<Relay> dueProbes() {
+        List<Relay> due = List.of();
+        long now = System.nanoTime();
+        for (RelayState state : states) {
+            if (!state.healthy && !state.probing && now - state.nextProbe >= 0) {
+                if (due.isEmpty()) {
+                    due = new ArrayList<>();
+                }
+                state.probing = true;
+                due.add(state.relay);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Enregistre le résultat de la sonde d'un relais écarté.
+     * Un relais qui répond revient dans la rotation avec des mesures remises à zéro ;
+     * sinon, la prochaine sonde est repoussée d'un délai doublé.
+     *
+     * @param relay Le relais sondé.
+     * @param success Vrai si le relais a accepté la connexion.
+     */
+    public synchronized void recordProbe(Relay relay, boolean success) {
+        RelayState state = state(relay);
+        state.probing = false;
+        if (success) {
+            state.healthy = true;
+            state.samples = 0;
+            state.consecutiveConnectFailures = 0;
+            state.errorRate = 0;
+            state.latencyNanos = 0;
+            state.credit = 0;
+            LOGGER.log(Level.INFO, "Relais {0} rétabli", relay);
+        } else {
+            state.probeDelay = Math.min(state.probeDelay * 2, MAX_PROBE_DELAY_NANOS);
+            state.nextProbe = System.nanoTime() + state.probeDelay;
+        }
+    }
+
+    /**
+     * Indique si un relais fait partie de la rotation.
+     *
+     * @param relay Le relais.
+     * @return Vrai si le relais est sain.
+     */
+    public synchronized boolean isHealthy(Relay relay) {
+        return state(relay).healthy;
+    }
+
+    /**
+     * Retrouve l'état d'un relais du pool.
+     *
+     * @param relay Le relais, tel que renvoyé par {@link #select()}.
+     * @return L'état du relais.
+     */
+    private RelayState state(Relay relay) {
+        for (RelayState state : states) {
+            if (state.relay == relay) {
+                return state;
+            }
+        }
+        throw new IllegalArgumentException("Relais inconnu : " + relay);
+    }
+
+    // region Accessors
+
+    public List<Relay> getRelays() {
+        List<Relay> relays = new ArrayList<>(states.size());
+        for (RelayState state : states) {
+            relays.add(state.relay);
+        }
+        return relays;
+    }
+
+    // endregion Accessors
+
+    @Override
+    public synchronized String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (RelayState state : states) {
+            joiner.add(String.format("%s (%s, %d envois, %d en échec)", state.relay,
+                    state.healthy ? "sain" : "écarté", state.sent, state.failed));
+        }
+        return joiner.toString();
+    }
+}
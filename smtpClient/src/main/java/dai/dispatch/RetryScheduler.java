@@ -0,0 +1,128 @@
+package dai.dispatch;
+
+import dai.model.Email;
+import dai.network.ContentException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+
+/**
+ * File des nouvelles tentatives d'envoi après un échec temporaire (réponse 4xx ou connexion perdue).
+ * <p>
+ * Le délai avant chaque tentative double à chaque échec, jusqu'à un maximum, et est tiré au hasard
+ * entre la moitié et la totalité de sa valeur pour que les e-mails refusés ensemble ne reviennent pas ensemble.
+ * Les tentatives sont rangées dans un {@link TimingWheel} : programmer et reprendre une tentative
+ * coûtent un temps constant, même avec des millions de tentatives en attente.
+ * <p>
+ * Les échecs définitifs (5xx) ne sont jamais retentés.
+ */
+public class RetryScheduler {
+    /** Précision des délais, en millisecondes. */
+    public static final long TICK_MILLIS = 10;
+
+    /**
+     * Nouvelle tentative d'envoi d'un e-mail.
+     *
+     * @param email L'e-mail à renvoyer.
+     * @param attempt Le numéro de la tentative, 1 pour la première nouvelle tentative.
+     */
+    public record Retry(Email email, int attempt) {
+    }
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final TimingWheel<Retry> wheel = new TimingWheel<>(TICK_MILLIS, now());
+    private final ArrayDeque<Retry> due = new ArrayDeque<>();
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * @param maxRetries Le nombre maximal de nouvelles tentatives par e-mail, 0 pour ne jamais retenter.
+     * @param baseDelayMillis Le délai avant la première nouvelle tentative, en millisecondes.
+     * @param maxDelayMillis Le délai maximal entre deux tentatives, en millisecondes.
+     */
+    public RetryScheduler(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        if (maxRetries < 0 || baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Les paramètres des nouvelles tentatives doivent vérifier 0 < délai <= délai maximal.");
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Crée une file qui ne retente jamais.
+     *
+     * @return La file.
+     */
+    public static RetryScheduler none() {
+        return new RetryScheduler(0, 1, 1);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Indique si l'échec d'un envoi est temporaire et justifie une nouvelle tentative.
+     *
+     * @param outcome L'issue de l'envoi.
+     * @return Vrai pour une réponse finale 4xx ou une erreur de connexion.
+     */
+    public static boolean isTransient(SendOutcome outcome) {
+        if (outcome.getError() != null) {
+            return outcome.getError() instanceof IOException && !(outcome.getError() instanceof ContentException);
+        }
+        return outcome.getResult().getFinalReplyCode() / 100 == 4;
+    }
+
+    /**
+     * Programme une nouvelle tentative après l'échec temporaire d'une tentative, s'il en reste.
+     * Peut être appelée depuis plusieurs threads.
+     *
+     * @param email L'e-mail dont l'envoi a échoué.
+     * @param attempt Le numéro de la tentative qui a échoué, 0 pour le premier envoi.
+     * @return Vrai si une nouvelle tentative a été programmée, faux si toutes ont été épuisées.
+     */
+    public synchronized boolean schedule(Email email, int attempt) {
+        if (attempt >= maxRetries) {
+            return false;
+        }
+        wheel.schedule(new Retry(email, attempt + 1), now() + delayMillis(attempt));
+        return true;
+    }
+
+    /**
+     * Calcule le délai avant la tentative suivant un échec : délai de base doublé à chaque échec,
+     * borné, puis tiré entre sa moitié et sa totalité.
+     *
+     * @param attempt Le numéro de la tentative qui a échoué.
+     * @return Le délai en millisecondes.
+     */
+    long delayMillis(int attempt) {
+        long delay = attempt >= Long.numberOfLeadingZeros(baseDelayMillis) - 1
+                ? maxDelayMillis : Math.min(maxDelayMillis, baseDelayMillis << attempt);
+        return delay / 2 + random.nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Reprend une tentative arrivée à échéance, sans attendre.
+     *
+     * @return La tentative, ou null si aucune n'est arrivée à échéance.
+     */
+    public synchronized Retry poll() {
+        if (due.isEmpty()) {
+            wheel.advance(now(), due::add);
+        }
+        return due.poll();
+    }
+
+    // region Accessors
+
+    public synchronized int getPendingCount() {
+        return wheel.size() + due.size();
+    }
+
+    // endregion Accessors
+}
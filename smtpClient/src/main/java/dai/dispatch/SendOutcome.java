@@ -0,0 +1,76 @@
+package dai.dispatch;
+
+import dai.model.Email;
+import dai.network.DeliveryResult;
+
+/**
+ * Classe représentant l'issue de l'envoi d'un e-mail par le répartiteur.
+ * Contient soit le résultat de la transaction SMTP, soit l'erreur qui l'a interrompue.
+ */
+public class SendOutcome {
+    final private Email email;
+    final private DeliveryResult result;
+    final private Exception error;
+
+    private SendOutcome(Email email, DeliveryResult result, Exception error) {
+        this.email = email;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * Crée l'issue d'une transaction SMTP menée à son terme.
+     *
+     * @param email L'e-mail envoyé.
+     * @param result Le résultat de la transaction.
+     * @return L'issue de l'envoi.
+     */
+    static SendOutcome completed(Email email, DeliveryResult result) {
+        return new SendOutcome(email, result, null);
+    }
+
+    /**
+     * Crée l'issue d'un envoi interrompu par une erreur.
+     *
+     * @param email L'e-mail qui n'a pas pu être envoyé.
+     * @param error L'erreur rencontrée.
+     * @return L'issue de l'envoi.
+     */
+    static SendOutcome failed(Email email, Exception error) {
+        return new SendOutcome(email, null, error);
+    }
+
+    /**
+     * Indique si le message a été accepté par le serveur.
+     *
+     * @return Vrai si le message a été accepté.
+     */
+    public boolean isDelivered() {
+        return result != null && result.isDelivered();
+    }
+
+    /**
+     * Décrit la raison de l'échec de l'envoi.
+     *
+     * @return La dernière réponse du serveur ou le message de l'erreur.
+     */
+    public String getFailureReason() {
+        return error != null ? error.getMessage() : result.getFinalResponse();
+    }
+
+    // region Accessors
+
+    public Email getEmail() {
+        return email;
+    }
+
+    public DeliveryResult getResult() {
+        return result;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    // endregion Accessors
+}
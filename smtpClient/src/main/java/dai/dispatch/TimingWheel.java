@@ -0,0 +1,151 @@
+package dai.dispatch;
+
+import java.util.function.Consumer;
+
+/**
+ * Échéancier hiérarchique à roues : {@value #LEVELS} roues de {@value #SLOTS} cases,
+ * chaque case d'une roue couvrant un tour complet de la roue inférieure.
+ * <p>
+ * Programmer une échéance et la faire expirer coûtent un temps constant, quel que soit
+ * le nombre d'échéances en attente : une échéance lointaine est rangée dans une roue haute,
+ * puis redescendue d'une roue lorsque la roue inférieure atteint sa case.
+ * Les échéances au-delà de la dernière roue y sont rangées au plus loin, puis reprogrammées.
+ * <p>
+ * Cette classe n'est pas synchronisée.
+ *
+ * @param <T> Le type des éléments programmés.
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * Échéance chaînée dans une case.
+     */
+    private static final class Node<T> {
+        final private T value;
+        final private long deadlineTick;
+        private Node<T> next;
+
+        Node(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final Node<T>[][] slots = newSlots();
+    // Premier tic non encore traité
+    private long currentTick;
+    private int size;
+
+    /**
+     * Crée les cases vides de tous les niveaux : un tableau générique ne peut être créé que sans son type.
+     *
+     * @return Les cases, indexées par niveau puis par position.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[][] newSlots() {
+        return (Node<T>[][]) new Node<?>[LEVELS][SLOTS];
+    }
+
+    /**
+     * @param tickMillis La durée d'un tic, qui est la précision de l'échéancier, en millisecondes.
+     * @param startMillis L'instant de départ, en millisecondes.
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("La durée d'un tic doit être un nombre positif.");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Programme un élément. Une échéance déjà passée expire au prochain avancement.
+     *
+     * @param value L'élément à programmer.
+     * @param deadlineMillis L'échéance, en millisecondes.
+     */
+    public void schedule(T value, long deadlineMillis) {
+        long deadlineTick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), currentTick);
+        insert(new Node<>(value, deadlineTick));
+        size++;
+    }
+
+    /**
+     * Range une échéance dans la plus basse roue dont le tour la contient.
+     *
+     * @param node L'échéance à ranger.
+     */
+    private void insert(Node<T> node) {
+        long delta = Math.min(node.deadlineTick - currentTick, MAX_DELTA);
+        long tick = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int index = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        node.next = slots[level][index];
+        slots[level][index] = node;
+    }
+
+    /**
+     * Avance l'échéancier jusqu'à un instant et transmet les éléments arrivés à échéance.
+     *
+     * @param nowMillis L'instant courant, en millisecondes.
+     * @param expired Le destinataire des éléments arrivés à échéance.
+     */
+    public void advance(long nowMillis, Consumer<? super T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick <= targetTick) {
+            if (size == 0) {
+                currentTick = targetTick + 1;
+                return;
+            }
+            // Au début d'un tour de roue, la case courante de la roue supérieure redescend
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+            }
+            int index = (int) (currentTick & (SLOTS - 1));
+            Node<T> node = slots[0][index];
+            slots[0][index] = null;
+            currentTick++;
+            while (node != null) {
+                Node<T> next = node.next;
+                size--;
+                expired.accept(node.value);
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Redistribue les échéances d'une case dans les roues inférieures.
+     *
+     * @param level La roue de la case.
+     * @param index L'indice de la case.
+     */
+    private void cascade(int level, int index) {
+        Node<T> node = slots[level][index];
+        slots[level][index] = null;
+        while (node != null) {
+            Node<T> next = node.next;
+            insert(node);
+            node = next;
+        }
+    }
+
+    // region Accessors
+
+    public int size() {
+        return size;
+    }
+
+    // endregion Accessors
+}
@@ -0,0 +1,290 @@
+package dai.journal;
+
+import dai.model.Email;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal d'envoi en ajout seul, projeté en mémoire, permettant de reprendre une campagne interrompue.
+ * Chaque transaction terminée y est inscrite avec le numéro de l'e-mail et la réponse finale du serveur.
+ * <p>
+ * L'écriture d'un enregistrement n'est qu'une copie dans la projection mémoire : elle survit à l'arrêt
+ * brutal du processus. Le vidage sur disque ({@link MappedByteBuffer#force()}) est regroupé et fait
+ * par un thread d'arrière-plan toutes les {@value #FLUSH_INTERVAL_MS} ms, sans bloquer les envois.
+ * Chaque enregistrement porte une somme CRC32 : un enregistrement incomplet termine la lecture.
+ * <p>
+ * Format : en-tête (nombre magique portant la version, graine, empreinte de la configuration), puis des enregistrements
+ * « longueur, numéro, code, livré, réponse, CRC32 ». Une longueur nulle marque la fin du journal.
+ */
+public class SendJournal implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SendJournal.class.getName());
+    private static final int MAGIC = 0x44414A31; // "DAJ1"
+    private static final int HEADER_SIZE = 4 + 8 + 8;
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_RESPONSE_BYTES = 512;
+    private static final long FLUSH_INTERVAL_MS = 20;
+
+    private final FileChannel channel;
+    private final long seed;
+    private final BitSet delivered = new BitSet();
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService flusher;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private int recordCount;
+    private boolean dirty;
+
+    /**
+     * Ouvre le journal, en le créant s'il n'existe pas, et relit les transactions déjà inscrites.
+     *
+     * @param file Le fichier du journal.
+     * @param seed La graine à utiliser pour une nouvelle campagne ; celle du journal est reprise s'il existe.
+     * @param fingerprint L'empreinte de la configuration, qui doit être identique pour reprendre une campagne.
+     * @return Le journal ouvert.
+     * @throws IOException Si le fichier ne peut pas être ouvert ou s'il appartient à une autre campagne.
+     */
+    public static SendJournal open(Path file, long seed, long fingerprint) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new SendJournal(channel, seed, fingerprint);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private SendJournal(FileChannel channel, long seed, long fingerprint) throws IOException {
+        this.channel = channel;
+        long end;
+        if (channel.size() == 0) {
+            this.seed = seed;
+            map(0, SEGMENT_SIZE);
+            segment.putInt(MAGIC).putLong(seed).putLong(fingerprint);
+            segment.force();
+            end = HEADER_SIZE;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Le fichier n'est pas un journal d'envoi : " + channel);
+            }
+            this.seed = header.getLong();
+            if (header.getLong() != fingerprint) {
+                throw new IOException("Le journal d'envoi a été créé pour une autre configuration.");
+            }
+            end = recover();
+        }
+        // La fin du fichier a déjà été agrandie lors d'une session précédente : la place restante
+        // du dernier segment est réutilisée, au lieu d'ajouter un segment à chaque reprise
+        map(end, Math.max(channel.size() - end, 0));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "send-journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Relit les enregistrements existants jusqu'au premier enregistrement vide ou incomplet.
+     *
+     * @return La position suivant le dernier enregistrement valide.
+     * @throws IOException Si le fichier ne peut pas être lu.
+     */
+    private long recover() throws IOException {
+        MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        existing.position(HEADER_SIZE);
+        int lastValid = HEADER_SIZE;
+        try {
+            while (existing.remaining() >= 4) {
+                int length = existing.getInt();
+                if (length <= 0 || length > existing.remaining()) {
+                    break;
+                }
+                int start = existing.position();
+                long id = existing.getLong();
+                existing.getShort();
+                boolean ok = existing.get() != 0;
+                int responseLength = existing.getShort();
+                existing.position(existing.position() + responseLength);
+                crc.reset();
+                crc.update(existing.slice(start, existing.position() - start));
+                if (existing.getInt() != (int) crc.getValue() || existing.position() - start != length) {
+                    break;
+                }
+                if (ok && id >= 0 && id < Integer.MAX_VALUE) {
+                    delivered.set((int) id);
+                }
+                recordCount++;
+                lastValid = existing.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Enregistrement tronqué : la lecture s'arrête au dernier enregistrement complet
+        }
+        LOGGER.log(Level.INFO, "Journal d''envoi repris : {0} transactions, {1} e-mails déjà livrés",
+                new Object[]{recordCount, delivered.cardinality()});
+        return lastValid;
+    }
+
+    /**
+     * Projette en mémoire un segment du fichier à partir d'une position, en agrandissant le fichier si besoin.
+     *
+     * @param start La position du début du segment.
+     * @param size La taille du segment.
+     * @throws IOException Si la projection échoue.
+     */
+    private void map(long start, long size) throws IOException {
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        segmentStart = start;
+    }
+
+    /**
+     * Inscrit la fin d'une transaction. Peut être appelée depuis plusieurs threads.
+     *
+     * @param id Le numéro de l'e-mail.
+     * @param replyCode Le code de la réponse finale du serveur, 0 en cas d'erreur de connexion.
+     * @param response La réponse finale du serveur ou le message de l'erreur.
+     * @param ok Vrai si le message a été accepté.
+     */
+    public synchronized void record(long id, int replyCode, String response, boolean ok) {
+        byte[] text = response == null ? new byte[0] : response.strip().getBytes(StandardCharsets.UTF_8);
+        int textLength = Math.min(text.length, MAX_RESPONSE_BYTES);
+        int length = 8 + 2 + 1 + 2 + textLength + 4;
+        try {
+            // Place pour l'enregistrement et la longueur nulle qui marque la fin
+            if (segment.remaining() < 4 + length + 4) {
+                segment.force();
+                map(segmentStart + segment.position(), SEGMENT_SIZE);
+            }
+            int lengthPosition = segment.position();
+            segment.position(lengthPosition + 4);
+            int start = segment.position();
+            segment.putLong(id).putShort((short) replyCode).put((byte) (ok ? 1 : 0))
+                    .putShort((short) textLength).put(text, 0, textLength);
+            crc.reset();
+            crc.update(segment.slice(start, segment.position() - start));
+            segment.putInt((int) crc.getValue());
+            // Fin du journal après cet enregistrement, puis sa longueur en dernier :
+            // un enregistrement à moitié écrit reste invisible à la reprise
+            segment.putInt(segment.position(), 0);
+            segment.putInt(lengthPosition, length);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible d''agrandir le journal d''envoi : {0}", e.getMessage());
+            return;
+        }
+        if (ok && id >= 0 && id < Integer.MAX_VALUE) {
+            delivered.set((int) id);
+        }
+        recordCount++;
+        dirty = true;
+    }
+
+    /**
+     * Vide sur disque les enregistrements écrits depuis le dernier vidage.
+     */
+    private void flush() {
+        MappedByteBuffer toFlush;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            toFlush = segment;
+            dirty = false;
+        }
+        // Hors du verrou : les envois continuent d'écrire pendant le vidage
+        toFlush.force();
+    }
+
+    /**
+     * Indique si un e-mail a déjà été accepté par le serveur lors d'une exécution précédente ou de celle-ci.
+     *
+     * @param id Le numéro de l'e-mail.
+     * @return Vrai si l'e-mail a été livré.
+     */
+    public synchronized boolean isDelivered(long id) {
+        return id >= 0 && id < Integer.MAX_VALUE && delivered.get((int) id);
+    }
+
+    /**
+     * Filtre une source d'e-mails en sautant ceux déjà livrés.
+     *
+     * @param emails La source des e-mails numérotés.
+     * @return Les e-mails restant à envoyer.
+     */
+    public Iterator<Email> skipDelivered(Iterator<Email> emails) {
+        return new Iterator<>() {
+            private Email next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && emails.hasNext()) {
+                    Email email = emails.next();
+                    if (!isDelivered(email.getId())) {
+                        next = email;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Email next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Email email = next;
+                next = null;
+                return email;
+            }
+        };
+    }
+
+    /**
+     * Arrête le vidage périodique, vide les derniers enregistrements et ferme le fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segment.force();
+            channel.close();
+        }
+    }
+
+    // region Accessors
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getDeliveredCount() {
+        return delivered.cardinality();
+    }
+
+    // endregion Accessors
+}
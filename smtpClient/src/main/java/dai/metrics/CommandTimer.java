@@ -0,0 +1,72 @@
+package dai.metrics;
+
+/**
+ * Chronomètre des commandes d'une session : chaque commande envoyée est notée avec son instant d'envoi,
+ * puis chaque réponse lue est associée, dans l'ordre, à la plus ancienne commande sans réponse.
+ * Convient donc aussi aux lots de commandes envoyés avec PIPELINING.
+ * <p>
+ * Une session n'est menée que par un thread à la fois : cette classe n'est pas synchronisée.
+ * Les tableaux circulaires ne sont agrandis que pour les lots plus longs que tous les précédents.
+ */
+public class CommandTimer {
+    private final SmtpMetrics metrics;
+    private SmtpCommand[] commands = new SmtpCommand[16];
+    private long[] sentAt = new long[16];
+    private int head;
+    private int size;
+
+    public CommandTimer(SmtpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Note l'envoi d'une commande dont la réponse est attendue.
+     *
+     * @param command L'étape de la commande.
+     */
+    public void sent(SmtpCommand command) {
+        if (size == commands.length) {
+            grow();
+        }
+        int index = (head + size) & (commands.length - 1);
+        commands[index] = command;
+        sentAt[index] = System.nanoTime();
+        size++;
+    }
+
+    /**
+     * Associe une réponse à la plus ancienne commande sans réponse et enregistre sa durée et sa classe.
+     *
+     * @param code Le code de la réponse.
+     */
+    public void replied(int code) {
+        metrics.recordReply(code);
+        if (size == 0) {
+            return;
+        }
+        metrics.recordLatency(commands[head], System.nanoTime() - sentAt[head]);
+        head = (head + 1) & (commands.length - 1);
+        size--;
+    }
+
+    /**
+     * Oublie les commandes sans réponse, lorsque la connexion est fermée ou rouverte.
+     */
+    public void reset() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        SmtpCommand[] newCommands = new SmtpCommand[commands.length * 2];
+        long[] newSentAt = new long[commands.length * 2];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & (commands.length - 1);
+            newCommands[i] = commands[index];
+            newSentAt[i] = sentAt[index];
+        }
+        commands = newCommands;
+        sentAt = newSentAt;
+        head = 0;
+    }
+}
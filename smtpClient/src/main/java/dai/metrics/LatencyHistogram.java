@@ -0,0 +1,131 @@
+package dai.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées à mémoire fixe, sur le principe de HdrHistogram : les valeurs sont rangées
+ * dans des cases logarithmiques, chacune subdivisée en {@value #SUB_BUCKETS} cases linéaires,
+ * soit une précision relative d'environ 3 % de la nanoseconde à plusieurs siècles.
+ * <p>
+ * L'enregistrement est sans verrou (un incrément atomique et deux {@link LongAdder}) et n'alloue rien ;
+ * la lecture des centiles parcourt les cases sans bloquer les enregistrements.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Enregistre une durée. Peut être appelée depuis plusieurs threads.
+     *
+     * @param nanos La durée en nanosecondes ; une durée négative compte pour zéro.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Calcule la case d'une valeur : les {@value #SUB_BUCKETS} premières valeurs ont chacune leur case,
+     * les suivantes sont rangées selon leur puissance de deux et leurs bits de poids fort.
+     *
+     * @param value La valeur positive.
+     * @return L'indice de la case.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    /**
+     * Calcule la plus grande valeur rangée dans une case.
+     *
+     * @param index L'indice de la case.
+     * @return La borne supérieure de la case.
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Calcule un centile des durées enregistrées.
+     *
+     * @param percentile Le centile, entre 0 et 100.
+     * @return La borne supérieure de la case contenant le centile, en nanosecondes, ou 0 sans enregistrement.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / 1_000.0 / n;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return getValueAtPercentile(50) / 1_000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return getValueAtPercentile(90) / 1_000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getValueAtPercentile(99) / 1_000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return getValueAtPercentile(99.9) / 1_000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1_000.0;
+    }
+}
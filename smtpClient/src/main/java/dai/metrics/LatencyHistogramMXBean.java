@@ -0,0 +1,20 @@
+package dai.metrics;
+
+/**
+ * Vue JMX d'un histogramme de durées, en microsecondes.
+ */
+public interface LatencyHistogramMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
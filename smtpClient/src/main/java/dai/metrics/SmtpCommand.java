@@ -0,0 +1,41 @@
+package dai.metrics;
+
+/**
+ * Étapes d'une session SMTP dont la durée est mesurée : de l'envoi de la commande à la réponse du serveur.
+ */
+public enum SmtpCommand {
+    /** De l'ouverture de la connexion à la bannière 220. */
+    CONNECT,
+    EHLO,
+    MAIL,
+    RCPT,
+    DATA,
+    /** Morceau BDAT intermédiaire. */
+    BDAT,
+    /** Fin du contenu : « . » après DATA, ou BDAT LAST. */
+    END_OF_DATA,
+    /** HELO, RSET, QUIT. */
+    OTHER;
+
+    /**
+     * Déduit l'étape d'une commande à partir de son texte.
+     *
+     * @param command La commande, sans CRLF.
+     * @return L'étape correspondante.
+     */
+    public static SmtpCommand of(String command) {
+        if (command.equals(".")) {
+            return END_OF_DATA;
+        }
+        if (command.length() < 4) {
+            return OTHER;
+        }
+        return switch (command.substring(0, 4).toUpperCase()) {
+            case "EHLO" -> EHLO;
+            case "MAIL" -> MAIL;
+            case "RCPT" -> RCPT;
+            case "DATA" -> DATA;
+            default -> OTHER;
+        };
+    }
+}
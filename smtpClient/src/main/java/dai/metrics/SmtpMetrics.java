@@ -0,0 +1,210 @@
+package dai.metrics;
+
+import dai.network.DeliveryResult;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mesures des sessions SMTP : durée de chaque étape, messages, destinataires, octets envoyés
+ * et classes des réponses du serveur.
+ * <p>
+ * Les enregistrements sont sans verrou ({@link LongAdder}, {@link LatencyHistogram}) et peuvent
+ * venir de toutes les sessions à la fois. Les mesures sont publiées en MBeans sous le domaine
+ * {@value #DOMAIN} et résumées par {@link #summary()}.
+ */
+public class SmtpMetrics implements SmtpMetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(SmtpMetrics.class.getName());
+    private static final String DOMAIN = "dai.smtp";
+    private static final SmtpMetrics INSTANCE = new SmtpMetrics();
+
+    private final Map<SmtpCommand, LatencyHistogram> latencies = new EnumMap<>(SmtpCommand.class);
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder messagesDelivered = new LongAdder();
+    private final LongAdder recipientsAccepted = new LongAdder();
+    private final LongAdder recipientsRejected = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder[] replyClasses = new LongAdder[6];
+    private boolean registered;
+
+    public SmtpMetrics() {
+        for (SmtpCommand command : SmtpCommand.values()) {
+            latencies.put(command, new LatencyHistogram());
+        }
+        for (int i = 0; i < replyClasses.length; i++) {
+            replyClasses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Retourne les mesures communes à toutes les sessions du processus.
+     *
+     * @return Les mesures.
+     */
+    public static SmtpMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enregistre la durée d'une étape.
+     *
+     * @param command L'étape.
+     * @param nanos La durée en nanosecondes.
+     */
+    public void recordLatency(SmtpCommand command, long nanos) {
+        latencies.get(command).record(nanos);
+    }
+
+    /**
+     * Compte une réponse du serveur selon sa classe (2xx, 3xx, 4xx, 5xx).
+     *
+     * @param code Le code de la réponse.
+     */
+    public void recordReply(int code) {
+        int replyClass = code / 100;
+        if (replyClass >= 2 && replyClass <= 5) {
+            replyClasses[replyClass].increment();
+        }
+    }
+
+    /**
+     * Compte une connexion ouverte.
+     */
+    public void recordConnection() {
+        connections.increment();
+    }
+
+    /**
+     * Compte des octets écrits sur une connexion.
+     *
+     * @param count Le nombre d'octets.
+     */
+    public void recordBytes(long count) {
+        bytesSent.add(count);
+    }
+
+    /**
+     * Compte une transaction terminée, ses destinataires acceptés et refusés.
+     *
+     * @param result Le résultat de la transaction.
+     */
+    public void recordTransaction(DeliveryResult result) {
+        messagesSent.increment();
+        if (result.isDelivered()) {
+            messagesDelivered.increment();
+        }
+        recipientsAccepted.add(result.getAcceptedRecipients().size());
+        recipientsRejected.add(result.getRejectedRecipients().size());
+    }
+
+    /**
+     * Publie les mesures en MBeans : les compteurs sous {@code dai.smtp:type=Counters},
+     * chaque histogramme sous {@code dai.smtp:type=Latency,command=...}.
+     * Les appels suivants sont sans effet.
+     */
+    public synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=Counters"));
+            for (Map.Entry<SmtpCommand, LatencyHistogram> entry : latencies.entrySet()) {
+                server.registerMBean(entry.getValue(), new ObjectName(DOMAIN + ":type=Latency,command=" + entry.getKey()));
+            }
+            registered = true;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Impossible de publier les mesures SMTP en MBeans : {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Résume les mesures : compteurs, puis durée de chaque étape mesurée.
+     *
+     * @return Le résumé, sur plusieurs lignes.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d connections, %d messages (%d delivered), %d recipients accepted, %d rejected, %d bytes sent%n",
+                getConnections(), getMessagesSent(), getMessagesDelivered(), getRecipientsAccepted(),
+                getRecipientsRejected(), getBytesSent()));
+        sb.append(String.format("Replies: %d 2xx, %d 3xx, %d 4xx, %d 5xx%n",
+                getReplies2xx(), getReplies3xx(), getReplies4xx(), getReplies5xx()));
+        sb.append(String.format("%-12s %9s %10s %10s %10s %10s %10s%n", "Latency (ms)", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (Map.Entry<SmtpCommand, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() > 0) {
+                sb.append(String.format("%-12s %9d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(), histogram.getCount(),
+                        histogram.getMeanMicros() / 1_000, histogram.getP50Micros() / 1_000, histogram.getP99Micros() / 1_000,
+                        histogram.getP999Micros() / 1_000, histogram.getMaxMicros() / 1_000));
+            }
+        }
+        return sb.toString();
+    }
+
+    // region Accessors
+
+    public LatencyHistogram getLatency(SmtpCommand command) {
+        return latencies.get(command);
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getMessagesDelivered() {
+        return messagesDelivered.sum();
+    }
+
+    @Override
+    public long getRecipientsAccepted() {
+        return recipientsAccepted.sum();
+    }
+
+    @Override
+    public long getRecipientsRejected() {
+        return recipientsRejected.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getReplies2xx() {
+        return replyClasses[2].sum();
+    }
+
+    @Override
+    public long getReplies3xx() {
+        return replyClasses[3].sum();
+    }
+
+    @Override
+    public long getReplies4xx() {
+        return replyClasses[4].sum();
+    }
+
+    @Override
+    public long getReplies5xx() {
+        return replyClasses[5].sum();
+    }
+
+    // endregion Accessors
+}
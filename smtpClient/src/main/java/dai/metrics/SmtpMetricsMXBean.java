@@ -0,0 +1,26 @@
+package dai.metrics;
+
+/**
+ * Vue JMX des compteurs des sessions SMTP.
+ */
+public interface SmtpMetricsMXBean {
+    long getConnections();
+
+    long getMessagesSent();
+
+    long getMessagesDelivered();
+
+    long getRecipientsAccepted();
+
+    long getRecipientsRejected();
+
+    long getBytesSent();
+
+    long getReplies2xx();
+
+    long getReplies3xx();
+
+    long getReplies4xx();
+
+    long getReplies5xx();
+}
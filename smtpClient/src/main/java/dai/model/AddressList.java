@@ -0,0 +1,69 @@
+package dai.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Liste d'adresses en lecture seule désignées par une plage d'un tableau d'indices d'un {@link AddressStore}.
+ * Les groupes et les e-mails partagent ainsi le même tableau sans copier les adresses ;
+ * les chaînes ne sont créées qu'à la lecture, et les octets peuvent être copiés directement dans les commandes SMTP.
+ */
+public class AddressList extends AbstractList<String> implements RandomAccess {
+    final private AddressStore store;
+    final private int[] handles;
+    final private int from;
+    final private int to;
+
+    AddressList(AddressStore store, int[] handles, int from, int to) {
+        if (from < 0 || from > to || to > handles.length) {
+            throw new IndexOutOfBoundsException("Plage invalide : " + from + " à " + to);
+        }
+        this.store = store;
+        this.handles = handles;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public String get(int index) {
+        return store.get(handle(index));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Retourne une vue sur une plage de la liste, elle-même adossée au stockage :
+     * les commandes RCPT TO d'une partie des destinataires restent copiées sans créer de chaîne.
+     */
+    @Override
+    public AddressList subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex > toIndex || toIndex > size()) {
+            throw new IndexOutOfBoundsException("Plage invalide : " + fromIndex + " à " + toIndex);
+        }
+        return new AddressList(store, handles, from + fromIndex, from + toIndex);
+    }
+
+    /**
+     * Retourne l'indice dans le stockage de l'adresse à une position de la liste.
+     *
+     * @param index La position dans la liste.
+     * @return L'indice de l'adresse dans le stockage.
+     */
+    public int handle(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return handles[from + index];
+    }
+
+    // region Accessors
+
+    public AddressStore getStore() {
+        return store;
+    }
+
+    // endregion Accessors
+}
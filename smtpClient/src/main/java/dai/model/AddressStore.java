@@ -0,0 +1,256 @@
+package dai.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stockage compact des adresses e-mail d'une campagne.
+ * Chaque adresse est conservée une seule fois, en UTF-8, dans un tableau d'octets commun ;
+ * elle est désignée par un entier (son indice d'ajout). Une table de hachage à adressage ouvert,
+ * elle aussi faite d'entiers, élimine les doublons au chargement.
+ * Une adresse occupe ainsi ses octets plus une dizaine d'octets, au lieu d'un objet String complet.
+ */
+public class AddressStore {
+    private static final int EMPTY = -1;
+
+    private byte[] data;
+    private int dataLength;
+    private int[] offsets;
+    private int count;
+    private int[] table;
+    private int duplicates;
+
+    public AddressStore() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedAddresses Le nombre d'adresses attendu, pour dimensionner les tableaux.
+     */
+    public AddressStore(int expectedAddresses) {
+        int capacity = Math.max(16, expectedAddresses);
+        data = new byte[capacity * 24];
+        offsets = new int[capacity + 1];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * Ajoute une adresse si elle n'est pas déjà présente.
+     *
+     * @param address L'adresse à ajouter.
+     * @return L'indice de l'adresse, celui de la première occurrence pour un doublon.
+     */
+    public int add(String address) {
+        byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int handle = table[slot];
+            if (handle == EMPTY) {
+                table[slot] = append(bytes);
+                if (count * 2 > table.length) {
+                    rehash();
+                }
+                return count - 1;
+            }
+            if (equalsAt(handle, bytes)) {
+                duplicates++;
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * Ajoute les octets d'une nouvelle adresse à la fin du stockage.
+     *
+     * @param bytes Les octets UTF-8 de l'adresse.
+     * @return L'indice de l'adresse.
+     */
+    private int append(byte[] bytes) {
+        if (dataLength + bytes.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + bytes.length));
+        }
+        if (count + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(bytes, 0, data, dataLength, bytes.length);
+        dataLength += bytes.length;
+        offsets[++count] = dataLength;
+        return count - 1;
+    }
+
+    /**
+     * Double la table de hachage et y replace toutes les adresses.
+     */
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for (int handle = 0; handle < count; handle++) {
+            int slot = hash(data, offsets[handle], offsets[handle + 1]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = handle;
+        }
+    }
+
+    private boolean equalsAt(int handle, byte[] bytes) {
+        return Arrays.equals(data, offsets[handle], offsets[handle + 1], bytes, 0, bytes.length);
+    }
+
+    private static int hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // Mélange les bits de poids fort vers le bas, la table étant indexée par masque
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Retourne une adresse sous forme de chaîne.
+     *
+     * @param handle L'indice de l'adresse.
+     * @return L'adresse.
+     */
+    public String get(int handle) {
+        checkHandle(handle);
+        return new String(data, offsets[handle], offsets[handle + 1] - offsets[handle], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retourne la longueur en octets UTF-8 d'une adresse.
+     *
+     * @param handle L'indice de l'adresse.
+     * @return Le nombre d'octets de l'adresse.
+     */
+    public int byteLength(int handle) {
+        checkHandle(handle);
+        return offsets[handle + 1] - offsets[handle];
+    }
+
+    /**
+     * Copie les octets UTF-8 d'une adresse, sans créer de chaîne.
+     *
+     * @param handle L'indice de l'adresse.
+     * @param dest Le tableau de destination.
+     * @param destPos La position de la copie dans le tableau de destination.
+     */
+    public void copyBytes(int handle, byte[] dest, int destPos) {
+        checkHandle(handle);
+        System.arraycopy(data, offsets[handle], dest, destPos, offsets[handle + 1] - offsets[handle]);
+    }
+
+    /**
+     * Applique une fonction aux octets UTF-8 d'une adresse, directement dans le tableau commun, sans copie.
+     * La fonction ne doit pas modifier le tableau. Peut être appelée depuis plusieurs threads une fois le chargement terminé.
+     *
+     * @param handle L'indice de l'adresse.
+     * @param function La fonction à appliquer.
+     * @return Le résultat de la fonction.
+     */
+    public <T> T inspect(int handle, BytesFunction<T> function) {
+        checkHandle(handle);
+        return function.apply(data, offsets[handle], offsets[handle + 1]);
+    }
+
+    /**
+     * Ajoute les octets de toutes les adresses, dans l'ordre d'ajout, à une empreinte, sans copie.
+     * Chaque adresse est suivie d'un saut de ligne, pour que des découpages différents des mêmes octets
+     * donnent des empreintes différentes.
+     *
+     * @param digest L'empreinte à mettre à jour.
+     */
+    public void updateDigest(MessageDigest digest) {
+        for (int handle = 0; handle < count; handle++) {
+            digest.update(data, offsets[handle], offsets[handle + 1] - offsets[handle]);
+            digest.update((byte) '\n');
+        }
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= count) {
+            throw new IndexOutOfBoundsException(handle);
+        }
+    }
+
+    /**
+     * Libère la place réservée et non utilisée, une fois le chargement terminé.
+     */
+    public void trimToSize() {
+        data = Arrays.copyOf(data, dataLength);
+        offsets = Arrays.copyOf(offsets, count + 1);
+    }
+
+    /**
+     * Retourne une vue en lecture seule de toutes les adresses, dans l'ordre d'ajout.
+     *
+     * @return La liste des adresses.
+     */
+    public List<String> asList() {
+        return new AllAddresses();
+    }
+
+    /**
+     * Retourne une vue sur une partie d'un tableau d'indices, sans copie.
+     *
+     * @param handles Le tableau d'indices d'adresses.
+     * @param from Le début de la plage, inclus.
+     * @param to La fin de la plage, exclue.
+     * @return La liste des adresses de la plage.
+     */
+    public AddressList range(int[] handles, int from, int to) {
+        return new AddressList(this, handles, from, to);
+    }
+
+    // region Accessors
+
+    public int size() {
+        return count;
+    }
+
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    // endregion Accessors
+
+    /**
+     * Fonction appliquée aux octets d'une adresse.
+     */
+    @FunctionalInterface
+    public interface BytesFunction<T> {
+        /**
+         * @param data Le tableau contenant l'adresse.
+         * @param from La position du premier octet de l'adresse.
+         * @param to La position suivant le dernier octet de l'adresse.
+         * @return Le résultat de la fonction.
+         */
+        T apply(byte[] data, int from, int to);
+    }
+
+    /**
+     * Vue de toutes les adresses du stockage.
+     */
+    private class AllAddresses extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return AddressStore.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
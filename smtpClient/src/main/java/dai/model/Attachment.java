@@ -0,0 +1,54 @@
+package dai.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Classe représentant une pièce jointe : un fichier sur disque, son nom et son type de contenu.
+ */
+public class Attachment {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    final private Path path;
+    final private String fileName;
+    final private String contentType;
+
+    public Attachment(Path path, String contentType) {
+        this.path = path.toAbsolutePath().normalize();
+        this.fileName = path.getFileName().toString();
+        this.contentType = contentType;
+    }
+
+    /**
+     * Crée une pièce jointe dont le type de contenu est déduit du fichier.
+     *
+     * @param path Le chemin du fichier.
+     * @return La pièce jointe.
+     */
+    public static Attachment of(Path path) {
+        String contentType = null;
+        try {
+            contentType = Files.probeContentType(path);
+        } catch (IOException e) {
+            // Le type par défaut est utilisé
+        }
+        return new Attachment(path, contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+    }
+
+    // region Accessors
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // endregion Accessors
+}
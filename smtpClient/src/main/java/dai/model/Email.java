@@ -1,6 +1,7 @@
 package dai.model;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -9,15 +10,81 @@ import java.util.List;
 public class Email {
     final private String sender;
     final private List<String> recipients;
+    // Destinataires cités dans l'en-tête To: ; tout le groupe, même pour un e-mail réduit à une partie de ses destinataires
+    final private List<String> headerRecipients;
     final private String subject;
     final private String body;
+    final private List<Attachment> attachments;
+    final private Message message;
+    final private long id;
 
     // Constructeur
     public Email(String sender, List<String> recipients, String subject, String body) {
+        this(sender, recipients, subject, body, List.of());
+    }
+
+    public Email(String sender, List<String> recipients, String subject, String body, List<Attachment> attachments) {
         this.sender = sender;
         this.recipients = recipients;
+        this.headerRecipients = recipients;
         this.subject = subject;
         this.body = body;
+        this.attachments = attachments;
+        this.message = null;
+        this.id = -1;
+    }
+
+    /**
+     * Crée un e-mail à partir d'un message partagé, dont l'encodage peut être réutilisé d'un groupe à l'autre.
+     *
+     * @param sender L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param message Le message envoyé.
+     */
+    public Email(String sender, List<String> recipients, Message message) {
+        this(sender, recipients, message, -1);
+    }
+
+    /**
+     * Crée un e-mail numéroté à partir d'un message partagé.
+     * Le numéro identifie la transaction d'une exécution à l'autre, par exemple dans un journal d'envoi.
+     *
+     * @param sender L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param message Le message envoyé.
+     * @param id Le numéro de l'e-mail dans la campagne.
+     */
+    public Email(String sender, List<String> recipients, Message message, long id) {
+        this.sender = sender;
+        this.recipients = recipients;
+        this.headerRecipients = recipients;
+        this.subject = message.getSubject();
+        this.body = message.getBody();
+        this.attachments = message.getAttachments();
+        this.message = message;
+        this.id = id;
+    }
+
+    private Email(Email email, List<String> recipients) {
+        this.sender = email.sender;
+        this.recipients = recipients;
+        this.headerRecipients = email.headerRecipients;
+        this.subject = email.subject;
+        this.body = email.body;
+        this.attachments = email.attachments;
+        this.message = email.message;
+        this.id = email.id;
+    }
+
+    /**
+     * Crée le même e-mail, de même numéro, réduit à une partie de ses destinataires,
+     * par exemple ceux qui restent à tenter après une livraison partielle. L'en-tête To: cite toujours tout le groupe.
+     *
+     * @param recipients Les destinataires restants.
+     * @return L'e-mail réduit.
+     */
+    public Email withRecipients(List<String> recipients) {
+        return new Email(this, recipients);
     }
 
     /**
@@ -26,9 +93,9 @@ public class Email {
      * @param group Groupe à partir duquel créer l'e-mail.
      * @return Email nouvellement créé.
      */
-    private static Email createEmail(Group group){
+    public static Email createEmail(Group group){
         Message msg = group.getMessage();
-        return new Email(group.getSender(),group.getRecipients(), msg.getSubject(), msg.getBody());
+        return new Email(group.getSender(), group.getRecipients(), msg);
     }
 
     /**
@@ -45,6 +112,30 @@ public class Email {
         }
         return emailList;
     }
+    /**
+     * Crée les e-mails au fur et à mesure du parcours des groupes, sans les garder en mémoire.
+     * Les e-mails sont numérotés dans l'ordre des groupes, à partir de 0.
+     *
+     * @param groups Les groupes, produits par exemple par un {@link GroupGenerator}.
+     * @return Les e-mails, un par groupe.
+     */
+    public static Iterator<Email> createEmails(Iterator<Group> groups) {
+        return new Iterator<>() {
+            private long nextId;
+
+            @Override
+            public boolean hasNext() {
+                return groups.hasNext();
+            }
+
+            @Override
+            public Email next() {
+                Group group = groups.next();
+                return new Email(group.getSender(), group.getRecipients(), group.getMessage(), nextId++);
+            }
+        };
+    }
+
     // region Accessors
     public String getSender() {
         return sender;
@@ -54,6 +145,10 @@ public class Email {
         return recipients;
     }
 
+    public List<String> getHeaderRecipients() {
+        return headerRecipients;
+    }
+
 
     public String getSubject() {
         return subject;
@@ -64,5 +159,17 @@ public class Email {
         return body;
     }
 
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public long getId() {
+        return id;
+    }
+
     // endregion Accessors
 }
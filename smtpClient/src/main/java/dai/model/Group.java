@@ -1,7 +1,6 @@
 package dai.model;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -19,52 +18,45 @@ public class Group {
         this.message = message;
     }
 
+    /**
+     * Crée un groupe à partir d'une plage d'indices d'adresses : la première est l'expéditeur,
+     * les suivantes les destinataires. Les adresses ne sont pas copiées.
+     *
+     * @param store Le stockage des adresses.
+     * @param handles Le tableau d'indices d'adresses, partagé entre les groupes.
+     * @param from Le début de la plage, inclus.
+     * @param to La fin de la plage, exclue.
+     * @param message Le message du groupe.
+     */
+    public Group(AddressStore store, int[] handles, int from, int to, Message message) {
+        this.sender = store.get(handles[from]);
+        this.recipients = store.range(handles, from + 1, to);
+        this.message = message;
+    }
+
 
 
     /**
      * Crée une liste de groupes basée sur les paramètres fournis.
-     * Mélange les listes de victimes et de messages et forme des groupes aléatoires.
+     * Les groupes sont produits par un {@link GroupGenerator} ; pour de grandes campagnes,
+     * utiliser directement le générateur afin de ne pas garder tous les groupes en mémoire.
      *
      * @param minNumberOfEmailsPerGroup Nombre minimum d'e-mails par groupe.
      * @param maxNumberOfEmailsPerGroup Nombre maximum d'e-mails par groupe.
      * @param numberOfGroups Nombre total de groupes à former.
-     * @param victims Liste des victimes (destinataires).
+     * @param victims Stockage des adresses des victimes (destinataires).
      * @param messages Liste des messages disponibles.
      * @return Liste des groupes créés ou null si une erreur se produit.
      */
-    public static List<Group> createGroups(int minNumberOfEmailsPerGroup, int maxNumberOfEmailsPerGroup, int numberOfGroups, List<String> victims ,List<Message> messages){
-        List<Group> groups = new ArrayList<>();
-        Collections.shuffle(victims);
-        Collections.shuffle(messages);
-        try{
-
-            // random between min and max number of emails per group
-            int groupSize = (int) (Math.random() * (maxNumberOfEmailsPerGroup - minNumberOfEmailsPerGroup))
-                    + minNumberOfEmailsPerGroup;
-
-            for (int i = 0; i < numberOfGroups; i++) {
-
-                int startIndex = i * groupSize;
-
-                int endIndex = i* groupSize + (groupSize);
-
-                if (victims.size() < endIndex) {
-                    throw new Exception("Error, not enough victims to form a group");
-                }
-
-                ArrayList<String> selectedVictims = new ArrayList<>(victims.subList(startIndex, endIndex));
-
-                String sender = selectedVictims.remove(0);
-
-                // get random message
-                Message message = messages.get((int) (Math.random() * messages.size()));
-
-                groups.add(new Group(sender, selectedVictims, message));
-            }
-
+    public static List<Group> createGroups(int minNumberOfEmailsPerGroup, int maxNumberOfEmailsPerGroup, int numberOfGroups, AddressStore victims, List<Message> messages){
+        try {
+            GroupGenerator generator = new GroupGenerator(victims, messages, numberOfGroups,
+                    minNumberOfEmailsPerGroup, maxNumberOfEmailsPerGroup, System.nanoTime());
+            List<Group> groups = new ArrayList<>(numberOfGroups);
+            generator.forEachRemaining(groups::add);
             return groups;
-        }catch(Exception e){
-            System.out.println(e.getMessage()+"\n");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + "\n");
         }
         return null;
     }
@@ -0,0 +1,100 @@
+package dai.model;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Générateur de groupes à la demande, un groupe à la fois.
+ * Les victimes sont tirées sans remise par un mélange de Fisher-Yates partiel sur un tableau d'indices :
+ * seules les positions du groupe en cours sont mélangées, et chaque groupe désigne sa plage du tableau
+ * sans copie. La taille de chaque groupe est tirée dans [min, max]. Avec la même graine,
+ * les mêmes groupes sont produits dans le même ordre.
+ */
+public class GroupGenerator implements Iterator<Group> {
+    final private AddressStore victims;
+    final private List<Message> messages;
+    final private int numberOfGroups;
+    final private int minGroupSize;
+    final private int maxGroupSize;
+    final private SplittableRandom random;
+    final private int[] handles;
+    private int position;
+    private int generated;
+
+    /**
+     * @param victims Le stockage des adresses des victimes.
+     * @param messages Les messages disponibles.
+     * @param numberOfGroups Le nombre de groupes à produire.
+     * @param minGroupSize La taille minimale d'un groupe, expéditeur compris.
+     * @param maxGroupSize La taille maximale d'un groupe, expéditeur compris.
+     * @param seed La graine du générateur aléatoire.
+     */
+    public GroupGenerator(AddressStore victims, List<Message> messages, int numberOfGroups,
+                          int minGroupSize, int maxGroupSize, long seed) {
+        if (minGroupSize < 2 || minGroupSize > maxGroupSize) {
+            throw new IllegalArgumentException("La taille des groupes doit être comprise entre 2 et " + maxGroupSize + ".");
+        }
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("Au moins un message est nécessaire.");
+        }
+        if ((long) numberOfGroups * maxGroupSize > victims.size()) {
+            throw new IllegalArgumentException("Pas assez de victimes pour former " + numberOfGroups + " groupes.");
+        }
+        this.victims = victims;
+        this.messages = List.copyOf(messages);
+        this.numberOfGroups = numberOfGroups;
+        this.minGroupSize = minGroupSize;
+        this.maxGroupSize = maxGroupSize;
+        this.random = new SplittableRandom(seed);
+        this.handles = new int[victims.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = i;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return generated < numberOfGroups;
+    }
+
+    /**
+     * Produit le groupe suivant en tirant ses membres parmi les victimes pas encore utilisées.
+     *
+     * @return Le groupe suivant.
+     */
+    @Override
+    public Group next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int size = random.nextInt(minGroupSize, maxGroupSize + 1);
+        int from = position;
+        for (int i = from; i < from + size; i++) {
+            int j = random.nextInt(i, handles.length);
+            int tmp = handles[i];
+            handles[i] = handles[j];
+            handles[j] = tmp;
+        }
+        position += size;
+        generated++;
+        Message message = messages.get(random.nextInt(messages.size()));
+        return new Group(victims, handles, from, position, message);
+    }
+
+    /**
+     * Retourne les groupes restants sous forme de flux séquentiel.
+     *
+     * @return Le flux des groupes.
+     */
+    public Stream<Group> stream() {
+        Spliterator<Group> spliterator = Spliterators.spliterator(this, numberOfGroups - generated,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+}
@@ -1,15 +1,23 @@
 package dai.model;
 
+import java.util.List;
+
 /**
- * Classe représentant un message avec un sujet et un corps.
+ * Classe représentant un message avec un sujet, un corps et d'éventuelles pièces jointes.
  */
 public class Message {
     final private String subject;
     final private String body;
+    final private List<Attachment> attachments;
 
    public Message( String subject, String body) {
+        this(subject, body, List.of());
+    }
+
+    public Message(String subject, String body, List<Attachment> attachments) {
         this.subject = subject;
         this.body = body;
+        this.attachments = List.copyOf(attachments);
     }
 
     // region Accessors
@@ -22,5 +30,9 @@ public class Message {
         return body;
     }
 
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
     // endregion Accessors
 }
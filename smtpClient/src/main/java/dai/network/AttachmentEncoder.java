@@ -0,0 +1,87 @@
+package dai.network;
+
+import dai.metrics.SmtpMetrics;
+import dai.model.Attachment;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodeur des pièces jointes en base64, une seule fois par fichier et pour tout le processus.
+ * La version encodée (lignes de 76 caractères terminées par CRLF) est écrite dans un fichier temporaire,
+ * que les sessions transmettent ensuite telle quelle à la connexion sans la recharger en mémoire.
+ */
+public final class AttachmentEncoder {
+    private static final Map<Path, Path> ENCODED_FILES = new ConcurrentHashMap<>();
+
+    private AttachmentEncoder() {
+    }
+
+    /**
+     * Retourne le fichier contenant la pièce jointe encodée en base64, en l'encodant au premier appel.
+     *
+     * @param attachment La pièce jointe.
+     * @return Le chemin du fichier encodé, supprimé à la fin du processus.
+     * @throws ContentException Si le fichier ne peut pas être lu ou encodé.
+     */
+    public static Path encode(Attachment attachment) throws ContentException {
+        try {
+            return ENCODED_FILES.computeIfAbsent(attachment.getPath(), AttachmentEncoder::encodeToTempFile);
+        } catch (UncheckedIOException e) {
+            throw new ContentException("Pièce jointe illisible : " + attachment.getPath(), e.getCause());
+        }
+    }
+
+    /**
+     * Encode un fichier en base64 dans un fichier temporaire, par morceaux.
+     *
+     * @param source Le fichier à encoder.
+     * @return Le fichier encodé.
+     */
+    private static Path encodeToTempFile(Path source) {
+        try {
+            Path encoded = Files.createTempFile("smtp-attachment-", ".b64");
+            encoded.toFile().deleteOnExit();
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(encoded))) {
+                try (OutputStream base64 = Base64.getMimeEncoder().wrap(new NonClosingOutputStream(file))) {
+                    Files.copy(source, base64);
+                }
+                file.write('\r');
+                file.write('\n');
+            }
+            return encoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Transmet tout le contenu d'un fichier à un canal avec {@link FileChannel#transferTo},
+     * sans copie dans le tas Java lorsque le système le permet.
+     *
+     * @param file Le fichier à transmettre.
+     * @param target Le canal de destination.
+     * @throws IOException Si la lecture ou l'écriture échoue.
+     */
+    static void transfer(Path file, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            // Octets transmis sans passer par le flux de sortie compté de la session
+            SmtpMetrics.getInstance().recordBytes(size);
+        }
+    }
+}
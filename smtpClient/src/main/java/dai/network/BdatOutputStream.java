@@ -0,0 +1,162 @@
+package dai.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Flux de sortie envoyant le contenu d'un message en morceaux « BDAT taille » (RFC 3030, CHUNKING).
+ * Chaque morceau est annoncé avec sa taille exacte : le contenu n'a besoin ni de dot-stuffing
+ * ni de séquence de fin, et un grand tableau est transmis tel quel sans copie intermédiaire.
+ * Le dernier morceau, éventuellement vide, est envoyé par {@link #finish()} avec « BDAT taille LAST ».
+ * La fermeture du flux ne ferme pas le flux sous-jacent.
+ */
+public class BdatOutputStream extends OutputStream implements FileTransferTarget {
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ChunkHandler handler;
+    private int count;
+    private int chunkCount;
+    private boolean finished;
+
+    /**
+     * Interface appelée après l'écriture de chaque morceau intermédiaire.
+     * Sans PIPELINING, elle permet de lire la réponse du serveur avant d'envoyer le morceau suivant.
+     */
+    public interface ChunkHandler {
+        /**
+         * Appelé après l'écriture d'un morceau qui n'est pas le dernier.
+         *
+         * @throws IOException Si le serveur refuse le morceau.
+         */
+        void onChunkSent() throws IOException;
+    }
+
+    /**
+     * @param out Le flux de la connexion.
+     * @param chunkSize La taille des morceaux en octets.
+     * @param handler Le traitement à effectuer après chaque morceau intermédiaire, ou null.
+     */
+    public BdatOutputStream(OutputStream out, int chunkSize, ChunkHandler handler) {
+        this(out, null, chunkSize, handler);
+    }
+
+    /**
+     * @param out Le flux de la connexion.
+     * @param channel Le canal de la connexion, pour transmettre les fichiers sans copie, ou null.
+     * @param chunkSize La taille des morceaux en octets.
+     * @param handler Le traitement à effectuer après chaque morceau intermédiaire, ou null.
+     */
+    public BdatOutputStream(OutputStream out, WritableByteChannel channel, int chunkSize, ChunkHandler handler) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("La taille des morceaux doit être un nombre positif.");
+        }
+        this.out = out;
+        this.channel = channel;
+        this.buffer = new byte[chunkSize];
+        this.handler = handler;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) {
+            sendBuffer(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (count == 0 && len >= buffer.length) {
+            // Un tableau au moins aussi grand qu'un morceau est envoyé directement
+            sendChunk(b, off, len, false);
+            return;
+        }
+        while (len > 0) {
+            int copied = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+            if (count == buffer.length) {
+                sendBuffer(false);
+            }
+        }
+    }
+
+    /**
+     * Envoie un fichier comme un morceau BDAT de sa taille exacte.
+     * Les données en attente partent d'abord dans leur propre morceau ; le fichier est ensuite
+     * transmis au canal sans passer par le tas Java.
+     *
+     * @param file Le fichier à transmettre.
+     * @throws IOException Si la lecture ou l'écriture échoue.
+     */
+    @Override
+    public void transferFile(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size == 0) {
+            return;
+        }
+        if (count > 0) {
+            sendBuffer(false);
+        }
+        out.write(("BDAT " + size + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        if (channel != null) {
+            out.flush();
+            AttachmentEncoder.transfer(file, channel);
+        } else {
+            Files.copy(file, out);
+        }
+        chunkCount++;
+        if (handler != null) {
+            handler.onChunkSent();
+        }
+    }
+
+    /**
+     * Envoie le dernier morceau avec le mot-clé LAST.
+     *
+     * @throws IOException Si l'écriture échoue.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            sendBuffer(true);
+        }
+    }
+
+    /**
+     * Retourne le nombre de commandes BDAT écrites, donc le nombre de réponses attendues.
+     *
+     * @return Le nombre de morceaux envoyés.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void sendBuffer(boolean last) throws IOException {
+        int length = count;
+        count = 0;
+        sendChunk(buffer, 0, length, last);
+    }
+
+    private void sendChunk(byte[] b, int off, int len, boolean last) throws IOException {
+        String command = "BDAT " + len + (last ? " LAST\r\n" : "\r\n");
+        out.write(command.getBytes(StandardCharsets.US_ASCII));
+        out.write(b, off, len);
+        chunkCount++;
+        if (!last && handler != null) {
+            handler.onChunkSent();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package dai.network;
+
+import java.io.IOException;
+
+/**
+ * Exception levée lorsque le contenu d'un e-mail ne peut pas être produit localement,
+ * par exemple une pièce jointe illisible. Contrairement aux autres {@link IOException},
+ * ce n'est pas une erreur de transport : l'échec est définitif pour l'e-mail et n'est pas imputé au relais.
+ * La session, interrompue au milieu du contenu, est coupée sans QUIT.
+ */
+public class ContentException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ContentException(String message, IOException cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,267 @@
+package dai.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classe représentant le résultat de l'envoi d'un e-mail.
+ * Indique pour chaque destinataire s'il a été accepté ou refusé par le serveur SMTP,
+ * ainsi que la réponse finale du serveur au contenu du message.
+ * Un e-mail envoyé en plusieurs transactions peut n'être livré qu'en partie : les destinataires des transactions
+ * livrées le gardent, ceux des transactions suivantes restent à tenter.
+ */
+public class DeliveryResult {
+    final private List<String> acceptedRecipients = new ArrayList<>();
+    final private Map<String, String> rejectedRecipients = new LinkedHashMap<>();
+    // Destinataires refusés par 452 dans cette transaction, à reprendre dans une suivante
+    private Map<String, String> deferredRecipients = Map.of();
+    // Destinataires non servis après l'échec temporaire d'une transaction suivant une transaction livrée
+    private List<String> pendingRecipients = List.of();
+    private int finalReplyCode;
+    private String finalResponse;
+    private boolean delivered;
+    private long queueNanos;
+    private long transactionNanos;
+
+    /**
+     * Enregistre un destinataire accepté par le serveur.
+     *
+     * @param recipient L'adresse du destinataire.
+     */
+    void addAccepted(String recipient) {
+        acceptedRecipients.add(recipient);
+    }
+
+    /**
+     * Enregistre un destinataire refusé par le serveur.
+     *
+     * @param recipient L'adresse du destinataire.
+     * @param response La réponse du serveur pour ce destinataire.
+     */
+    void addRejected(String recipient, String response) {
+        rejectedRecipients.put(recipient, response);
+    }
+
+    /**
+     * Enregistre un destinataire reporté par le serveur (452, trop de destinataires) :
+     * il doit être repris dans une nouvelle transaction.
+     *
+     * @param recipient L'adresse du destinataire.
+     * @param response La réponse du serveur pour ce destinataire.
+     */
+    void addDeferred(String recipient, String response) {
+        if (deferredRecipients.isEmpty()) {
+            deferredRecipients = new LinkedHashMap<>();
+        }
+        deferredRecipients.put(recipient, response);
+    }
+
+    /**
+     * Renonce aux destinataires reportés, qui deviennent refusés.
+     */
+    void rejectDeferred() {
+        rejectedRecipients.putAll(deferredRecipients);
+        deferredRecipients = Map.of();
+    }
+
+    /**
+     * Ajoute à ce résultat celui d'une transaction suivante du même e-mail.
+     * Les destinataires s'ajoutent. Une transaction en échec fait échouer l'ensemble ; une transaction
+     * dont tous les destinataires sont refusés définitivement ne compte que par leurs refus.
+     * Sinon, la réponse finale est celle de la dernière transaction livrée.
+     *
+     * @param next Le résultat de la transaction suivante, sans destinataire reporté.
+     */
+    void merge(DeliveryResult next) {
+        int rank = rank();
+        int nextRank = next.rank();
+        acceptedRecipients.addAll(next.acceptedRecipients);
+        rejectedRecipients.putAll(next.rejectedRecipients);
+        if (nextRank > rank || (nextRank == 1 && rank == 1)) {
+            complete(next.finalReplyCode, next.finalResponse, next.delivered);
+        }
+    }
+
+    /**
+     * Arrête l'envoi sur l'échec temporaire d'une transaction alors que des transactions précédentes ont livré
+     * le message : celles-ci restent acquises et les destinataires donnés restent à tenter.
+     *
+     * @param recipients Les destinataires non servis.
+     * @param replyCode Le code de la réponse de l'échec, 0 pour une erreur de connexion.
+     * @param response La réponse de l'échec ou le message de l'erreur.
+     */
+    void deferRemaining(List<String> recipients, int replyCode, String response) {
+        pendingRecipients = List.copyOf(recipients);
+        finalReplyCode = replyCode;
+        finalResponse = response;
+    }
+
+    /**
+     * Arrête l'envoi sur le refus définitif d'une transaction alors que des transactions précédentes ont livré
+     * le message : celles-ci restent acquises, les destinataires donnés sont refusés. Un destinataire
+     * déjà refusé par la transaction garde sa propre réponse, les autres reçoivent la réponse finale du refus.
+     *
+     * @param recipients Les destinataires de la transaction refusée et des suivantes.
+     * @param failed Le résultat de la transaction refusée.
+     */
+    void rejectAfterDelivery(List<String> recipients, DeliveryResult failed) {
+        for (String recipient : recipients) {
+            rejectedRecipients.put(recipient, failed.rejectedRecipients.getOrDefault(recipient, failed.finalResponse));
+        }
+    }
+
+    /**
+     * Ajoute à ce résultat partiel celui de la nouvelle tentative de ses destinataires restants.
+     * Le message reste livré. Si la nouvelle tentative est livrée, ses destinataires acceptés s'ajoutent ;
+     * sinon, les destinataires qu'elle n'a pas refusés définitivement restent à tenter. La réponse finale devient la sienne.
+     *
+     * @param retry Le résultat de la nouvelle tentative.
+     */
+    public void mergeRetry(DeliveryResult retry) {
+        if (retry.delivered) {
+            acceptedRecipients.addAll(retry.acceptedRecipients);
+            rejectedRecipients.putAll(retry.rejectedRecipients);
+            pendingRecipients = retry.pendingRecipients;
+        } else {
+            List<String> remaining = new ArrayList<>(pendingRecipients);
+            retry.rejectedRecipients.forEach((recipient, response) -> {
+                if (!isTemporary(response)) {
+                    rejectedRecipients.put(recipient, response);
+                    remaining.remove(recipient);
+                }
+            });
+            pendingRecipients = List.copyOf(remaining);
+        }
+        finalReplyCode = retry.finalReplyCode;
+        finalResponse = retry.finalResponse;
+        transactionNanos += retry.transactionNanos;
+    }
+
+    /**
+     * Indique si la réponse d'un refus est temporaire (4xx).
+     *
+     * @param response La réponse du serveur, code compris.
+     * @return Vrai si le refus est temporaire.
+     */
+    static boolean isTemporary(String response) {
+        return response != null && response.startsWith("4");
+    }
+
+    /**
+     * Indique si la transaction a échoué pour une autre raison que le refus définitif de tous ses destinataires :
+     * refus temporaire, ou refus du message après l'acceptation de destinataires.
+     *
+     * @return Vrai si l'e-mail doit être considéré en échec.
+     */
+    boolean isFailed() {
+        return rank() == 2;
+    }
+
+    /**
+     * Classe l'issue de la transaction : 0 si tous les destinataires sont refusés définitivement,
+     * 1 si le message est livré, 2 en cas d'échec.
+     */
+    private int rank() {
+        if (delivered) {
+            return 1;
+        }
+        return acceptedRecipients.isEmpty() && finalReplyCode >= 500 ? 0 : 2;
+    }
+
+    /**
+     * Enregistre la réponse finale du serveur pour la transaction.
+     *
+     * @param replyCode Le code de la réponse.
+     * @param response La réponse du serveur.
+     * @param delivered Vrai si le message a été accepté.
+     */
+    void complete(int replyCode, String response, boolean delivered) {
+        this.finalReplyCode = replyCode;
+        this.finalResponse = response;
+        this.delivered = delivered;
+    }
+
+    /**
+     * @param queueNanos Le temps passé par un envoi asynchrone à attendre son tour sur la session, en nanosecondes.
+     */
+    void setQueueNanos(long queueNanos) {
+        this.queueNanos = queueNanos;
+    }
+
+    /**
+     * @param transactionNanos La durée de la ou des transactions de l'e-mail, en nanosecondes.
+     */
+    void setTransactionNanos(long transactionNanos) {
+        this.transactionNanos = transactionNanos;
+    }
+
+    /**
+     * Indique si le message n'a été livré qu'à une partie des destinataires, les autres restant à tenter.
+     *
+     * @return Vrai si des destinataires restent à tenter après une livraison.
+     */
+    public boolean isPartiallyDelivered() {
+        return delivered && !pendingRecipients.isEmpty();
+    }
+
+    /**
+     * Indique si la réponse finale de la transaction est déjà connue.
+     *
+     * @return Vrai si {@link #complete} a été appelée.
+     */
+    boolean isCompleted() {
+        return finalResponse != null;
+    }
+
+    Map<String, String> getDeferredRecipients() {
+        return deferredRecipients;
+    }
+
+    // region Accessors
+
+    public List<String> getAcceptedRecipients() {
+        return Collections.unmodifiableList(acceptedRecipients);
+    }
+
+    public Map<String, String> getRejectedRecipients() {
+        return Collections.unmodifiableMap(rejectedRecipients);
+    }
+
+    public int getFinalReplyCode() {
+        return finalReplyCode;
+    }
+
+    public String getFinalResponse() {
+        return finalResponse;
+    }
+
+    public boolean isDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return Les destinataires restant à tenter après une livraison partielle, vide sinon.
+     */
+    public List<String> getPendingRecipients() {
+        return pendingRecipients;
+    }
+
+    /**
+     * @return Le temps passé par un envoi asynchrone à attendre son tour sur la session, en nanosecondes.
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * @return La durée de la ou des transactions de l'e-mail, en nanosecondes.
+     */
+    public long getTransactionNanos() {
+        return transactionNanos;
+    }
+
+    // endregion Accessors
+}
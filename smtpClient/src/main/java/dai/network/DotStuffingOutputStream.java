@@ -0,0 +1,63 @@
+package dai.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Flux de sortie appliquant le « dot-stuffing » de SMTP (RFC 5321, section 4.5.2) au contenu d'un message :
+ * un point est ajouté devant chaque ligne commençant par un point, pour qu'aucune ligne ne soit prise
+ * pour la fin des données. La fermeture du flux ne ferme pas le flux sous-jacent.
+ */
+public class DotStuffingOutputStream extends FilterOutputStream {
+    private boolean atLineStart = true;
+
+    public DotStuffingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (atLineStart && b == '.') {
+            out.write('.');
+        }
+        out.write(b);
+        atLineStart = b == '\n';
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (atLineStart && b[i] == '.') {
+                out.write(b, start, i - start);
+                out.write('.');
+                start = i;
+            }
+            atLineStart = b[i] == '\n';
+        }
+        out.write(b, start, end - start);
+    }
+
+    /**
+     * Indique si le dernier octet écrit termine une ligne.
+     *
+     * @return Vrai si rien n'a été écrit ou si le dernier octet est un saut de ligne.
+     */
+    public boolean isAtLineStart() {
+        return atLineStart;
+    }
+
+    /**
+     * Indique que des données terminées par un saut de ligne ont été écrites sans passer par ce flux.
+     */
+    protected void markLineStart() {
+        atLineStart = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
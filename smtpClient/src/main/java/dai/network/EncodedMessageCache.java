@@ -0,0 +1,157 @@
+package dai.network;
+
+import dai.model.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache des messages déjà encodés, partagé par toutes les sessions.
+ * Un même message est envoyé à de nombreux groupes : l'en-tête « Subject » et le corps en base64
+ * sont encodés une seule fois et conservés sous forme d'octets prêts à être écrits.
+ * Le cache est limité en octets ; les messages les moins récemment utilisés sont évincés en premier.
+ */
+public class EncodedMessageCache {
+    /**
+     * Taille par défaut du cache, en octets.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final Map<Message, EncodedMessage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+    public EncodedMessageCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("La taille du cache doit être positive.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Retourne le message encodé, en l'encodant s'il n'est pas dans le cache.
+     * L'encodage a lieu hors du verrou : deux sessions peuvent encoder le même message en même temps,
+     * la première version insérée est conservée.
+     *
+     * @param message Le message à encoder.
+     * @return Le message encodé.
+     */
+    public EncodedMessage get(Message message) {
+        synchronized (this) {
+            EncodedMessage cached = entries.get(message);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        EncodedMessage encoded = encode(message);
+        if (encoded.size() > maxBytes) {
+            // Trop grand pour le cache : il sera encodé à chaque envoi
+            return encoded;
+        }
+        synchronized (this) {
+            EncodedMessage previous = entries.putIfAbsent(message, encoded);
+            if (previous != null) {
+                return previous;
+            }
+            currentBytes += encoded.size();
+            evict();
+        }
+        return encoded;
+    }
+
+    /**
+     * Évince les messages les moins récemment utilisés jusqu'à repasser sous la taille maximale.
+     */
+    private void evict() {
+        Iterator<EncodedMessage> it = entries.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            currentBytes -= it.next().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Encode le sujet et le corps d'un message.
+     *
+     * @param message Le message à encoder.
+     * @return Le message encodé.
+     */
+    private static EncodedMessage encode(Message message) {
+        String subject = "Subject:=?utf-8?B?"
+                + Base64.getEncoder().encodeToString(message.getSubject().getBytes(StandardCharsets.UTF_8))
+                + "?=\r\n";
+        ByteArrayOutputStream body = new ByteArrayOutputStream(message.getBody().length() * 4 / 3 + 64);
+        try {
+            MimeBodyEncoder.writeBase64(message.getBody(), body);
+        } catch (IOException e) {
+            // Impossible en mémoire
+            throw new UncheckedIOException(e);
+        }
+        return new EncodedMessage(subject.getBytes(StandardCharsets.US_ASCII), body.toByteArray());
+    }
+
+    // region Accessors
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // endregion Accessors
+
+    /**
+     * Message encodé : l'en-tête « Subject » et le corps en base64 en lignes de 76 caractères, terminé par CRLF.
+     * Les tableaux sont partagés entre les sessions et ne doivent pas être modifiés.
+     */
+    public static final class EncodedMessage {
+        private final byte[] subjectHeader;
+        private final byte[] body;
+
+        EncodedMessage(byte[] subjectHeader, byte[] body) {
+            this.subjectHeader = subjectHeader;
+            this.body = body;
+        }
+
+        /**
+         * Retourne la place occupée par le message encodé.
+         *
+         * @return Le nombre d'octets des en-têtes et du corps.
+         */
+        public long size() {
+            return subjectHeader.length + body.length;
+        }
+
+        // region Accessors
+
+        byte[] getSubjectHeader() {
+            return subjectHeader;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        // endregion Accessors
+    }
+}
@@ -0,0 +1,18 @@
+package dai.network;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Destination capable de recevoir le contenu d'un fichier sans le faire passer par le tas Java,
+ * typiquement avec {@link java.nio.channels.FileChannel#transferTo}.
+ */
+public interface FileTransferTarget {
+    /**
+     * Transmet tout le contenu d'un fichier à la suite des données déjà écrites.
+     *
+     * @param file Le fichier à transmettre.
+     * @throws IOException Si la lecture ou l'écriture échoue.
+     */
+    void transferFile(Path file) throws IOException;
+}
@@ -0,0 +1,66 @@
+package dai.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodeur du corps des messages en base64 par morceaux.
+ * Le texte est converti en UTF-8 puis en base64 au fil de l'écriture, en lignes de 76 caractères
+ * terminées par CRLF (RFC 2045) : la mémoire utilisée ne dépend pas de la taille du corps.
+ */
+public final class MimeBodyEncoder {
+    private static final int CHUNK_SIZE = 4096;
+
+    private MimeBodyEncoder() {
+    }
+
+    /**
+     * Écrit le texte encodé en UTF-8 puis en base64, suivi d'un CRLF final.
+     * Le flux de sortie n'est ni vidé ni fermé.
+     *
+     * @param text Le texte à encoder.
+     * @param out Le flux de destination.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static void writeBase64(CharSequence text, OutputStream out) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer input = CharBuffer.wrap(text);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        try (OutputStream base64 = Base64.getMimeEncoder().wrap(new NonClosingOutputStream(out))) {
+            CoderResult result;
+            do {
+                result = encoder.encode(input, chunk, true);
+                drain(chunk, base64);
+            } while (result.isOverflow());
+            while (encoder.flush(chunk).isOverflow()) {
+                drain(chunk, base64);
+            }
+            drain(chunk, base64);
+        }
+        out.write('\r');
+        out.write('\n');
+    }
+
+    /**
+     * Transmet les octets accumulés dans le tampon puis le vide.
+     *
+     * @param chunk Le tampon d'octets UTF-8.
+     * @param out Le flux d'encodage base64.
+     * @throws IOException Si l'écriture échoue.
+     */
+    private static void drain(ByteBuffer chunk, OutputStream out) throws IOException {
+        chunk.flip();
+        out.write(chunk.array(), 0, chunk.limit());
+        chunk.clear();
+    }
+}
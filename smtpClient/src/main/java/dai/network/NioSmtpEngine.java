@@ -0,0 +1,683 @@
+package dai.network;
+
+import dai.metrics.CommandTimer;
+import dai.metrics.SmtpCommand;
+import dai.metrics.SmtpMetrics;
+import dai.model.Email;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moteur SMTP non bloquant basé sur un {@link Selector}.
+ * Mène de nombreuses sessions SMTP en parallèle depuis un seul thread : chaque session est
+ * une machine à états qui avance à chaque réponse du serveur, avec des tampons directs
+ * réutilisés pour la lecture et l'écriture. Les pièces jointes encodées sont transmises depuis leur fichier
+ * avec {@link FileChannel#transferTo} au fil des écritures possibles, sans passer par le tas.
+ * Les sessions se répartissent les relais à tour de rôle et puisent les e-mails dans une source commune.
+ * Chaque session a une échéance, repoussée à chaque progrès de la connexion ou du dialogue :
+ * une session qui la dépasse échoue, pour qu'un serveur muet n'immobilise pas le moteur.
+ */
+public class NioSmtpEngine {
+    private static final Logger LOGGER = Logger.getLogger(NioSmtpEngine.class.getName());
+    private static final SmtpMetrics METRICS = SmtpMetrics.getInstance();
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Marque, dans la file d'envoi, la place du prochain fichier de la file des fichiers (comparée par identité)
+    private static final ByteBuffer FILE_PART = ByteBuffer.allocate(0);
+
+    private final List<InetSocketAddress> relays;
+    private final int sessionCount;
+    private final String heloName;
+    private final SMTPClient contentBuilder;
+    private final SmtpTimeouts timeouts;
+    private int openSessions;
+    // Plus proche échéance connue des sessions ; les échéances ne sont parcourues qu'une fois celle-ci atteinte
+    private long nextDeadline;
+    private boolean hasDeadline;
+
+    /**
+     * Interface recevant l'issue de chaque e-mail traité par le moteur.
+     * Les méthodes sont appelées depuis le thread de la boucle d'événements.
+     */
+    public interface Listener {
+        /**
+         * Appelé lorsque la transaction SMTP d'un e-mail est terminée.
+         *
+         * @param email L'e-mail traité.
+         * @param result Le résultat de la transaction.
+         */
+        void onCompleted(Email email, DeliveryResult result);
+
+        /**
+         * Appelé lorsqu'un e-mail n'a pas pu être envoyé à cause d'une erreur de connexion.
+         *
+         * @param email L'e-mail concerné.
+         * @param error L'erreur rencontrée.
+         */
+        void onFailed(Email email, IOException error);
+    }
+
+    /**
+     * États d'une session SMTP non bloquante.
+     * Chaque état correspond à la réponse attendue du serveur.
+     */
+    private enum Step {
+        GREETING(SmtpCommand.CONNECT), EHLO(SmtpCommand.EHLO), MAIL(SmtpCommand.MAIL), RCPT(SmtpCommand.RCPT),
+        DATA(SmtpCommand.DATA), CONTENT(SmtpCommand.END_OF_DATA), RSET(SmtpCommand.OTHER), QUIT(SmtpCommand.OTHER);
+
+        final private SmtpCommand command;
+
+        Step(SmtpCommand command) {
+            this.command = command;
+        }
+    }
+
+    public NioSmtpEngine(List<InetSocketAddress> relays, int sessionCount, String heloName) {
+        this(relays, sessionCount, heloName, SmtpTimeouts.DEFAULT);
+    }
+
+    /**
+     * @param relays Les adresses des relais, attribuées aux sessions à tour de rôle.
+     * @param sessionCount Le nombre de sessions simultanées.
+     * @param heloName Le nom annoncé avec EHLO.
+     * @param timeouts Les délais de connexion et d'attente des réponses des sessions.
+     */
+    public NioSmtpEngine(List<InetSocketAddress> relays, int sessionCount, String heloName, SmtpTimeouts timeouts) {
+        if (relays == null || relays.isEmpty()) {
+            throw new IllegalArgumentException("Au moins un relais SMTP doit être fourni.");
+        }
+        if (sessionCount <= 0) {
+            throw new IllegalArgumentException("Le nombre de sessions doit être un nombre positif.");
+        }
+        this.relays = List.copyOf(relays);
+        this.sessionCount = sessionCount;
+        this.heloName = heloName;
+        this.timeouts = timeouts;
+        // Client jamais connecté, utilisé uniquement pour mettre en forme le contenu des messages
+        this.contentBuilder = new SMTPClient(heloName, relays.get(0).getPort());
+    }
+
+    /**
+     * Envoie tous les e-mails de la source puis ferme les sessions.
+     * La méthode bloque le thread appelant, qui sert de boucle d'événements, jusqu'à épuisement de la source.
+     * Les e-mails restants lorsque toutes les sessions ont échoué sont signalés en erreur.
+     * Un même moteur ne doit pas être exécuté par plusieurs threads à la fois.
+     *
+     * @param emails La source des e-mails à envoyer.
+     * @param listener Le destinataire de l'issue de chaque e-mail.
+     * @throws IOException Si le sélecteur ne peut pas être ouvert.
+     */
+    public void run(Iterator<Email> emails, Listener listener) throws IOException {
+        try (Selector selector = Selector.open()) {
+            openSessions = 0;
+            hasDeadline = false;
+            List<Session> sessions = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                Session session = new Session(relays.get(i % relays.size()), emails, listener);
+                sessions.add(session);
+                session.open(selector);
+            }
+
+            while (openSessions > 0) {
+                long timeout = expireStalled(sessions);
+                if (openSessions == 0) {
+                    break;
+                }
+                selector.select(timeout);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Session) key.attachment()).handle(key);
+                }
+            }
+        }
+
+        IOException noSession = new IOException("Aucune session SMTP disponible pour envoyer l'e-mail.");
+        while (emails.hasNext()) {
+            listener.onFailed(emails.next(), noSession);
+        }
+    }
+
+    /**
+     * Fait échouer les sessions dont l'échéance est dépassée, une fois la plus proche échéance atteinte.
+     *
+     * @param sessions Les sessions du moteur.
+     * @return Le délai jusqu'à la prochaine échéance, en millisecondes, ou 0 s'il n'y en a aucune.
+     */
+    private long expireStalled(List<Session> sessions) {
+        long now = System.nanoTime();
+        if (hasDeadline && now - nextDeadline >= 0) {
+            hasDeadline = false;
+            for (Session session : sessions) {
+                session.expireIfStalled(now);
+            }
+        }
+        // Sans échéance, select(0) attend sans limite
+        return hasDeadline ? TimeUnit.NANOSECONDS.toMillis(nextDeadline - now) + 1 : 0;
+    }
+
+    /**
+     * Retient l'échéance d'une session si elle précède la plus proche échéance connue.
+     *
+     * @param deadline L'échéance, en nanosecondes.
+     */
+    private void considerDeadline(long deadline) {
+        if (!hasDeadline || deadline - nextDeadline < 0) {
+            nextDeadline = deadline;
+            hasDeadline = true;
+        }
+    }
+
+    /**
+     * Session SMTP non bloquante sur un canal, menée comme une machine à états.
+     */
+    private final class Session {
+        private final InetSocketAddress relay;
+        private final Iterator<Email> source;
+        private final Listener listener;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Queue<ByteBuffer> outgoing = new ArrayDeque<>();
+        private final Queue<FilePart> files = new ArrayDeque<>();
+        private final Queue<Step> expected = new ArrayDeque<>();
+        private final SmtpReplyParser replyParser = new SmtpReplyParser();
+        private final SmtpReply reply = new SmtpReply();
+        private final CommandTimer timer = new CommandTimer(METRICS);
+        // En-têtes et corps du message en cours, dans un tableau réutilisé d'un message à l'autre
+        private final ContentBuffer content = new ContentBuffer();
+
+        private SocketChannel channel;
+        private SelectionKey key;
+        private boolean pipelining;
+        private Email current;
+        private DeliveryResult result;
+        private List<String> recipients;
+        private int nextRecipient;
+        private boolean mailAccepted;
+        private long deadline;
+
+        Session(InetSocketAddress relay, Iterator<Email> source, Listener listener) {
+            this.relay = relay;
+            this.source = source;
+            this.listener = listener;
+        }
+
+        /**
+         * Ouvre la connexion non bloquante vers le relais.
+         *
+         * @param selector Le sélecteur de la boucle d'événements.
+         */
+        void open(Selector selector) {
+            try {
+                channel = SocketChannel.open();
+                openSessions++;
+                channel.configureBlocking(false);
+                // Une connexion locale peut aboutir immédiatement : OP_CONNECT ne serait alors jamais signalé
+                boolean connected = channel.connect(relay);
+                METRICS.recordConnection();
+                key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                expected.add(Step.GREETING);
+                timer.sent(SmtpCommand.CONNECT);
+                extendDeadline(connected ? timeouts.readMillis() : timeouts.connectMillis());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Erreur de connexion au serveur SMTP: {0}", relay);
+                closeChannel();
+            }
+        }
+
+        /**
+         * Traite un événement du sélecteur pour cette session.
+         *
+         * @param key La clé sélectionnée.
+         */
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable() && channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+                // La connexion est établie et le dialogue avance : le serveur a de nouveau tout le délai pour répondre
+                if (channel.isConnected()) {
+                    extendDeadline(timeouts.readMillis());
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Repousse l'échéance de la session.
+         *
+         * @param millis Le délai accordé à partir de maintenant, en millisecondes.
+         */
+        private void extendDeadline(int millis) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            considerDeadline(deadline);
+        }
+
+        /**
+         * Fait échouer la session si son échéance est dépassée, et retient sinon son échéance comme prochaine candidate.
+         *
+         * @param now L'instant présent, en nanosecondes.
+         */
+        void expireIfStalled(long now) {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            if (now - deadline >= 0) {
+                fail(new SocketTimeoutException(channel.isConnected()
+                        ? "Le serveur SMTP n'a pas répondu dans le délai imparti."
+                        : "La connexion au serveur SMTP n'a pas abouti dans le délai imparti."));
+            } else {
+                considerDeadline(deadline);
+            }
+        }
+
+        /**
+         * Lit les octets disponibles et traite chaque réponse complète.
+         *
+         * @throws IOException Si la connexion est perdue.
+         */
+        private void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                throw new IOException("La connexion au serveur SMTP a été perdue.");
+            }
+            readBuffer.flip();
+            while (channel.isOpen() && replyParser.consume(readBuffer, reply)) {
+                Step step = expected.poll();
+                if (step == null) {
+                    throw new IOException("Réponse SMTP inattendue : " + reply);
+                }
+                timer.replied(reply.getCode());
+                onReply(step, reply);
+            }
+            readBuffer.compact();
+        }
+
+        /**
+         * Fait avancer la machine à états selon la réponse reçue.
+         *
+         * @param step L'étape à laquelle correspond la réponse.
+         * @param reply La réponse du serveur.
+         * @throws IOException Si la session ne peut pas continuer.
+         */
+        private void onReply(Step step, SmtpReply reply) throws IOException {
+            boolean positive = reply.isPositive();
+            switch (step) {
+                case GREETING -> {
+                    if (reply.getCode() != 220) {
+                        throw new IOException("Le serveur SMTP refuse la connexion : " + reply);
+                    }
+                    send("EHLO " + heloName, Step.EHLO);
+                }
+                case EHLO -> {
+                    if (!positive) {
+                        throw new IOException("Le serveur SMTP refuse la session : " + reply);
+                    }
+                    pipelining = reply.hasKeyword("PIPELINING");
+                    startTransaction();
+                }
+                case MAIL -> {
+                    mailAccepted = positive;
+                    if (!positive) {
+                        String text = reply.toString();
+                        for (String recipient : recipients) {
+                            result.addRejected(recipient, text);
+                        }
+                        if (pipelining) {
+                            // Les réponses à RCPT et DATA qui suivent ne sont que la conséquence de ce refus
+                            result.complete(reply.getCode(), text, false);
+                        } else {
+                            abortTransaction(reply);
+                        }
+                    } else if (!pipelining) {
+                        sendNextRecipient();
+                    }
+                }
+                case RCPT -> {
+                    String recipient = recipients.get(nextRecipient++);
+                    if (!mailAccepted) {
+                        return;
+                    }
+                    if (positive) {
+                        result.addAccepted(recipient);
+                    } else {
+                        String text = reply.toString();
+                        result.addRejected(recipient, text);
+                        if (pipelining && nextRecipient == recipients.size() && result.getAcceptedRecipients().isEmpty()) {
+                            result.complete(reply.getCode(), text, false);
+                        }
+                    }
+                    if (!pipelining) {
+                        sendNextRecipient();
+                    }
+                }
+                case DATA -> {
+                    if (reply.getCode() != 354) {
+                        abortTransaction(reply);
+                    } else if (result.getAcceptedRecipients().isEmpty()) {
+                        // RFC 2920 : DATA a été accepté alors qu'aucun destinataire ne l'a été, on termine sans contenu
+                        send(".", Step.CONTENT);
+                    } else {
+                        // La réponse au message précédent est arrivée : ses octets sont tous partis, le tableau est libre
+                        content.reset();
+                        ContentStream stream = new ContentStream();
+                        contentBuilder.writeContent(current, stream);
+                        stream.endSegment();
+                        send(".", Step.CONTENT);
+                    }
+                }
+                case CONTENT -> {
+                    if (!result.isCompleted()) {
+                        result.complete(reply.getCode(), reply.toString(), positive && !result.getAcceptedRecipients().isEmpty());
+                    }
+                    finishTransaction();
+                    startTransaction();
+                }
+                case RSET -> startTransaction();
+                case QUIT -> closeChannel();
+            }
+        }
+
+        /**
+         * Commence la transaction du prochain e-mail de la source, ou termine la session avec QUIT.
+         *
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void startTransaction() throws IOException {
+            if (!source.hasNext()) {
+                send("QUIT", Step.QUIT);
+                return;
+            }
+            current = source.next();
+            result = new DeliveryResult();
+            recipients = current.getRecipients();
+            nextRecipient = 0;
+
+            if (pipelining) {
+                queue("MAIL FROM: <" + current.getSender() + ">", Step.MAIL);
+                for (int i = 0; i < recipients.size(); i++) {
+                    queue(SMTPClient.rcptCommand(recipients, i), Step.RCPT);
+                }
+                queue("DATA", Step.DATA);
+                flush();
+            } else {
+                send("MAIL FROM: <" + current.getSender() + ">", Step.MAIL);
+            }
+        }
+
+        /**
+         * Envoie le prochain RCPT TO, ou DATA une fois tous les destinataires envoyés (sans PIPELINING).
+         *
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void sendNextRecipient() throws IOException {
+            // nextRecipient compte les réponses reçues ; la commande suivante porte sur le même indice
+            if (nextRecipient < recipients.size()) {
+                queue(SMTPClient.rcptCommand(recipients, nextRecipient), Step.RCPT);
+                flush();
+            } else if (result.getAcceptedRecipients().isEmpty()) {
+                abortTransaction(reply);
+            } else {
+                send("DATA", Step.DATA);
+            }
+        }
+
+        /**
+         * Termine la transaction courante en échec et l'annule avec RSET.
+         * Un refus de l'enveloppe déjà enregistré reste la réponse finale.
+         *
+         * @param response La dernière réponse du serveur.
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void abortTransaction(SmtpReply response) throws IOException {
+            if (!result.isCompleted()) {
+                result.complete(response.getCode(), response.toString(), false);
+            }
+            finishTransaction();
+            send("RSET", Step.RSET);
+        }
+
+        /**
+         * Transmet le résultat de la transaction courante.
+         */
+        private void finishTransaction() {
+            METRICS.recordTransaction(result);
+            listener.onCompleted(current, result);
+            current = null;
+            result = null;
+        }
+
+        /**
+         * Ajoute une commande à la file d'envoi et l'envoie immédiatement.
+         *
+         * @param command La commande.
+         * @param step La réponse attendue.
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void send(String command, Step step) throws IOException {
+            queue(command, step);
+            flush();
+        }
+
+        /**
+         * Ajoute une commande à la file d'envoi sans l'envoyer.
+         *
+         * @param command La commande.
+         * @param step La réponse attendue.
+         */
+        private void queue(String command, Step step) {
+            byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length + CRLF.length);
+            buffer.put(bytes).put(CRLF).flip();
+            outgoing.add(buffer);
+            expected.add(step);
+            timer.sent(step.command);
+        }
+
+        /**
+         * Ajoute une commande déjà encodée, CRLF compris, à la file d'envoi sans l'envoyer.
+         *
+         * @param command Les octets de la commande.
+         * @param step La réponse attendue.
+         */
+        private void queue(byte[] command, Step step) {
+            outgoing.add(ByteBuffer.wrap(command));
+            expected.add(step);
+            timer.sent(step.command);
+        }
+
+        /**
+         * Écrit autant de données en attente que le canal en accepte, via le tampon direct.
+         * S'abonne à OP_WRITE tant que des données restent à écrire.
+         *
+         * @throws IOException Si l'écriture échoue.
+         */
+        private void flush() throws IOException {
+            while (true) {
+                while (writeBuffer.hasRemaining() && !outgoing.isEmpty() && outgoing.peek() != FILE_PART) {
+                    ByteBuffer head = outgoing.peek();
+                    int count = Math.min(head.remaining(), writeBuffer.remaining());
+                    writeBuffer.put(writeBuffer.position(), head, head.position(), count);
+                    writeBuffer.position(writeBuffer.position() + count);
+                    head.position(head.position() + count);
+                    if (!head.hasRemaining()) {
+                        outgoing.poll();
+                    }
+                }
+                writeBuffer.flip();
+                METRICS.recordBytes(channel.write(writeBuffer));
+                boolean drained = !writeBuffer.hasRemaining();
+                writeBuffer.compact();
+                if (drained && outgoing.peek() == FILE_PART) {
+                    drained = transferFile();
+                }
+                if (!drained) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (outgoing.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Transmet au canal autant du prochain fichier que le canal en accepte.
+         * Le tampon d'écriture doit être vide, pour que le fichier suive les octets qui le précèdent.
+         *
+         * @return Vrai si le fichier a été transmis en entier.
+         * @throws IOException Si la lecture ou l'écriture échoue.
+         */
+        private boolean transferFile() throws IOException {
+            FilePart part = files.peek();
+            if (part.file == null) {
+                part.file = FileChannel.open(part.path, StandardOpenOption.READ);
+            }
+            long size = part.file.size();
+            while (part.position < size) {
+                long count = part.file.transferTo(part.position, size - part.position, channel);
+                if (count == 0) {
+                    return false;
+                }
+                part.position += count;
+                METRICS.recordBytes(count);
+            }
+            part.file.close();
+            files.poll();
+            outgoing.poll();
+            return true;
+        }
+
+        /**
+         * Signale l'e-mail en cours en erreur et ferme la session.
+         *
+         * @param e L'erreur rencontrée.
+         */
+        private void fail(IOException e) {
+            LOGGER.log(Level.WARNING, "Session SMTP interrompue avec {0} : {1}", new Object[]{relay, e.getMessage()});
+            if (current != null) {
+                listener.onFailed(current, e);
+                current = null;
+            }
+            closeChannel();
+        }
+
+        /**
+         * Ferme le canal et retire la session du sélecteur.
+         */
+        private void closeChannel() {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            openSessions--;
+            if (key != null) {
+                key.cancel();
+            }
+            for (FilePart part : files) {
+                part.close();
+            }
+            files.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du canal", e);
+            }
+        }
+
+        /**
+         * Flux du contenu d'un message : applique le dot-stuffing aux en-têtes et au corps, rangés dans le tableau
+         * réutilisé de la session, et place les pièces jointes encodées dans la file d'envoi sans les lire.
+         * Le base64 ne contient jamais de point, ces fichiers n'ont donc pas besoin de dot-stuffing.
+         */
+        private final class ContentStream extends DotStuffingOutputStream implements FileTransferTarget {
+            private int segmentStart;
+
+            ContentStream() {
+                super(content);
+            }
+
+            @Override
+            public void transferFile(Path file) {
+                endSegment();
+                outgoing.add(FILE_PART);
+                files.add(new FilePart(file));
+                // Les fichiers encodés se terminent par CRLF
+                markLineStart();
+            }
+
+            /**
+             * Ajoute à la file d'envoi les octets écrits depuis le dernier fichier.
+             */
+            void endSegment() {
+                if (content.size() > segmentStart) {
+                    outgoing.add(content.segment(segmentStart));
+                    segmentStart = content.size();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tableau d'octets extensible dont les segments sont transmis sans copie.
+     * Un segment reste valable après un agrandissement du tableau, qui laisse l'ancien tableau intact.
+     */
+    private static final class ContentBuffer extends ByteArrayOutputStream {
+        /**
+         * @param from La position du début du segment.
+         * @return Les octets écrits depuis cette position, sans copie.
+         */
+        ByteBuffer segment(int from) {
+            return ByteBuffer.wrap(buf, from, count - from);
+        }
+    }
+
+    /**
+     * Fichier à transmettre dans la file d'envoi d'une session, ouvert à sa première écriture.
+     */
+    private static final class FilePart {
+        private final Path path;
+        private FileChannel file;
+        private long position;
+
+        FilePart(Path path) {
+            this.path = path;
+        }
+
+        void close() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Erreur lors de la fermeture d'une pièce jointe", e);
+                }
+            }
+        }
+    }
+}
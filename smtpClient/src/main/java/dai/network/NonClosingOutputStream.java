@@ -0,0 +1,27 @@
+package dai.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Flux qui laisse ouvert le flux sous-jacent à sa fermeture.
+ * Permet de terminer un encodage base64, qui écrit son remplissage final à la fermeture,
+ * sans fermer la connexion ou le fichier qui le reçoit.
+ */
+class NonClosingOutputStream extends FilterOutputStream {
+
+    NonClosingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
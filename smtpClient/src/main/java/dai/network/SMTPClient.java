@@ -1,16 +1,39 @@
 package dai.network;
 
 import dai.model.Email;
+import dai.model.AddressList;
+import dai.model.Attachment;
+import dai.metrics.CommandTimer;
+import dai.metrics.SmtpCommand;
+import dai.metrics.SmtpMetrics;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.logging.Level;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Base64;
 import java.nio.charset.StandardCharsets;
 
@@ -21,80 +44,323 @@ import java.nio.charset.StandardCharsets;
 public class SMTPClient {
     private static final Logger LOGGER = Logger.getLogger(SMTPClient.class.getName());
     private static final String CONTENT_TYPE = "Content-Transfer-Encoding: base64";
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] RCPT_TO = "RCPT TO: <".getBytes(StandardCharsets.US_ASCII);
+    private static final int BDAT_CHUNK_SIZE = 64 * 1024;
+    // Le caractère « _ » n'apparaît jamais en base64 : la limite ne peut pas se retrouver dans une partie
+    private static final String BOUNDARY = "=_dai-smtp-part";
+    private static final EncodedMessageCache MESSAGE_CACHE = new EncodedMessageCache(EncodedMessageCache.DEFAULT_MAX_BYTES);
+    private static final SmtpMetrics METRICS = SmtpMetrics.getInstance();
+    /**
+     * Nombre maximal par défaut d'envois asynchrones admis à la fois sur une session.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    /**
+     * Nombre maximal de commandes d'enveloppe envoyées avec PIPELINING avant d'en lire les réponses (RFC 2920, 3.1).
+     * Au-delà, les réponses en attente pourraient remplir les tampons TCP : le serveur cesserait de lire
+     * pendant que le client écrit encore, et la session resterait bloquée.
+     */
+    public static final int PIPELINE_WINDOW = 100;
+    // Préparation des contenus et transactions des envois asynchrones, sur des threads virtuels
+    private static final ExecutorService ASYNC_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final byte[] BDAT_TRACE = "BDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BDAT_LAST_TRACE = "BDAT LAST".getBytes(StandardCharsets.US_ASCII);
+    // Numérote les fichiers de trace pour que deux sessions vidées au même instant ne s'écrasent pas
+    private static final AtomicLong TRACE_SEQUENCE = new AtomicLong();
     private final String smtpHost;
     private final int smtpPort;
+    private SocketChannel channel;
     private Socket socket;
-    private BufferedWriter writer;
-    private BufferedReader reader;
+    private OutputStream output;
+    private InputStream input;
+    private final SmtpReplyParser replyParser = new SmtpReplyParser();
+    private final SmtpReply reply = new SmtpReply();
+    private final CommandTimer timer = new CommandTimer(METRICS);
+    private SessionState state = SessionState.DISCONNECTED;
+    private boolean pendingReset;
+    // Nombre maximal de destinataires par transaction, configuré ou appris d'un refus 452 ; 0 si inconnu
+    private int recipientLimit;
+    private final int maxInFlight;
+    private final SessionTrace trace = new SessionTrace(SessionTrace.DEFAULT_CAPACITY);
+    // Répertoire où la trace est vidée après un échec, ou null pour ne la vider qu'à la demande
+    private final Path traceDirectory;
+    private final SmtpTimeouts timeouts;
+    // Envois asynchrones en attente d'une place dans la fenêtre ; sert aussi de verrou de la fenêtre
+    private final ArrayDeque<AsyncSend> waitingSends = new ArrayDeque<>();
+    private int inFlightSends;
+    // Dernière transaction asynchrone programmée : chaque envoi s'enchaîne après le précédent
+    private CompletableFuture<Void> sendChain = CompletableFuture.completedFuture(null);
+
+    /**
+     * Envoi asynchrone demandé par {@link #sendAsync(Email)}.
+     *
+     * @param email L'e-mail à envoyer.
+     * @param result Le résultat promis à l'appelant.
+     * @param submittedNanos L'instant de la demande.
+     */
+    private record AsyncSend(Email email, CompletableFuture<DeliveryResult> result, long submittedNanos) {
+    }
+    private final Map<String, String> capabilities = new LinkedHashMap<>();
+
+    /**
+     * États successifs d'une session SMTP.
+     */
+    private enum SessionState {
+        /** Aucune connexion ouverte. */
+        DISCONNECTED,
+        /** Session ouverte et saluée, prête pour une nouvelle transaction. */
+        READY,
+        /** Une transaction a été commencée sans être menée à son terme, un RSET est nécessaire. */
+        TRANSACTION
+    }
 
     public SMTPClient(String smtpHost, int smtpPort) {
+        this(smtpHost, smtpPort, 0);
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param recipientLimit Le nombre maximal de destinataires par transaction accepté par le serveur,
+     *                       ou 0 s'il est inconnu : il est alors appris du premier refus 452.
+     */
+    public SMTPClient(String smtpHost, int smtpPort, int recipientLimit) {
+        this(smtpHost, smtpPort, recipientLimit, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param recipientLimit Le nombre maximal de destinataires par transaction accepté par le serveur,
+     *                       ou 0 s'il est inconnu.
+     * @param maxInFlight Le nombre maximal d'envois asynchrones préparés ou en cours sur la session.
+     */
+    public SMTPClient(String smtpHost, int smtpPort, int recipientLimit, int maxInFlight) {
+        this(smtpHost, smtpPort, recipientLimit, maxInFlight, null);
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param recipientLimit Le nombre maximal de destinataires par transaction accepté par le serveur,
+     *                       ou 0 s'il est inconnu.
+     * @param maxInFlight Le nombre maximal d'envois asynchrones préparés ou en cours sur la session.
+     * @param traceDirectory Le répertoire où vider la trace du dialogue après un échec, ou null.
+     */
+    public SMTPClient(String smtpHost, int smtpPort, int recipientLimit, int maxInFlight, Path traceDirectory) {
+        this(smtpHost, smtpPort, recipientLimit, maxInFlight, traceDirectory, SmtpTimeouts.DEFAULT);
+    }
+
+    /**
+     * @param smtpHost L'adresse du serveur SMTP.
+     * @param smtpPort Le port du serveur SMTP.
+     * @param recipientLimit Le nombre maximal de destinataires par transaction accepté par le serveur,
+     *                       ou 0 s'il est inconnu.
+     * @param maxInFlight Le nombre maximal d'envois asynchrones préparés ou en cours sur la session.
+     * @param traceDirectory Le répertoire où vider la trace du dialogue après un échec, ou null.
+     * @param timeouts Les délais de connexion et d'attente des réponses.
+     */
+    public SMTPClient(String smtpHost, int smtpPort, int recipientLimit, int maxInFlight, Path traceDirectory,
+                      SmtpTimeouts timeouts) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Le nombre d'envois simultanés doit être un nombre positif.");
+        }
+        if (recipientLimit < 0) {
+            throw new IllegalArgumentException("La limite de destinataires ne peut pas être négative.");
+        }
         if (smtpHost == null || smtpHost.trim().isEmpty()) {
             throw new IllegalArgumentException("L'adresse du serveur SMTP ne peut pas être null ou vide.");
         }
         if (smtpPort <= 0) {
             throw new IllegalArgumentException("Le port doit être un nombre positif.");
         }
+        if (timeouts == null) {
+            throw new IllegalArgumentException("Les délais d'attente doivent être renseignés.");
+        }
         this.smtpHost = smtpHost;
         this.smtpPort = smtpPort;
+        this.recipientLimit = recipientLimit;
+        this.maxInFlight = maxInFlight;
+        this.traceDirectory = traceDirectory;
+        this.timeouts = timeouts;
     }
 
 
     /**
      * Établit une connexion avec le serveur SMTP.
+     * Attend le message d'accueil du serveur puis s'annonce une seule fois avec EHLO
+     * et mémorise les extensions annoncées pour toute la durée de la session.
+     * Une connexion ou une réponse qui tarde au-delà de son délai échoue avec une {@link SocketTimeoutException}.
      *
-     * @throws IOException Si une erreur de réseau se produit.
+     * @throws IOException Si une erreur de réseau se produit ou si le serveur refuse la session.
      */
-    public void connect() throws IOException, InterruptedException {
+    public void connect() throws IOException {
         try {
-            socket = new Socket(smtpHost, smtpPort);
-            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
-            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-            Thread.sleep(300);
+            InetSocketAddress address = new InetSocketAddress(smtpHost, smtpPort);
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(smtpHost);
+            }
+            timer.reset();
+            timer.sent(SmtpCommand.CONNECT);
+            trace.record(SessionTrace.NOTE, "Connexion à " + smtpHost + ":" + smtpPort);
+            // Socket adossé à un canal, pour pouvoir transmettre les pièces jointes avec transferTo ;
+            // ses flux respectent le délai de lecture comme ceux d'un socket ordinaire
+            channel = SocketChannel.open();
+            socket = channel.socket();
+            socket.connect(address, timeouts.connectMillis());
+            socket.setSoTimeout(timeouts.readMillis());
+            METRICS.recordConnection();
+            output = new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()));
+            input = socket.getInputStream();
+
+            SmtpReply greeting = readResponse();
+            if (greeting.getCode() != 220) {
+                throw new IOException("Le serveur SMTP refuse la connexion : " + greeting);
+            }
+            greet();
+            state = SessionState.READY;
         } catch (UnknownHostException e) {
             LOGGER.log(Level.SEVERE, "Hôte SMTP inconnu: {0}", smtpHost);
+            close();
             throw e;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Erreur de connexion au serveur SMTP: {0}", smtpHost);
-            throw e;
-        } catch(InterruptedException e){
-            LOGGER.log(Level.SEVERE, "Erreur d'interruption de thread");
+            traceFailure(e.toString());
+            close();
             throw e;
         }
     }
 
     /**
-     * Lit la réponse du serveur SMTP.
+     * S'annonce au serveur avec EHLO et analyse les extensions annoncées.
+     * Se replie sur HELO si le serveur ne supporte pas ESMTP.
      *
-     * @throws IOException Si une erreur survient lors de la lecture de la réponse.
+     * @throws IOException Si le serveur refuse les deux commandes.
      */
-    private void readResponse() throws IOException {
-        StringBuilder sb = new StringBuilder();
-        String line;
-        do {
-            line = reader.readLine();
-            if (line == null) {
-                throw new IOException("La connexion au serveur SMTP a été perdue.");
+    private void greet() throws IOException {
+        capabilities.clear();
+        SmtpReply ehloResponse = sendCommand("EHLO " + smtpHost);
+        if (ehloResponse.isPositive()) {
+            parseCapabilities(ehloResponse);
+            return;
+        }
+        SmtpReply heloResponse = sendCommand("HELO " + smtpHost);
+        if (!heloResponse.isPositive()) {
+            throw new IOException("Le serveur SMTP refuse la session : " + heloResponse);
+        }
+    }
+
+    /**
+     * Analyse la réponse à EHLO pour en extraire les extensions et leurs paramètres.
+     * La première ligne, qui contient le nom du serveur, est ignorée.
+     *
+     * @param ehloResponse La réponse du serveur à la commande EHLO.
+     */
+    private void parseCapabilities(SmtpReply ehloResponse) {
+        for (int i = 1; i < ehloResponse.getLineCount(); i++) {
+            String[] extension = ehloResponse.getLine(i).trim().split(" ", 2);
+            if (!extension[0].isEmpty()) {
+                capabilities.put(extension[0].toUpperCase(), extension.length > 1 ? extension[1] : "");
             }
-            sb.append(line).append("\n");
-        } while (!line.matches("^(220|250|354|221) .*") && !line.matches("^([45])[0-9]{2} .*"));
+        }
+    }
+
+    /**
+     * Indique si le serveur a annoncé une extension lors de la réponse à EHLO.
+     *
+     * @param extension Le mot-clé de l'extension (ex. PIPELINING, 8BITMIME, CHUNKING).
+     * @return Vrai si l'extension est annoncée.
+     */
+    public boolean supports(String extension) {
+        return capabilities.containsKey(extension.toUpperCase());
+    }
 
-        LOGGER.log(Level.INFO, "SMTP Response: {0}", sb.toString());
+    /**
+     * Retourne la taille maximale de message annoncée par l'extension SIZE (RFC 1870).
+     *
+     * @return La taille maximale en octets, ou 0 si le serveur n'annonce pas de limite.
+     */
+    public long getMaxMessageSize() {
+        String size = capabilities.get("SIZE");
+        if (size == null || size.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(size.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
+    /**
+     * Retourne les extensions annoncées par le serveur et leurs paramètres.
+     *
+     * @return Les extensions, indexées par mot-clé en majuscules.
+     */
+    public Map<String, String> getCapabilities() {
+        return Collections.unmodifiableMap(capabilities);
+    }
+
+    /**
+     * Lit la réponse du serveur SMTP.
+     * L'objet retourné est réutilisé par la lecture suivante : il doit être exploité avant de lire une autre réponse.
+     *
+     * @return La réponse du serveur.
+     * @throws IOException Si une erreur survient lors de la lecture de la réponse.
+     */
+    private SmtpReply readResponse() throws IOException {
+        replyParser.read(input, reply);
+        timer.replied(reply.getCode());
+        trace.record(reply);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "SMTP Response: {0}", reply);
+        }
+        return reply;
+    }
 
     /**
      * Envoie une commande au serveur SMTP.
      *
      * @param command La commande à envoyer.
+     * @return La réponse du serveur à la commande, valable jusqu'à la lecture suivante.
      * @throws IOException Si une erreur survient lors de l'envoi de la commande.
      */
-    private void sendCommand(String command) throws IOException {
+    private SmtpReply sendCommand(String command) throws IOException {
+        writeCommand(command);
+        output.flush();
+        return readResponse();
+    }
+
+    /**
+     * Écrit une commande dans le tampon d'envoi sans attendre la réponse du serveur.
+     * Utilisé pour regrouper les commandes lorsque le serveur supporte PIPELINING (RFC 2920).
+     *
+     * @param command La commande à écrire.
+     * @throws IOException Si une erreur survient lors de l'écriture de la commande.
+     */
+    private void writeCommand(String command) throws IOException {
         if (command == null || command.trim().isEmpty()) {
             throw new IllegalArgumentException("La commande ne peut pas être null ou vide.");
         }
-        writer.write(command + "\r\n");
-        writer.flush();
-        readResponse();
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes);
+        output.write(CRLF);
+        trace.record(SessionTrace.COMMAND, bytes, 0, bytes.length);
+        timer.sent(SmtpCommand.of(command));
+    }
+
+    /**
+     * Écrit la commande RCPT TO d'un destinataire dans le tampon d'envoi.
+     *
+     * @param recipients Les destinataires de l'e-mail.
+     * @param index La position du destinataire.
+     * @throws IOException Si une erreur survient lors de l'écriture de la commande.
+     */
+    private void writeRecipient(List<String> recipients, int index) throws IOException {
+        byte[] command = rcptCommand(recipients, index);
+        output.write(command);
+        trace.record(SessionTrace.COMMAND, command, 0, command.length);
+        timer.sent(SmtpCommand.RCPT);
     }
 
 
@@ -109,17 +375,144 @@ public class SMTPClient {
      * @return Le contenu de l'e-mail formaté.
      */
     public String prepareContent(String from, List<String> recipients, String subject, String body){
-        StringBuilder emailContent = new StringBuilder();
-        final String encodedBody = encodeBase64(body);
-        final String encodedSubject = encodeBase64(subject);
+        ByteArrayOutputStream emailContent = new ByteArrayOutputStream();
+        try {
+            writeContent(from, recipients, subject, body, emailContent);
+        } catch (IOException e) {
+            // Impossible en mémoire
+            throw new UncheckedIOException(e);
+        }
+        return emailContent.toString(StandardCharsets.UTF_8);
+    }
 
-        buildSenderHeader(from, emailContent);
-        buildRecipientHeaders(recipients, emailContent);
-        buildSubjectHeader(encodedSubject, emailContent);
-        buildContentTypeHeader(emailContent);
-        buildBody(encodedBody, emailContent);
+    /**
+     * Écrit le contenu de l'e-mail directement dans un flux.
+     * Les en-têtes sont construits en mémoire, le corps est encodé en base64 au fil de l'écriture,
+     * en lignes de 76 caractères, sans jamais être copié en entier.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param subject Le sujet de l'e-mail.
+     * @param body Le corps de l'e-mail.
+     * @param out Le flux de destination.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public void writeContent(String from, List<String> recipients, String subject, String body, OutputStream out) throws IOException {
+        writeContent(from, recipients, subject, body, List.of(), out);
+    }
+
+    /**
+     * Écrit le contenu de l'e-mail et ses pièces jointes directement dans un flux.
+     * Avec des pièces jointes, le message est construit en multipart/mixed : chaque pièce jointe,
+     * encodée une seule fois par {@link AttachmentEncoder}, est transmise sans copie si le flux
+     * est un {@link FileTransferTarget}, et recopiée depuis le fichier encodé sinon.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param subject Le sujet de l'e-mail.
+     * @param body Le corps de l'e-mail.
+     * @param attachments Les pièces jointes de l'e-mail.
+     * @param out Le flux de destination.
+     * @throws IOException Si l'écriture échoue ou si une pièce jointe ne peut pas être lue.
+     */
+    public void writeContent(String from, List<String> recipients, String subject, String body,
+                             List<Attachment> attachments, OutputStream out) throws IOException {
+        StringBuilder subjectHeader = new StringBuilder();
+        buildSubjectHeader(encodeBase64(subject), subjectHeader);
+        writeContent(from, recipients, subjectHeader.toString().getBytes(StandardCharsets.US_ASCII),
+                bodyOut -> MimeBodyEncoder.writeBase64(body, bodyOut), attachments, out);
+    }
+
+    /**
+     * Écrit le contenu d'un e-mail dans un flux.
+     * Si l'e-mail provient d'un message partagé entre plusieurs groupes, le sujet et le corps déjà encodés
+     * sont repris du cache ; seuls les en-têtes propres au groupe sont construits.
+     *
+     * @param email L'e-mail à écrire.
+     * @param out Le flux de destination.
+     * @throws IOException Si l'écriture échoue ou si une pièce jointe ne peut pas être lue.
+     */
+    public void writeContent(Email email, OutputStream out) throws IOException {
+        if (email.getMessage() == null) {
+            writeContent(email.getSender(), email.getHeaderRecipients(), email.getSubject(), email.getBody(),
+                    email.getAttachments(), out);
+            return;
+        }
+        EncodedMessageCache.EncodedMessage encoded = MESSAGE_CACHE.get(email.getMessage());
+        writeContent(email.getSender(), email.getHeaderRecipients(), encoded.getSubjectHeader(),
+                bodyOut -> bodyOut.write(encoded.getBody()), email.getAttachments(), out);
+    }
+
+    /**
+     * Écrit les en-têtes, le corps et les pièces jointes de l'e-mail.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param subjectHeader L'en-tête « Subject » encodé.
+     * @param body L'écriture du corps encodé en base64.
+     * @param attachments Les pièces jointes de l'e-mail.
+     * @param out Le flux de destination.
+     * @throws IOException Si l'écriture échoue ou si une pièce jointe ne peut pas être lue.
+     */
+    private void writeContent(String from, List<String> recipients, byte[] subjectHeader, ContentWriter body,
+                              List<Attachment> attachments, OutputStream out) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        buildSenderHeader(from, headers);
+        buildRecipientHeaders(recipients, headers);
+        out.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(subjectHeader);
+        headers.setLength(0);
+        if (attachments.isEmpty()) {
+            buildContentTypeHeader(headers);
+            out.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+            body.writeTo(out);
+            return;
+        }
+
+        buildMultipartHeader(headers);
+        headers.append("--").append(BOUNDARY).append("\r\n");
+        headers.append("Content-Type: text/plain; charset=utf-8\r\n");
+        buildContentTypeHeader(headers);
+        out.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+        body.writeTo(out);
+
+        for (Attachment attachment : attachments) {
+            Path encoded = AttachmentEncoder.encode(attachment);
+            StringBuilder partHeaders = new StringBuilder();
+            buildAttachmentHeaders(attachment, partHeaders);
+            out.write(partHeaders.toString().getBytes(StandardCharsets.UTF_8));
+            if (out instanceof FileTransferTarget target) {
+                target.transferFile(encoded);
+            } else {
+                Files.copy(encoded, out);
+            }
+        }
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Construit les en-têtes MIME d'un message multipart/mixed.
+     *
+     * @param emailContent Le StringBuilder pour le contenu de l'e-mail.
+     */
+    private void buildMultipartHeader(StringBuilder emailContent) {
+        emailContent.append("MIME-Version: 1.0\r\n");
+        emailContent.append("Content-Type: multipart/mixed; boundary=\"").append(BOUNDARY).append("\"\r\n\r\n");
+    }
 
-        return emailContent.toString();
+    /**
+     * Construit la limite et les en-têtes de la partie d'une pièce jointe.
+     *
+     * @param attachment La pièce jointe.
+     * @param emailContent Le StringBuilder pour le contenu de l'e-mail.
+     */
+    private void buildAttachmentHeaders(Attachment attachment, StringBuilder emailContent) {
+        String fileName = attachment.getFileName().replace("\\", "\\\\").replace("\"", "\\\"");
+        emailContent.append("--").append(BOUNDARY).append("\r\n");
+        emailContent.append("Content-Type: ").append(attachment.getContentType())
+                .append("; name=\"").append(fileName).append("\"\r\n");
+        emailContent.append("Content-Disposition: attachment; filename=\"").append(fileName).append("\"\r\n");
+        buildContentTypeHeader(emailContent);
     }
 
     /**
@@ -194,65 +587,870 @@ public class SMTPClient {
      * Envoie un e-mail à un groupe de destinataires.
      *
      * @param e L'e-mail à envoyer.
+     * @return Le résultat de l'envoi pour chaque destinataire.
      * @throws IOException Si une erreur survient lors de l'envoi de l'e-mail.
      */
-    public void sendGroupEmail(Email e) throws IOException {
+    public DeliveryResult sendGroupEmail(Email e) throws IOException {
+        return send(e.getSender(), e.getRecipients(), out -> writeContent(e, out));
+    }
+
+    /**
+     * Envoie un e-mail sans bloquer l'appelant. Les envois d'une session partent dans l'ordre des appels.
+     * <p>
+     * Au plus {@code maxInFlight} envois sont admis à la fois : leur contenu est mis en forme d'avance
+     * sur des threads virtuels pendant que la session transmet les précédents. Les suivants attendent
+     * une place sans être préparés, ce qui borne la mémoire utilisée quelle que soit la taille du lot.
+     * Les e-mails avec pièces jointes ne sont pas préparés d'avance : leurs fichiers sont lus à l'envoi.
+     * <p>
+     * Les envois synchrones ne doivent pas être mêlés aux envois asynchrones en cours sur la même session.
+     *
+     * @param email L'e-mail à envoyer.
+     * @return Le résultat de l'envoi, complété en erreur par l'{@link IOException} si la session échoue.
+     */
+    public CompletableFuture<DeliveryResult> sendAsync(Email email) {
+        AsyncSend send = new AsyncSend(email, new CompletableFuture<>(), System.nanoTime());
+        synchronized (waitingSends) {
+            if (inFlightSends < maxInFlight) {
+                admit(send);
+            } else {
+                waitingSends.add(send);
+            }
+        }
+        return send.result();
+    }
+
+    /**
+     * Admet un envoi asynchrone dans la fenêtre : prépare son contenu et programme sa transaction
+     * après celle de l'envoi précédent. Appelé avec le verrou de la fenêtre.
+     *
+     * @param send L'envoi admis.
+     */
+    private void admit(AsyncSend send) {
+        inFlightSends++;
+        CompletableFuture<byte[]> content = send.email().getAttachments().isEmpty()
+                ? CompletableFuture.supplyAsync(() -> render(send.email()), ASYNC_EXECUTOR)
+                : CompletableFuture.completedFuture(null);
+        // Un contenu qui n'a pas pu être préparé est mis en forme à l'envoi, qui signalera l'erreur
+        sendChain = sendChain.thenCombine(content.exceptionally(e -> null), (previous, bytes) -> bytes)
+                .thenAcceptAsync(bytes -> runAsync(send, bytes), ASYNC_EXECUTOR);
+    }
+
+    /**
+     * Met en forme le contenu d'un e-mail en mémoire.
+     *
+     * @param email L'e-mail.
+     * @return Le contenu, avant dot-stuffing.
+     */
+    private byte[] render(Email email) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeContent(email, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
 
+    /**
+     * Mène la transaction d'un envoi asynchrone, libère sa place dans la fenêtre puis complète son résultat.
+     *
+     * @param send L'envoi.
+     * @param content Le contenu préparé, ou null pour le mettre en forme pendant l'envoi.
+     */
+    private void runAsync(AsyncSend send, byte[] content) {
+        long queueNanos = System.nanoTime() - send.submittedNanos();
+        Email email = send.email();
+        DeliveryResult result = null;
+        Throwable failure = null;
+        try {
+            result = content != null
+                    ? send(email.getSender(), email.getRecipients(), out -> out.write(content))
+                    : sendGroupEmail(email);
+            result.setQueueNanos(queueNanos);
+        } catch (Throwable t) {
+            failure = t;
+        }
+        // La place est libérée avant de compléter le résultat : une suite de l'appelant peut fermer la session
+        synchronized (waitingSends) {
+            inFlightSends--;
+            AsyncSend next = waitingSends.poll();
+            if (next != null) {
+                admit(next);
+            }
+            waitingSends.notifyAll();
+        }
+        if (failure != null) {
+            send.result().completeExceptionally(failure);
+        } else {
+            send.result().complete(result);
+        }
+    }
 
-        sendEmail(e.getSender(), e.getRecipients(), e.getSubject(), e.getBody());
+    /**
+     * Envoie un e-mail sur la session ouverte par {@link #connect()}.
+     * Si le serveur annonce PIPELINING, les commandes de l'enveloppe sont envoyées en un seul lot
+     * et les réponses sont lues ensuite dans le même ordre.
+     * Si le serveur annonce CHUNKING, le contenu est envoyé en morceaux BDAT au lieu de DATA.
+     * Si la transaction précédente n'a pas abouti, elle est annulée par RSET avant de commencer.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param subject Le sujet de l'e-mail.
+     * @param body Le corps de l'e-mail.
+     * @return Le résultat de l'envoi pour chaque destinataire.
+     * @throws IOException Si une erreur survient lors de l'envoi de l'e-mail.
+     */
+    public DeliveryResult sendEmail(String from, List<String> recipients, String subject, String body) throws IOException {
+        return sendEmail(from, recipients, subject, body, List.of());
     }
 
     /**
-     * Envoie un e-mail.
+     * Envoie un e-mail avec des pièces jointes sur la session ouverte par {@link #connect()}.
      *
      * @param from L'expéditeur de l'e-mail.
      * @param recipients Les destinataires de l'e-mail.
      * @param subject Le sujet de l'e-mail.
      * @param body Le corps de l'e-mail.
+     * @param attachments Les pièces jointes de l'e-mail.
+     * @return Le résultat de l'envoi pour chaque destinataire.
+     * @throws IOException Si une erreur survient lors de l'envoi de l'e-mail.
+     */
+    public DeliveryResult sendEmail(String from, List<String> recipients, String subject, String body,
+                                    List<Attachment> attachments) throws IOException {
+        return send(from, recipients, out -> writeContent(from, recipients, subject, body, attachments, out));
+    }
+
+    /**
+     * Envoie un e-mail sur la session ouverte, en autant de transactions que l'exige la limite
+     * de destinataires du serveur. Chaque transaction porte le même contenu, dont l'en-tête To:
+     * cite tous les destinataires ; les destinataires reportés par 452 sont repris dans la suivante.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param content L'écriture du contenu du message.
+     * @return Le résultat de l'envoi pour chaque destinataire, toutes transactions confondues.
      * @throws IOException Si une erreur survient lors de l'envoi de l'e-mail.
      */
-    public void sendEmail(String from, List<String> recipients, String subject, String body) throws IOException {
-        sendCommand("EHLO " + smtpHost);
+    private DeliveryResult send(String from, List<String> recipients, ContentWriter content) throws IOException {
+        DeliveryResult result;
+        try {
+            result = sendBatches(from, recipients, content);
+        } catch (ContentException e) {
+            // Le contenu a été interrompu : la connexion est coupée sans QUIT, que le serveur prendrait
+            // pour une ligne du message
+            traceFailure(e.toString());
+            state = SessionState.DISCONNECTED;
+            closeSocket();
+            throw e;
+        } catch (IOException e) {
+            traceFailure(e.toString());
+            if (e instanceof SocketTimeoutException) {
+                // La réponse attendue peut encore arriver et serait prise pour celle de la commande suivante
+                state = SessionState.DISCONNECTED;
+                closeSocket();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Le dialogue a été interrompu à un point inconnu, peut-être au milieu du contenu :
+            // la connexion est coupée sans QUIT, que le serveur prendrait pour une ligne du message
+            traceFailure(e.toString());
+            state = SessionState.DISCONNECTED;
+            closeSocket();
+            throw e;
+        }
+        if (result.isFailed() || result.isPartiallyDelivered()) {
+            traceFailure("Échec de la transaction : " + result.getFinalReplyCode() + " " + result.getFinalResponse());
+        }
+        return result;
+    }
+
+    /**
+     * Envoie un e-mail en autant de transactions que l'exige la limite de destinataires.
+     * Une transaction qui échoue temporairement, ou dont la connexion est perdue, après une transaction livrée
+     * termine l'envoi sur une livraison partielle : les destinataires déjà servis ne doivent pas recevoir
+     * le message une seconde fois, seuls ceux de cette transaction et des suivantes restent à tenter.
+     * Après un refus définitif, ou un contenu devenu impossible à produire, ces destinataires sont refusés
+     * et le message reste livré aux autres.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param content L'écriture du contenu du message.
+     * @return Le résultat de l'envoi pour chaque destinataire.
+     * @throws IOException Si une erreur survient lors de l'envoi.
+     */
+    private DeliveryResult sendBatches(String from, List<String> recipients, ContentWriter content) throws IOException {
+        long start = System.nanoTime();
+        DeliveryResult total = null;
+        List<String> pending = recipients;
+        while (true) {
+            int batchSize = recipientLimit > 0 ? Math.min(recipientLimit, pending.size()) : pending.size();
+            DeliveryResult result;
+            try {
+                result = runTransaction(from, pending.subList(0, batchSize), content);
+            } catch (ContentException e) {
+                if (total == null || !total.isDelivered()) {
+                    throw e;
+                }
+                // Le contenu ne pourra pas être produit davantage lors d'une nouvelle tentative
+                state = SessionState.DISCONNECTED;
+                closeSocket();
+                for (String recipient : pending) {
+                    total.addRejected(recipient, e.getMessage());
+                }
+                total.setTransactionNanos(System.nanoTime() - start);
+                return total;
+            } catch (IOException e) {
+                if (total == null || !total.isDelivered()) {
+                    throw e;
+                }
+                // La session, interrompue à un point inconnu, est refermée ; le prochain envoi la rétablit
+                state = SessionState.DISCONNECTED;
+                closeSocket();
+                total.deferRemaining(pending, 0, e.toString());
+                total.setTransactionNanos(System.nanoTime() - start);
+                return total;
+            }
+            METRICS.recordTransaction(result);
+            List<String> rest = pending.subList(batchSize, pending.size());
+
+            Map<String, String> deferred = result.getDeferredRecipients();
+            if (result.isFailed() && total != null && total.isDelivered() && result.getFinalReplyCode() / 100 == 4) {
+                // Les destinataires refusés définitivement le restent ; les autres seront tentés à nouveau
+                List<String> unsent = new ArrayList<>(result.getAcceptedRecipients());
+                unsent.addAll(deferred.keySet());
+                for (Map.Entry<String, String> rejected : result.getRejectedRecipients().entrySet()) {
+                    if (DeliveryResult.isTemporary(rejected.getValue())) {
+                        unsent.add(rejected.getKey());
+                    } else {
+                        total.addRejected(rejected.getKey(), rejected.getValue());
+                    }
+                }
+                unsent.addAll(rest);
+                total.deferRemaining(unsent, result.getFinalReplyCode(), result.getFinalResponse());
+                total.setTransactionNanos(System.nanoTime() - start);
+                return total;
+            } else if (result.isFailed() && total != null && total.isDelivered()) {
+                // Refus définitif après une transaction livrée : le message reste livré aux destinataires déjà servis,
+                // ceux de cette transaction et des suivantes sont refusés
+                total.rejectAfterDelivery(pending, result);
+                total.setTransactionNanos(System.nanoTime() - start);
+                return total;
+            } else if (result.isFailed()) {
+                // Une transaction en échec fait échouer l'e-mail, qui pourra être retenté :
+                // les destinataires reportés et restants ne sont pas tentés
+                result.rejectDeferred();
+                rejectRemaining(rest, result);
+                rest = List.of();
+            } else if (!deferred.isEmpty()) {
+                learnRecipientLimit(result.getAcceptedRecipients().size());
+                List<String> next = new ArrayList<>(deferred.size() + rest.size());
+                next.addAll(deferred.keySet());
+                next.addAll(rest);
+                rest = next;
+            }
+
+            if (total == null) {
+                total = result;
+            } else {
+                total.merge(result);
+            }
+            if (rest.isEmpty()) {
+                total.setTransactionNanos(System.nanoTime() - start);
+                return total;
+            }
+            pending = rest;
+        }
+    }
+
+    /**
+     * Note un échec dans la trace puis la vide dans le répertoire des traces, s'il est configuré.
+     * Une trace qui ne peut pas être écrite est signalée sans masquer l'échec d'origine.
+     *
+     * @param reason La cause de l'échec.
+     */
+    private void traceFailure(String reason) {
+        trace.record(SessionTrace.NOTE, reason);
+        if (traceDirectory == null) {
+            return;
+        }
+        try {
+            Path file = dumpTrace(traceDirectory);
+            LOGGER.log(Level.WARNING, "Échec sur {0}, trace du dialogue : {1}", new Object[]{smtpHost, file});
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible d''écrire la trace du dialogue", e);
+        }
+    }
 
-        sendCommand("MAIL FROM: <" + from + ">");
+    /**
+     * Écrit les derniers échanges de la session dans un nouveau fichier du répertoire donné.
+     *
+     * @param directory Le répertoire, créé au besoin.
+     * @return Le fichier écrit.
+     * @throws IOException Si une erreur survient lors de l'écriture.
+     */
+    public Path dumpTrace(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("smtp-" + smtpHost + "-" + smtpPort + "-" + System.currentTimeMillis()
+                + "-" + TRACE_SEQUENCE.incrementAndGet() + ".trace");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            trace.dump(out);
+        }
+        return file;
+    }
+
+    /**
+     * Retient la limite de destinataires révélée par un refus 452 : le nombre de destinataires acceptés
+     * avant le premier report. Les transactions suivantes sont découpées d'emblée à cette taille.
+     *
+     * @param accepted Le nombre de destinataires acceptés dans la transaction.
+     */
+    private void learnRecipientLimit(int accepted) {
+        if (recipientLimit == 0 || accepted < recipientLimit) {
+            recipientLimit = accepted;
+            LOGGER.log(Level.INFO, "Limite de destinataires par transaction de {0} : {1}", new Object[]{smtpHost, accepted});
+        }
+    }
 
+    /**
+     * Refuse les destinataires qui n'ont pas été tentés, avec la réponse finale de la transaction.
+     *
+     * @param recipients Les destinataires restants.
+     * @param result Le résultat de la transaction en échec.
+     */
+    private static void rejectRemaining(List<String> recipients, DeliveryResult result) {
         for (String recipient : recipients) {
-            sendCommand("RCPT TO: <" + recipient + ">");
+            result.addRejected(recipient, result.getFinalResponse());
+        }
+    }
+
+    /**
+     * Mène les commandes de la transaction selon les extensions du serveur.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param content L'écriture du contenu du message.
+     * @return Le résultat de l'envoi pour chaque destinataire.
+     * @throws IOException Si une erreur survient lors de l'envoi de l'e-mail.
+     */
+    private DeliveryResult runTransaction(String from, List<String> recipients, ContentWriter content) throws IOException {
+        if (state == SessionState.DISCONNECTED) {
+            throw new IllegalStateException("Le client SMTP n'est pas connecté.");
+        }
+        boolean pipelining = supports("PIPELINING");
+        if (state == SessionState.TRANSACTION) {
+            resetTransaction(pipelining);
+        }
+        state = SessionState.TRANSACTION;
+
+        DeliveryResult result = new DeliveryResult();
+        if (supports("CHUNKING")) {
+            if (pipelining) {
+                sendChunkedPipelined(from, recipients, content, result);
+            } else {
+                sendChunked(from, recipients, content, result);
+            }
+            return result;
+        }
+
+        boolean dataAccepted = pipelining
+                ? sendEnvelopePipelined(from, recipients, result)
+                : sendEnvelope(from, recipients, result, true);
+        if (!dataAccepted) {
+            return result;
+        }
+
+        if (result.getAcceptedRecipients().isEmpty()) {
+            // RFC 2920 : DATA a été accepté alors qu'aucun destinataire ne l'a été, on termine sans contenu
+            SmtpReply dotResponse = sendCommand(".");
+            if (!result.isCompleted()) {
+                failTransaction(dotResponse, result);
+            }
+            state = SessionState.READY;
+            return result;
+        }
+
+        // Le contenu passe par le dot-stuffing puis directement dans le tampon de la connexion
+        content.writeTo(new DataStream());
+
+        SmtpReply finalResponse = sendCommand(".");
+        result.complete(finalResponse.getCode(), finalResponse.toString(), finalResponse.isPositive());
+        state = SessionState.READY;
+        return result;
+    }
+
+    /**
+     * Envoie le message avec CHUNKING sans PIPELINING : l'enveloppe commande par commande,
+     * puis chaque morceau BDAT après la réponse au précédent.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param content L'écriture du contenu du message.
+     * @param result Le résultat à compléter.
+     * @throws IOException Si une erreur survient lors de l'envoi.
+     */
+    private void sendChunked(String from, List<String> recipients, ContentWriter content, DeliveryResult result) throws IOException {
+        if (!sendEnvelope(from, recipients, result, false)) {
+            return;
+        }
+        BdatOutputStream bdat = new BdatOutputStream(output, channel, BDAT_CHUNK_SIZE, () -> {
+            timer.sent(SmtpCommand.BDAT);
+            trace.record(SessionTrace.COMMAND, BDAT_TRACE, 0, BDAT_TRACE.length);
+            output.flush();
+            SmtpReply chunkResponse = readResponse();
+            if (!chunkResponse.isPositive()) {
+                throw new ChunkRejectedException(chunkResponse);
+            }
+        });
+        try {
+            content.writeTo(bdat);
+            bdat.finish();
+        } catch (ChunkRejectedException e) {
+            // RFC 3030 : aucun morceau ne doit suivre un morceau refusé
+            result.complete(e.getReplyCode(), e.getMessage(), false);
+            return;
+        }
+        timer.sent(SmtpCommand.END_OF_DATA);
+        trace.record(SessionTrace.COMMAND, BDAT_LAST_TRACE, 0, BDAT_LAST_TRACE.length);
+        output.flush();
+        completeChunked(readResponse(), result);
+    }
+
+    /**
+     * Envoie le message avec CHUNKING et PIPELINING : le dernier lot de l'enveloppe et tous les morceaux BDAT
+     * partent d'un seul tenant, puis les réponses sont lues dans l'ordre.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param content L'écriture du contenu du message.
+     * @param result Le résultat à compléter.
+     * @throws IOException Si une erreur survient lors de l'envoi.
+     */
+    private void sendChunkedPipelined(String from, List<String> recipients, ContentWriter content, DeliveryResult result) throws IOException {
+        PipelinedEnvelope envelope = new PipelinedEnvelope(recipients, result);
+        envelope.write(from);
+        BdatOutputStream bdat = new BdatOutputStream(output, channel, BDAT_CHUNK_SIZE, null);
+        content.writeTo(bdat);
+        bdat.finish();
+        for (int i = 1; i < bdat.getChunkCount(); i++) {
+            timer.sent(SmtpCommand.BDAT);
+            trace.record(SessionTrace.COMMAND, BDAT_TRACE, 0, BDAT_TRACE.length);
+        }
+        timer.sent(SmtpCommand.END_OF_DATA);
+        trace.record(SessionTrace.COMMAND, BDAT_LAST_TRACE, 0, BDAT_LAST_TRACE.length);
+        output.flush();
+
+        envelope.finish();
+        int failedCode = 0;
+        String failedResponse = null;
+        for (int i = 1; i < bdat.getChunkCount(); i++) {
+            SmtpReply chunkResponse = readResponse();
+            if (!chunkResponse.isPositive() && failedResponse == null) {
+                failedCode = chunkResponse.getCode();
+                failedResponse = chunkResponse.toString();
+            }
+        }
+        SmtpReply lastResponse = readResponse();
+        if (result.isCompleted()) {
+            // L'enveloppe a échoué : le refus de BDAT n'en est que la conséquence
+            return;
+        }
+        if (failedResponse != null) {
+            result.complete(failedCode, failedResponse, false);
+        } else {
+            completeChunked(lastResponse, result);
+        }
+    }
+
+    /**
+     * Termine la transaction avec la réponse au dernier morceau BDAT.
+     * Après un refus, la session reste à réinitialiser par RSET.
+     *
+     * @param lastResponse La réponse à « BDAT taille LAST ».
+     * @param result Le résultat à compléter.
+     */
+    private void completeChunked(SmtpReply lastResponse, DeliveryResult result) {
+        boolean delivered = lastResponse.isPositive() && !result.getAcceptedRecipients().isEmpty();
+        result.complete(lastResponse.getCode(), lastResponse.toString(), delivered);
+        if (lastResponse.isPositive()) {
+            state = SessionState.READY;
+        }
+    }
+
+    /**
+     * Écriture de tout ou partie du contenu d'un message dans un flux.
+     */
+    private interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Flux du contenu après DATA : applique le dot-stuffing et transmet les pièces jointes
+     * encodées directement au canal de la connexion. Le base64 ne contient jamais de point,
+     * ces fichiers n'ont donc pas besoin de dot-stuffing.
+     */
+    private class DataStream extends DotStuffingOutputStream implements FileTransferTarget {
+        DataStream() {
+            super(output);
+        }
+
+        @Override
+        public void transferFile(Path file) throws IOException {
+            output.flush();
+            AttachmentEncoder.transfer(file, channel);
+            // Les fichiers encodés se terminent par CRLF
+            markLineStart();
+        }
+    }
+
+    /**
+     * Flux compteur des octets écrits sur la connexion, placé sous le tampon d'envoi :
+     * il n'est appelé qu'à chaque vidage du tampon.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            METRICS.recordBytes(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            METRICS.recordBytes(len);
+        }
+    }
+
+    /**
+     * Exception levée lorsque le serveur refuse un morceau BDAT intermédiaire.
+     */
+    private static class ChunkRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final int replyCode;
+
+        ChunkRejectedException(SmtpReply reply) {
+            super(reply.toString());
+            this.replyCode = reply.getCode();
+        }
+
+        int getReplyCode() {
+            return replyCode;
+        }
+    }
+
+    /**
+     * Annule la transaction laissée inachevée par l'envoi précédent.
+     * Avec PIPELINING, la commande RSET est placée en tête du prochain lot et sa réponse
+     * est lue avec celles de l'enveloppe, sans aller-retour supplémentaire.
+     *
+     * @param pipelining Vrai si le serveur supporte PIPELINING.
+     * @throws IOException Si le serveur refuse la commande RSET.
+     */
+    private void resetTransaction(boolean pipelining) throws IOException {
+        if (pipelining) {
+            writeCommand("RSET");
+            pendingReset = true;
+            return;
+        }
+        checkReset(sendCommand("RSET"));
+    }
+
+    /**
+     * Vérifie la réponse à la commande RSET.
+     *
+     * @param response La réponse du serveur.
+     * @throws IOException Si le serveur refuse la commande RSET.
+     */
+    private static void checkReset(SmtpReply response) throws IOException {
+        if (!response.isPositive()) {
+            throw new IOException("Le serveur SMTP refuse la commande RSET : " + response);
+        }
+    }
+
+    /**
+     * Envoie l'enveloppe du message commande par commande, en attendant chaque réponse.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param result Le résultat à compléter pour chaque destinataire.
+     * @param withData Vrai pour terminer l'enveloppe par DATA, faux lorsque le contenu suit en BDAT.
+     * @return Vrai si le contenu peut être envoyé : au moins un destinataire accepté, et DATA accepté (354) si demandé.
+     * @throws IOException Si une erreur survient lors de l'envoi.
+     */
+    private boolean sendEnvelope(String from, List<String> recipients, DeliveryResult result, boolean withData) throws IOException {
+        SmtpReply mailResponse = sendCommand("MAIL FROM: <" + from + ">");
+        if (!mailResponse.isPositive()) {
+            rejectAll(recipients, mailResponse, result);
+            return false;
+        }
+
+        SmtpReply rcptResponse = null;
+        for (int i = 0; i < recipients.size(); i++) {
+            writeRecipient(recipients, i);
+            output.flush();
+            rcptResponse = readResponse();
+            recordRecipient(recipients.get(i), rcptResponse, result);
+        }
+
+        if (result.getAcceptedRecipients().isEmpty()) {
+            if (rcptResponse != null) {
+                failTransaction(rcptResponse, result);
+            }
+            return false;
+        }
+        return !withData || checkData(sendCommand("DATA"), result);
+    }
+
+    /**
+     * Envoie l'enveloppe du message par lots (RFC 2920), DATA partant avec le dernier, puis lit les réponses
+     * dans l'ordre des commandes envoyées.
+     *
+     * @param from L'expéditeur de l'e-mail.
+     * @param recipients Les destinataires de l'e-mail.
+     * @param result Le résultat à compléter pour chaque destinataire.
+     * @return Vrai si le serveur a accepté la commande DATA (354).
+     * @throws IOException Si une erreur survient lors de l'envoi.
+     */
+    private boolean sendEnvelopePipelined(String from, List<String> recipients, DeliveryResult result) throws IOException {
+        PipelinedEnvelope envelope = new PipelinedEnvelope(recipients, result);
+        envelope.write(from);
+        writeCommand("DATA");
+        output.flush();
+
+        envelope.finish();
+        return checkData(readResponse(), result);
+    }
+
+    /**
+     * Construit la commande RCPT TO d'un destinataire, CRLF compris.
+     * Pour une {@link AddressList}, les octets de l'adresse sont copiés depuis le stockage sans créer de chaîne.
+     *
+     * @param recipients Les destinataires de l'e-mail.
+     * @param index La position du destinataire.
+     * @return Les octets de la commande.
+     */
+    static byte[] rcptCommand(List<String> recipients, int index) {
+        if (recipients instanceof AddressList list) {
+            int handle = list.handle(index);
+            int length = list.getStore().byteLength(handle);
+            byte[] command = Arrays.copyOf(RCPT_TO, RCPT_TO.length + length + 3);
+            list.getStore().copyBytes(handle, command, RCPT_TO.length);
+            command[command.length - 3] = '>';
+            command[command.length - 2] = '\r';
+            command[command.length - 1] = '\n';
+            return command;
+        }
+        return ("RCPT TO: <" + recipients.get(index) + ">\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Enveloppe envoyée avec PIPELINING : RSET éventuel, MAIL FROM puis chaque RCPT TO.
+     * Les commandes partent par lots d'au plus {@link #PIPELINE_WINDOW} ; les réponses d'un lot sont lues
+     * avant d'écrire le suivant, sauf celles du dernier, qui partent avec DATA ou BDAT.
+     * Si MAIL FROM ou tous les destinataires sont refusés, la transaction se termine avec ce refus :
+     * les réponses à DATA ou BDAT qui suivent n'en sont que la conséquence et masqueraient un refus temporaire.
+     */
+    private final class PipelinedEnvelope {
+        private final List<String> recipients;
+        private final DeliveryResult result;
+        private int written;
+        private int read;
+        private boolean mailRead;
+        private boolean mailAccepted;
+        private int failedCode;
+        private String failedResponse;
+
+        /**
+         * @param recipients Les destinataires de l'e-mail, dans l'ordre des commandes.
+         * @param result Le résultat à compléter pour chaque destinataire.
+         */
+        PipelinedEnvelope(List<String> recipients, DeliveryResult result) {
+            this.recipients = recipients;
+            this.result = result;
         }
 
-        sendCommand("DATA");
+        /**
+         * Écrit MAIL FROM et les RCPT TO, en lisant les réponses de chaque lot complet.
+         * Les commandes du dernier lot restent dans le tampon d'envoi.
+         *
+         * @param from L'expéditeur de l'e-mail.
+         * @throws IOException Si une erreur survient lors de l'envoi ou de la lecture.
+         */
+        void write(String from) throws IOException {
+            writeCommand("MAIL FROM: <" + from + ">");
+            int unread = pendingReset ? 2 : 1;
+            for (; written < recipients.size(); written++) {
+                if (unread == PIPELINE_WINDOW) {
+                    output.flush();
+                    readReplies();
+                    unread = 0;
+                }
+                writeRecipient(recipients, written);
+                unread++;
+            }
+        }
 
-        writer.write(prepareContent(from, recipients, subject, body));
+        /**
+         * Lit les réponses restantes, une fois le dernier lot envoyé, et termine la transaction en échec
+         * si l'enveloppe est refusée.
+         *
+         * @throws IOException Si une erreur survient lors de la lecture ou si RSET est refusé.
+         */
+        void finish() throws IOException {
+            readReplies();
+            if (!mailAccepted || (result.getAcceptedRecipients().isEmpty() && failedResponse != null)) {
+                result.complete(failedCode, failedResponse, false);
+            }
+        }
 
-        writer.flush();
+        /**
+         * Lit les réponses aux commandes déjà écrites.
+         *
+         * @throws IOException Si une erreur survient lors de la lecture ou si RSET est refusé.
+         */
+        private void readReplies() throws IOException {
+            if (!mailRead) {
+                mailRead = true;
+                if (pendingReset) {
+                    pendingReset = false;
+                    checkReset(readResponse());
+                }
+                SmtpReply mailResponse = readResponse();
+                mailAccepted = mailResponse.isPositive();
+                if (!mailAccepted) {
+                    failedCode = mailResponse.getCode();
+                    failedResponse = mailResponse.toString();
+                }
+            }
+            for (; read < written; read++) {
+                String recipient = recipients.get(read);
+                SmtpReply rcptResponse = readResponse();
+                if (!mailAccepted) {
+                    result.addRejected(recipient, failedResponse);
+                    continue;
+                }
+                recordRecipient(recipient, rcptResponse, result);
+                if (!rcptResponse.isPositive()) {
+                    failedCode = rcptResponse.getCode();
+                    failedResponse = rcptResponse.toString();
+                }
+            }
+        }
+    }
+
+    /**
+     * Vérifie la réponse à la commande DATA et termine la transaction en échec si elle est refusée,
+     * sauf si l'enveloppe l'a déjà terminée.
+     *
+     * @param dataResponse La réponse du serveur à DATA.
+     * @param result Le résultat à compléter.
+     * @return Vrai si le serveur attend le contenu du message (354).
+     */
+    private static boolean checkData(SmtpReply dataResponse, DeliveryResult result) {
+        if (dataResponse.getCode() == 354) {
+            return true;
+        }
+        if (!result.isCompleted()) {
+            failTransaction(dataResponse, result);
+        }
+        return false;
+    }
+
+    /**
+     * Termine la transaction en échec avec la réponse du serveur.
+     *
+     * @param response La réponse qui met fin à la transaction.
+     * @param result Le résultat à compléter.
+     */
+    private static void failTransaction(SmtpReply response, DeliveryResult result) {
+        result.complete(response.getCode(), response.toString(), false);
+    }
+
+    /**
+     * Refuse tous les destinataires avec la même réponse, lorsque MAIL FROM a été refusé.
+     *
+     * @param recipients Les destinataires de l'e-mail.
+     * @param response La réponse du serveur à MAIL FROM.
+     * @param result Le résultat à compléter.
+     */
+    private static void rejectAll(List<String> recipients, SmtpReply response, DeliveryResult result) {
+        String text = response.toString();
+        for (String recipient : recipients) {
+            result.addRejected(recipient, text);
+        }
+        result.complete(response.getCode(), text, false);
+    }
 
-        sendCommand(".");
+    /**
+     * Enregistre la réponse du serveur pour un destinataire.
+     *
+     * @param recipient L'adresse du destinataire.
+     * @param response La réponse du serveur à la commande RCPT TO.
+     * @param result Le résultat à compléter.
+     */
+    private static void recordRecipient(String recipient, SmtpReply response, DeliveryResult result) {
+        if (response.isPositive()) {
+            result.addAccepted(recipient);
+        } else if (response.getCode() == 452) {
+            // RFC 5321 4.5.3.1.10 : trop de destinataires, à reprendre dans une nouvelle transaction
+            result.addDeferred(recipient, response.toString());
+        } else {
+            result.addRejected(recipient, response.toString());
+        }
     }
 
 
     /**
-     * Ferme la connexion au serveur SMTP et libère les ressources.
+     * Indique si la connexion au serveur SMTP est ouverte.
+     *
+     * @return Vrai si le client est connecté.
+     */
+    public boolean isConnected() {
+        return socket != null && socket.isConnected() && !socket.isClosed();
+    }
+
+    /**
+     * Termine la session par QUIT puis ferme la connexion au serveur SMTP et libère les ressources.
      */
     public void close(){
-        if (socket != null && !socket.isClosed()) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du socket", e);
+        // Les envois asynchrones admis ou en attente partent avant QUIT
+        synchronized (waitingSends) {
+            while (inFlightSends > 0) {
+                try {
+                    waitingSends.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
-        if (writer != null) {
+        if (state != SessionState.DISCONNECTED && isConnected()) {
             try {
-                writer.close();
+                sendCommand("QUIT");
             } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du writer", e);
+                // Attendu sur une session dont la connexion a déjà été perdue
+                LOGGER.log(Level.FINE, "Erreur lors de l'envoi de QUIT", e);
             }
         }
-        if (reader != null) {
+        state = SessionState.DISCONNECTED;
+        pendingReset = false;
+        closeSocket();
+    }
+
+    /**
+     * Ferme le socket de la session.
+     * Les flux sont adossés au socket : le fermer les ferme aussi. Ce qui reste dans le tampon d'envoi
+     * appartient à une transaction abandonnée et n'a pas à être écrit.
+     */
+    private void closeSocket() {
+        if (socket != null && !socket.isClosed()) {
             try {
-                reader.close();
+                socket.close();
             } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du reader", e);
+                LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du socket", e);
             }
         }
     }
@@ -0,0 +1,161 @@
+package dai.network;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Trace du dialogue d'une session SMTP, conservée en mémoire dans un tampon circulaire d'octets.
+ * <p>
+ * Chaque commande et chaque ligne de réponse est copiée telle quelle avec son instant, sans créer de chaîne
+ * ni écrire sur disque : seuls les échanges les plus récents sont gardés, les plus anciens étant écrasés.
+ * La trace n'est mise en forme qu'au moment de la vider, après un échec ou à la demande.
+ * <p>
+ * Format d'un enregistrement : type (1 octet), instant relatif en nanosecondes (8 octets),
+ * longueur (2 octets) puis les octets de la ligne, tronqués à {@link #MAX_LINE_LENGTH}.
+ */
+public class SessionTrace {
+    /**
+     * Taille par défaut du tampon, en octets.
+     */
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+    static final byte COMMAND = 'C';
+    static final byte REPLY = 'S';
+    static final byte NOTE = '#';
+    private static final int MAX_LINE_LENGTH = 512;
+    private static final int HEADER_LENGTH = 11;
+
+    private final byte[] buffer;
+    private final long originNanos = System.nanoTime();
+    private final Instant origin = Instant.now();
+    // Positions absolues : fin du dernier enregistrement et début du plus ancien encore conservé
+    private long head;
+    private long tail;
+
+    public SessionTrace(int capacity) {
+        if (capacity < HEADER_LENGTH + MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("La trace doit pouvoir contenir au moins une ligne complète.");
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Enregistre une ligne du dialogue, fin de ligne CRLF exclue si elle est présente.
+     *
+     * @param type Le type de la ligne : {@link #COMMAND}, {@link #REPLY} ou {@link #NOTE}.
+     * @param data Les octets de la ligne.
+     * @param offset La position du début de la ligne.
+     * @param length La longueur de la ligne.
+     */
+    synchronized void record(byte type, byte[] data, int offset, int length) {
+        if (length >= 2 && data[offset + length - 2] == '\r' && data[offset + length - 1] == '\n') {
+            length -= 2;
+        }
+        length = Math.min(length, MAX_LINE_LENGTH);
+        int size = HEADER_LENGTH + length;
+        while (head + size - tail > buffer.length) {
+            tail += HEADER_LENGTH + readShort(tail + 9);
+        }
+        long time = System.nanoTime() - originNanos;
+        put(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            put((byte) (time >>> shift));
+        }
+        put((byte) (length >>> 8));
+        put((byte) length);
+        int start = (int) (head % buffer.length);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(data, offset, buffer, start, first);
+        System.arraycopy(data, offset + first, buffer, 0, length - first);
+        head += length;
+    }
+
+    /**
+     * Enregistre une ligne de texte du dialogue.
+     *
+     * @param type Le type de la ligne.
+     * @param line La ligne.
+     */
+    void record(byte type, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        record(type, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Enregistre toutes les lignes d'une réponse du serveur.
+     *
+     * @param reply La réponse.
+     */
+    void record(SmtpReply reply) {
+        for (int i = 0; i < reply.getLineCount(); i++) {
+            record(REPLY, reply.data(), reply.lineStart(i), reply.lineStart(i + 1) - reply.lineStart(i));
+        }
+    }
+
+    /**
+     * Écrit la trace en texte, de l'échange le plus ancien au plus récent, une ligne par enregistrement
+     * précédée de son instant.
+     *
+     * @param out La destination.
+     * @throws IOException Si une erreur survient lors de l'écriture.
+     */
+    public void dump(Writer out) throws IOException {
+        byte[] copy;
+        long start;
+        long end;
+        synchronized (this) {
+            copy = buffer.clone();
+            start = tail;
+            end = head;
+        }
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        for (long position = start; position < end; ) {
+            byte type = copy[(int) (position % copy.length)];
+            long time = 0;
+            for (int i = 1; i <= 8; i++) {
+                time = time << 8 | (copy[(int) ((position + i) % copy.length)] & 0xFF);
+            }
+            int length = (copy[(int) ((position + 9) % copy.length)] & 0xFF) << 8
+                    | copy[(int) ((position + 10) % copy.length)] & 0xFF;
+            position += HEADER_LENGTH;
+            for (int i = 0; i < length; i++) {
+                line[i] = copy[(int) ((position + i) % copy.length)];
+            }
+            position += length;
+            out.write(origin.plusNanos(time) + " " + (char) type + ": "
+                    + new String(line, 0, length, StandardCharsets.UTF_8) + "\n");
+        }
+    }
+
+    /**
+     * Ajoute un octet en fin de tampon.
+     *
+     * @param b L'octet.
+     */
+    private void put(byte b) {
+        buffer[(int) (head++ % buffer.length)] = b;
+    }
+
+    /**
+     * Lit un entier non signé sur deux octets à une position absolue.
+     *
+     * @param position La position.
+     * @return L'entier.
+     */
+    private int readShort(long position) {
+        return (buffer[(int) (position % buffer.length)] & 0xFF) << 8
+                | buffer[(int) ((position + 1) % buffer.length)] & 0xFF;
+    }
+
+    // region Accessors
+
+    /**
+     * @return Le nombre d'octets de la trace actuellement conservés.
+     */
+    public synchronized int getSize() {
+        return (int) (head - tail);
+    }
+
+    // endregion Accessors
+}
@@ -0,0 +1,330 @@
+package dai.network;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Classe représentant une réponse du serveur SMTP : code, code de statut étendu (RFC 3463) et lignes.
+ * Une même instance est réutilisée d'une réponse à l'autre par {@link SmtpReplyParser} :
+ * les octets des lignes sont conservés tels quels et ne sont convertis en texte qu'à la demande.
+ */
+public class SmtpReply {
+    private static final int MAX_LINES = 64;
+    /**
+     * Longueur maximale d'une ligne de réponse, CRLF compris (RFC 5321, 4.5.3.1.5).
+     */
+    static final int MAX_LINE_LENGTH = 512;
+    /**
+     * Taille maximale d'une réponse, sans les fins de ligne : les lignes fusionnées au-delà de {@link #MAX_LINES}
+     * ne peuvent pas la faire grossir indéfiniment.
+     */
+    static final int MAX_LENGTH = MAX_LINES * (MAX_LINE_LENGTH - 2);
+
+    private byte[] data = new byte[MAX_LINE_LENGTH];
+    private int length;
+    private final int[] lineStarts = new int[MAX_LINES + 1];
+    private int lineCount;
+    private int code;
+    private int enhancedClass;
+    private int enhancedSubject;
+    private int enhancedDetail;
+
+    /**
+     * Vide la réponse avant la lecture d'une nouvelle réponse.
+     */
+    void reset() {
+        length = 0;
+        lineCount = 0;
+        code = 0;
+        enhancedClass = -1;
+        enhancedSubject = -1;
+        enhancedDetail = -1;
+    }
+
+    /**
+     * Ajoute un octet à la ligne en cours de lecture.
+     *
+     * @param b L'octet à ajouter.
+     * @return Faux si la réponse a atteint {@link #MAX_LENGTH} octets et que l'octet n'a pas été ajouté.
+     */
+    boolean append(byte b) {
+        if (length == MAX_LENGTH) {
+            return false;
+        }
+        if (length == data.length) {
+            data = Arrays.copyOf(data, Math.min(data.length * 2, MAX_LENGTH));
+        }
+        data[length++] = b;
+        return true;
+    }
+
+    /**
+     * Termine la ligne en cours. Au-delà de {@link #MAX_LINES} lignes, les suivantes sont fusionnées avec la dernière.
+     *
+     * @param lineStart La position du début de la ligne dans les données.
+     */
+    void endLine(int lineStart) {
+        if (lineCount < MAX_LINES) {
+            lineStarts[lineCount++] = lineStart;
+        }
+        lineStarts[lineCount] = length;
+    }
+
+    /**
+     * Retourne le nombre d'octets déjà lus pour cette réponse.
+     *
+     * @return La position de la prochaine ligne dans les données.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Retourne les octets bruts des lignes, code compris, sans fin de ligne.
+     *
+     * @return Le tableau des données, valable jusqu'à la lecture suivante.
+     */
+    byte[] data() {
+        return data;
+    }
+
+    /**
+     * Retourne la position du début d'une ligne dans les données.
+     *
+     * @param line L'indice de la ligne, ou le nombre de lignes pour la fin de la dernière.
+     * @return La position.
+     */
+    int lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * Décode le code à trois chiffres de la ligne terminée commençant à la position donnée.
+     *
+     * @param lineStart La position du début de la ligne.
+     * @return Le code, ou -1 si la ligne ne commence pas par trois chiffres.
+     */
+    int lineCode(int lineStart) {
+        if (length - lineStart < 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = lineStart; i < lineStart + 3; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Retourne le séparateur suivant le code de la ligne terminée commençant à la position donnée.
+     *
+     * @param lineStart La position du début de la ligne.
+     * @return Le séparateur, « - » pour une ligne suivie d'une autre, un espace sinon.
+     */
+    byte separator(int lineStart) {
+        return length - lineStart > 3 ? data[lineStart + 3] : (byte) ' ';
+    }
+
+    /**
+     * Fixe le code de la réponse et analyse le code de statut étendu de la première ligne, s'il existe.
+     *
+     * @param code Le code à trois chiffres.
+     */
+    void complete(int code) {
+        this.code = code;
+        parseEnhancedCode();
+    }
+
+    /**
+     * Analyse un code de statut étendu « classe.sujet.détail » au début du texte de la première ligne.
+     * La classe doit correspondre au premier chiffre du code de réponse.
+     */
+    private void parseEnhancedCode() {
+        int i = textStart(0);
+        int end = lineStarts[1];
+        int cls = code / 100;
+        if (cls == 3 || i >= end || data[i++] - '0' != cls) {
+            return;
+        }
+        if (i >= end || data[i++] != '.') {
+            return;
+        }
+        int subject = 0;
+        int digits = 0;
+        while (i < end && data[i] >= '0' && data[i] <= '9' && digits < 3) {
+            subject = subject * 10 + (data[i++] - '0');
+            digits++;
+        }
+        if (digits == 0 || i >= end || data[i++] != '.') {
+            return;
+        }
+        int detail = 0;
+        digits = 0;
+        while (i < end && data[i] >= '0' && data[i] <= '9' && digits < 3) {
+            detail = detail * 10 + (data[i++] - '0');
+            digits++;
+        }
+        if (digits == 0 || (i < end && data[i] != ' ')) {
+            return;
+        }
+        enhancedClass = cls;
+        enhancedSubject = subject;
+        enhancedDetail = detail;
+    }
+
+    /**
+     * Retourne la position du texte d'une ligne, après le code et le séparateur.
+     *
+     * @param line L'indice de la ligne.
+     * @return La position du texte dans les données.
+     */
+    private int textStart(int line) {
+        return Math.min(lineStarts[line] + 4, lineStarts[line + 1]);
+    }
+
+    /**
+     * Indique si le texte d'une ligne commence par un mot-clé, sans tenir compte de la casse.
+     * Utilisé pour rechercher une extension dans la réponse à EHLO sans créer de chaîne.
+     *
+     * @param line L'indice de la ligne.
+     * @param keyword Le mot-clé en ASCII.
+     * @return Vrai si la ligne commence par le mot-clé suivi d'un espace ou de la fin de ligne.
+     */
+    public boolean lineStartsWith(int line, String keyword) {
+        int start = textStart(line);
+        int end = lineStarts[line + 1];
+        if (end - start < keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toUpperCase(data[start + i]) != Character.toUpperCase(keyword.charAt(i))) {
+                return false;
+            }
+        }
+        return end - start == keyword.length() || data[start + keyword.length()] == ' ';
+    }
+
+    /**
+     * Indique si l'une des lignes suivant la première annonce un mot-clé, comme une extension dans la réponse à EHLO.
+     *
+     * @param keyword Le mot-clé en ASCII.
+     * @return Vrai si le mot-clé est annoncé.
+     */
+    public boolean hasKeyword(String keyword) {
+        for (int i = 1; i < lineCount; i++) {
+            if (lineStartsWith(i, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indique si la réponse est positive (2xx).
+     *
+     * @return Vrai si la réponse est positive.
+     */
+    public boolean isPositive() {
+        return code / 100 == 2;
+    }
+
+    /**
+     * Indique si la réponse est intermédiaire (3xx), comme 354 après DATA.
+     *
+     * @return Vrai si la réponse est intermédiaire.
+     */
+    public boolean isIntermediate() {
+        return code / 100 == 3;
+    }
+
+    /**
+     * Indique si la réponse est un échec temporaire (4xx).
+     *
+     * @return Vrai si la réponse est un échec temporaire.
+     */
+    public boolean isTransientFailure() {
+        return code / 100 == 4;
+    }
+
+    /**
+     * Indique si la réponse est un échec permanent (5xx).
+     *
+     * @return Vrai si la réponse est un échec permanent.
+     */
+    public boolean isPermanentFailure() {
+        return code / 100 == 5;
+    }
+
+    /**
+     * Indique si la réponse contient un code de statut étendu (RFC 3463).
+     *
+     * @return Vrai si un code de statut étendu a été trouvé.
+     */
+    public boolean hasEnhancedCode() {
+        return enhancedClass >= 0;
+    }
+
+    /**
+     * Retourne le code de statut étendu sous forme textuelle.
+     *
+     * @return Le code « classe.sujet.détail », ou null s'il est absent.
+     */
+    public String getEnhancedCode() {
+        return hasEnhancedCode() ? enhancedClass + "." + enhancedSubject + "." + enhancedDetail : null;
+    }
+
+    /**
+     * Retourne le texte d'une ligne, sans le code ni le séparateur.
+     *
+     * @param line L'indice de la ligne.
+     * @return Le texte de la ligne.
+     */
+    public String getLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException(line);
+        }
+        int start = textStart(line);
+        return new String(data, start, lineStarts[line + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retourne la réponse complète telle que reçue, une ligne par ligne de réponse.
+     *
+     * @return Le texte de la réponse.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length + lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            sb.append(new String(data, lineStarts[i], lineStarts[i + 1] - lineStarts[i], StandardCharsets.UTF_8)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // region Accessors
+
+    public int getCode() {
+        return code;
+    }
+
+    public int getEnhancedClass() {
+        return enhancedClass;
+    }
+
+    public int getEnhancedSubject() {
+        return enhancedSubject;
+    }
+
+    public int getEnhancedDetail() {
+        return enhancedDetail;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    // endregion Accessors
+}
@@ -0,0 +1,109 @@
+package dai.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Analyseur de réponses SMTP travaillant directement sur les octets reçus, sans expression régulière
+ * ni chaîne intermédiaire. Les lignes « xyz-texte » annoncent une suite, la ligne « xyz texte » termine la réponse.
+ * L'analyse est incrémentale : une réponse peut arriver en plusieurs morceaux.
+ */
+public class SmtpReplyParser {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+    private boolean inReply;
+    private int lineStart;
+    private int code = -1;
+
+    /**
+     * Lit une réponse complète depuis un flux bloquant.
+     * Les octets lus au-delà de la réponse sont conservés pour la réponse suivante.
+     *
+     * @param in Le flux d'entrée de la connexion.
+     * @param reply La réponse à remplir, réutilisée d'un appel à l'autre.
+     * @return La réponse remplie.
+     * @throws IOException Si la connexion est perdue ou si la réponse est mal formée.
+     */
+    public SmtpReply read(InputStream in, SmtpReply reply) throws IOException {
+        while (!consume(buffer, reply)) {
+            int count = in.read(buffer.array());
+            if (count < 0) {
+                throw new IOException("La connexion au serveur SMTP a été perdue.");
+            }
+            buffer.position(0).limit(count);
+        }
+        return reply;
+    }
+
+    /**
+     * Consomme les octets disponibles jusqu'à la fin d'une réponse.
+     *
+     * @param in Les octets reçus ; la position avance jusqu'après la réponse.
+     * @param reply La réponse à remplir, réutilisée d'un appel à l'autre.
+     * @return Vrai si une réponse complète a été lue, faux s'il faut attendre d'autres octets.
+     * @throws IOException Si la réponse est mal formée.
+     */
+    public boolean consume(ByteBuffer in, SmtpReply reply) throws IOException {
+        if (!inReply && in.hasRemaining()) {
+            reply.reset();
+            inReply = true;
+        }
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\r') {
+                continue;
+            }
+            if (b != '\n') {
+                // Sans CRLF, une ligne conforme compte au plus MAX_LINE_LENGTH - 2 octets
+                if (reply.length() - lineStart >= SmtpReply.MAX_LINE_LENGTH - 2 || !reply.append(b)) {
+                    abort();
+                    throw new IOException("Réponse SMTP trop longue : plus de " + SmtpReply.MAX_LINE_LENGTH
+                            + " octets par ligne ou de " + SmtpReply.MAX_LENGTH + " octets au total.");
+                }
+                continue;
+            }
+            if (endLine(reply)) {
+                reply.complete(code);
+                inReply = false;
+                code = -1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Termine la ligne en cours et vérifie son code.
+     *
+     * @param reply La réponse en cours de lecture.
+     * @return Vrai si la ligne est la dernière de la réponse.
+     * @throws IOException Si la ligne ne commence pas par un code valide ou si le code change en cours de réponse.
+     */
+    private boolean endLine(SmtpReply reply) throws IOException {
+        int start = lineStart;
+        lineStart = reply.length();
+        reply.endLine(start);
+        int lineCode = reply.lineCode(start);
+        if (lineCode < 0 || (code >= 0 && lineCode != code)) {
+            abort();
+            throw new IOException("Réponse SMTP invalide : " + reply);
+        }
+        code = lineCode;
+        boolean last = reply.separator(start) != '-';
+        if (last) {
+            lineStart = 0;
+        }
+        return last;
+    }
+
+    /**
+     * Abandonne la réponse en cours après une erreur, pour que la lecture suivante reparte d'une réponse vide.
+     */
+    private void abort() {
+        inReply = false;
+        code = -1;
+        lineStart = 0;
+    }
+}
@@ -0,0 +1,21 @@
+package dai.network;
+
+/**
+ * Délais d'attente d'une session SMTP. Une session qui les dépasse échoue au lieu de bloquer
+ * indéfiniment sur un serveur qui accepte la connexion sans jamais répondre.
+ *
+ * @param connectMillis Le délai d'établissement de la connexion, en millisecondes.
+ * @param readMillis Le délai d'attente d'une réponse du serveur, en millisecondes.
+ */
+public record SmtpTimeouts(int connectMillis, int readMillis) {
+    /**
+     * Délais par défaut : 30 secondes pour se connecter, 5 minutes pour une réponse (RFC 5321, 4.5.3.2).
+     */
+    public static final SmtpTimeouts DEFAULT = new SmtpTimeouts(30_000, 300_000);
+
+    public SmtpTimeouts {
+        if (connectMillis <= 0 || readMillis <= 0) {
+            throw new IllegalArgumentException("Les délais d'attente doivent être des nombres positifs.");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.AdaptiveSendController.Signal;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour AdaptiveSendController.
+ * Teste la montée des limites, leur réduction sur saturation et le respect du débit.
+ */
+public class AdaptiveSendControllerTest {
+    private static final long RTT = 1_000_000;
+
+    private static void sendOne(AdaptiveSendController controller, Signal signal, long rtt) throws InterruptedException {
+        controller.acquire();
+        controller.release(signal, rtt);
+    }
+
+    /**
+     * Teste que les limites montent jusqu'au maximum tant que les transactions réussissent.
+     */
+    @Test
+    public void testGrowsWhileSuccessful() throws InterruptedException {
+        AdaptiveSendController controller = new AdaptiveSendController(1, 1, 8, 0, 0, 0);
+        for (int i = 0; i < 20; i++) {
+            sendOne(controller, Signal.SUCCESS, RTT);
+        }
+        assertEquals(8, controller.getConcurrencyLimit());
+        assertEquals(0, controller.getDecreases());
+    }
+
+    /**
+     * Teste la division des limites sur une réponse 4xx, une seule fois par durée de transaction.
+     */
+    @Test
+    public void testBacksOffOnOverload() throws InterruptedException {
+        AdaptiveSendController controller = new AdaptiveSendController(1, 8, 8, 0, 0, 0);
+        sendOne(controller, Signal.SUCCESS, 1_000_000_000L);
+        sendOne(controller, Signal.OVERLOADED, 0);
+        sendOne(controller, Signal.OVERLOADED, 0);
+        assertEquals(4, controller.getConcurrencyLimit());
+        assertEquals(1, controller.getDecreases());
+
+        // Les refus définitifs ne modifient pas les limites
+        sendOne(controller, Signal.NEUTRAL, 0);
+        assertEquals(4, controller.getConcurrencyLimit());
+    }
+
+    /**
+     * Teste la réduction des limites lorsque la durée des transactions s'allonge.
+     */
+    @Test
+    public void testBacksOffOnLatency() throws InterruptedException {
+        AdaptiveSendController controller = new AdaptiveSendController(1, 8, 8, 0, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            sendOne(controller, Signal.SUCCESS, RTT);
+        }
+        for (int i = 0; i < 20 && controller.getDecreases() == 0; i++) {
+            sendOne(controller, Signal.SUCCESS, 10 * RTT);
+        }
+        assertEquals(1, controller.getDecreases());
+        assertTrue(controller.getConcurrencyLimit() < 8);
+    }
+
+    /**
+     * Teste que le débit imposé espace les transactions.
+     */
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        AdaptiveSendController controller = new AdaptiveSendController(4, 4, 4, 50, 50, 50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            sendOne(controller, Signal.NEUTRAL, 0);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 190, "durée : " + elapsedMs + " ms");
+        assertEquals(50, controller.getRate());
+    }
+}
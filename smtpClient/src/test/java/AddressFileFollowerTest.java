@@ -0,0 +1,153 @@
+import dai.config.AddressFileFollower;
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.CampaignReport;
+import dai.dispatch.DomainQueues;
+import dai.dispatch.Relay;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.model.Email;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour AddressFileFollower.
+ * Teste la lecture incrémentale d'un fichier d'adresses qui grandit, et l'envoi d'une campagne
+ * alimentée par ce fichier pendant qu'il est écrit.
+ */
+public class AddressFileFollowerTest {
+    private static final List<Message> MESSAGES = List.of(new Message("Sujet", "Corps"));
+
+    private static void append(Path file, String text) throws Exception {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Attend le prochain e-mail de la source.
+     */
+    private static Email next(AddressFileFollower follower) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        Email email;
+        while ((email = follower.poll()) == null) {
+            assertTrue(System.nanoTime() < deadline, "Aucun e-mail produit");
+            Thread.sleep(5);
+        }
+        return email;
+    }
+
+    /**
+     * Teste que seules les nouvelles lignes complètes sont lues, sans adresse invalide ni doublon,
+     * et que les adresses restantes forment un dernier groupe à la fin du suivi.
+     */
+    @Test
+    public void testFollowGrowingFile() throws Exception {
+        Path file = Files.createTempFile("victims", ".txt");
+        Files.writeString(file, "a@test.com\nb@test.com\n\ninvalide\n");
+        try (AddressFileFollower follower = new AddressFileFollower(file, MESSAGES, 0, 2, 2, 1, 1500).start()) {
+            Email first = next(follower);
+            assertEquals("a@test.com", first.getSender());
+            assertEquals(List.of("b@test.com"), first.getRecipients());
+            assertNull(follower.poll());
+
+            // Doublon, puis une ligne écrite en deux fois : elle n'est lue qu'une fois terminée
+            append(file, "a@test.com\nc@te");
+            Thread.sleep(200);
+            assertNull(follower.poll());
+            append(file, "st.com\nd@test.com\ne@test.com\n");
+            Email second = next(follower);
+            assertEquals("c@test.com", second.getSender());
+            assertEquals(List.of("d@test.com"), second.getRecipients());
+
+            append(file, "f@test.com\n");
+            // e et f restent en attente jusqu'à la fin du suivi, puis forment le dernier groupe
+            Email last = next(follower);
+            assertEquals("e@test.com", last.getSender());
+            assertEquals(List.of("f@test.com"), last.getRecipients());
+            assertEquals(2, last.getId());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!follower.isExhausted()) {
+                assertTrue(System.nanoTime() < deadline, "Le suivi doit s'arrêter après le délai d'inactivité");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * Teste qu'une ligne démesurée, écrite en plusieurs fois, est écartée sans être gardée en mémoire
+     * et que les adresses suivantes sont lues normalement.
+     */
+    @Test
+    public void testLongLineSkipped() throws Exception {
+        Path file = Files.createTempFile("victims", ".txt");
+        try (AddressFileFollower follower = new AddressFileFollower(file, MESSAGES, 0, 2, 2, 1, 0).start()) {
+            String garbage = "x".repeat(300_000);
+            append(file, garbage);
+            Thread.sleep(200);
+            append(file, garbage + "\na@test.com\nb@test.com\n");
+            Email email = next(follower);
+            assertEquals("a@test.com", email.getSender());
+            assertEquals(List.of("b@test.com"), email.getRecipients());
+        }
+    }
+
+    /**
+     * Teste l'envoi d'une campagne dont les adresses sont ajoutées au fichier pendant l'envoi.
+     */
+    @Test
+    public void testDispatchFollowedFile() throws Exception {
+        Path file = Files.createTempFile("victims", ".txt");
+        Thread writer = Thread.ofVirtual().unstarted(() -> {
+            try {
+                for (int batch = 0; batch < 10; batch++) {
+                    StringBuilder lines = new StringBuilder();
+                    for (int i = 0; i < 30; i++) {
+                        lines.append("r").append(batch * 30 + i).append("@test.com\n");
+                    }
+                    append(file, lines.toString());
+                    Thread.sleep(50);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        List<Email> sent = new ArrayList<>();
+        CampaignReport report;
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start();
+             AddressFileFollower follower = new AddressFileFollower(file, MESSAGES, 100, 2, 4, 7, 1000)) {
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(new RelayPool(List.of(new Relay("127.0.0.1",
+                    server.getPort()))), 4, AdaptiveSendController.fixed(4), RetryScheduler.none(), DomainQueues.unlimited(4))) {
+                dispatcher.open();
+                follower.start();
+                writer.start();
+                report = dispatcher.dispatch(follower, outcome -> {
+                    synchronized (sent) {
+                        sent.add(outcome.getEmail());
+                    }
+                });
+            }
+            writer.join();
+            assertEquals(report.getDeliveredCount(), server.getMessages());
+        }
+
+        Set<String> addresses = new HashSet<>();
+        for (Email email : sent) {
+            assertTrue(addresses.add(email.getSender()));
+            email.getRecipients().forEach(recipient -> assertTrue(addresses.add(recipient), "Adresse envoyée deux fois"));
+        }
+        assertTrue(sent.size() > 75, "Les e-mails doivent être envoyés au fil des adresses : " + sent.size());
+        assertEquals(sent.size(), report.getDeliveredCount());
+    }
+}
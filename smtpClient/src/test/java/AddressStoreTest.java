@@ -0,0 +1,73 @@
+import dai.model.AddressList;
+import dai.model.AddressStore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour AddressStore.
+ * Teste le stockage compact des adresses, l'élimination des doublons et les vues par plage.
+ */
+public class AddressStoreTest {
+
+    /**
+     * Teste que les doublons reçoivent l'indice de la première occurrence.
+     */
+    @Test
+    public void testDeduplication() {
+        AddressStore store = new AddressStore(4);
+
+        int first = store.add("alice@example.com");
+        int second = store.add("bob@example.com");
+
+        assertEquals(first, store.add("alice@example.com"));
+        assertNotEquals(first, second);
+        assertEquals(2, store.size());
+        assertEquals(1, store.getDuplicates());
+        assertEquals(List.of("alice@example.com", "bob@example.com"), store.asList());
+    }
+
+    /**
+     * Teste l'ajout de nombreuses adresses, au-delà de la capacité initiale, et leur relecture.
+     */
+    @Test
+    public void testGrowth() {
+        AddressStore store = new AddressStore(16);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, store.add("user" + i + "@example.com"));
+        }
+        for (int i = 0; i < 10_000; i += 10) {
+            assertEquals(i, store.add("user" + i + "@example.com"));
+        }
+        store.trimToSize();
+
+        assertEquals(10_000, store.size());
+        assertEquals(1_000, store.getDuplicates());
+        assertEquals("user1234@example.com", store.get(1234));
+        assertEquals("user9999@example.com".length(), store.byteLength(9999));
+    }
+
+    /**
+     * Teste une vue par plage sur un tableau d'indices, et la copie des octets UTF-8 d'une adresse.
+     */
+    @Test
+    public void testRange() {
+        AddressStore store = new AddressStore();
+        store.add("a@example.com");
+        store.add("été@example.com");
+        store.add("c@example.com");
+        int[] handles = {2, 0, 1};
+
+        AddressList list = store.range(handles, 1, 3);
+
+        assertEquals(List.of("a@example.com", "été@example.com"), list);
+        assertEquals(1, list.handle(1));
+        byte[] bytes = new byte[store.byteLength(1)];
+        store.copyBytes(1, bytes, 0);
+        assertArrayEquals("été@example.com".getBytes(StandardCharsets.UTF_8), bytes);
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(2));
+    }
+}
@@ -0,0 +1,87 @@
+import dai.config.AddressValidator;
+import dai.config.Configuration;
+import dai.config.ValidationReport;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour AddressValidator.
+ * Teste l'équivalence avec l'ancien motif et le rapport de toutes les erreurs de la configuration.
+ */
+public class AddressValidatorTest {
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$");
+
+    /**
+     * Teste que le validateur accepte exactement les adresses acceptées par l'ancien motif.
+     */
+    @Test
+    public void testSameResultAsPattern() {
+        List<String> samples = List.of("a@b.ch", "first.last+tag@mail.example.com", "a@b.c", "a@b.abcdefg", "@b.ch",
+                "a@.ch", "a@b..ch", "a@@b.ch", "a b@c.ch", "a@b.c1", "été@b.ch", "a@b-c.ch", "a@b", "a.ch", "", "a@b.ch.");
+        for (String sample : samples) {
+            assertEquals(EMAIL_PATTERN.matcher(sample).matches(), AddressValidator.isValid(sample), sample);
+        }
+
+        String alphabet = "ab1.@-_%+ Z";
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String sample = sb.toString();
+            assertEquals(EMAIL_PATTERN.matcher(sample).matches(), AddressValidator.isValid(sample), sample);
+        }
+    }
+
+    /**
+     * Teste que toutes les adresses invalides et tous les doublons sont signalés avec leur position.
+     */
+    @Test
+    public void testReportsAllErrors() {
+        Exception e = assertThrows(Exception.class, () -> {
+            Path dir = Files.createTempDirectory("config");
+            dir.toFile().deleteOnExit();
+            Path emails = dir.resolve("emails.txt");
+            Files.writeString(emails, "a@test.com\nbad\nb@test.com\na@test.com\nc@test\n");
+            Path config = dir.resolve("config.json");
+            Files.writeString(config, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                    + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 2, \"emailsFile\": \"emails.txt\","
+                    + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"}]}");
+            emails.toFile().deleteOnExit();
+            config.toFile().deleteOnExit();
+            new Configuration(config.toString());
+        });
+
+        assertTrue(e.getMessage().contains("2 adresse(s) invalide(s), 1 doublon(s)"));
+        assertTrue(e.getMessage().contains("[1] bad"));
+        assertTrue(e.getMessage().contains("[4] c@test"));
+    }
+
+    /**
+     * Teste la position des doublons dans le rapport.
+     */
+    @Test
+    public void testDuplicates() {
+        assertDoesNotThrow(() -> {
+            Path config = Files.createTempFile("config", ".json");
+            config.toFile().deleteOnExit();
+            Files.writeString(config, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                    + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 2,"
+                    + " \"emails\": [\"a@test.com\", \"b@test.com\", \"a@test.com\"],"
+                    + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"}]}");
+
+            ValidationReport report = new Configuration(config.toString()).getAddressReport();
+            assertTrue(report.isValid());
+            assertEquals(List.of(new ValidationReport.Entry(2, "a@test.com", "doublon de l'indice 0")), report.getDuplicates());
+        });
+    }
+}
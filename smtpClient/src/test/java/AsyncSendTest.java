@@ -0,0 +1,80 @@
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour l'envoi asynchrone de SMTPClient.
+ * Teste que les envois ne bloquent pas l'appelant, qu'ils sont tous livrés dans l'ordre,
+ * et qu'une session perdue fait échouer les résultats en attente.
+ */
+public class AsyncSendTest {
+    private static final String HOST = "127.0.0.1";
+    private static final Message MESSAGE = new Message("Sujet", "Corps");
+
+    private static List<Email> emails(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Email("sender" + i + "@test.com",
+                List.of("r" + i + "@test.com"), MESSAGE)).toList();
+    }
+
+    /**
+     * Teste qu'un lot soumis d'un coup ne bloque pas l'appelant et qu'il est entièrement livré.
+     */
+    @Test
+    public void testSendAsync() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").withLatency(".", 5).start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort(), 0, 4);
+            client.connect();
+            List<Email> emails = emails(50);
+
+            long start = System.nanoTime();
+            List<CompletableFuture<DeliveryResult>> results = emails.stream().map(client::sendAsync).toList();
+            long submitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // 50 transactions d'au moins 5 ms : la soumission n'attend pas leur fin
+            assertTrue(submitMillis < 100, "La soumission ne doit pas bloquer : " + submitMillis + " ms");
+
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+            client.close();
+
+            for (int i = 0; i < emails.size(); i++) {
+                DeliveryResult result = results.get(i).get();
+                assertTrue(result.isDelivered());
+                assertEquals(emails.get(i).getRecipients(), result.getAcceptedRecipients());
+                assertTrue(result.getTransactionNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+            }
+            // Le dernier envoi a attendu la fin de ceux qui le précédaient
+            assertTrue(results.get(49).get().getQueueNanos() > results.get(0).get().getQueueNanos());
+            assertEquals(50, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste qu'une session perdue complète les résultats en erreur avec l'IOException.
+     */
+    @Test
+    public void testSendAsyncFailure() throws Exception {
+        SMTPClient client;
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            client = new SMTPClient(HOST, server.getPort());
+            client.connect();
+            assertTrue(client.sendAsync(emails(1).get(0)).get(10, TimeUnit.SECONDS).isDelivered());
+        }
+
+        List<CompletableFuture<DeliveryResult>> results = emails(3).stream().map(client::sendAsync).toList();
+        for (CompletableFuture<DeliveryResult> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+        }
+        client.close();
+    }
+}
@@ -2,11 +2,15 @@ import dai.config.*;
 import dai.model.Message;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
 /**
@@ -55,4 +59,113 @@ public class ConfigurationTest {
             configuration.validateConfiguration();
         });
     }
+
+    /**
+     * Teste que la première erreur de type est signalée avec sa ligne et sa colonne.
+     */
+    @Test
+    public void testInvalidValueReportsLocation() throws IOException {
+        Path config = Files.createTempFile("config", ".json");
+        config.toFile().deleteOnExit();
+        Files.writeString(config, "{\n  \"smtpHost\": \"localhost\",\n  \"smtpPort\": \"25\"\n}\n");
+
+        IOException e = assertThrows(IOException.class, () -> new Configuration(config.toString()));
+        assertTrue(e.getMessage().contains("ligne 3"));
+        assertTrue(e.getMessage().contains("$.smtpPort"));
+    }
+
+    /**
+     * Teste la lecture des adresses depuis un fichier texte, une adresse par ligne.
+     */
+    @Test
+    public void testEmailsFile() {
+        assertDoesNotThrow(() -> {
+            Path dir = Files.createTempDirectory("config");
+            dir.toFile().deleteOnExit();
+            Path emails = dir.resolve("emails.txt");
+            Files.writeString(emails, "a@test.com\n\nb@test.com\r\nc@test.com\n");
+            Path config = dir.resolve("config.json");
+            Files.writeString(config, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                    + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 3, \"emailsFile\": \"emails.txt\","
+                    + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"}]}");
+            emails.toFile().deleteOnExit();
+            config.toFile().deleteOnExit();
+
+            Configuration configuration = new Configuration(config.toString());
+            assertEquals(List.of("a@test.com", "b@test.com", "c@test.com"), configuration.getVictims());
+            assertEquals(25, configuration.getSmtpPort());
+        });
+    }
+
+    /**
+     * Teste que le chemin d'une pièce jointe est relatif au fichier de configuration, et non au répertoire courant.
+     */
+    @Test
+    public void testAttachmentRelativeToConfig() throws Exception {
+        Path dir = Files.createTempDirectory("config");
+        dir.toFile().deleteOnExit();
+        Path attachment = Files.createDirectory(dir.resolve("pieces")).resolve("doc.pdf");
+        Files.writeString(attachment, "contenu");
+        attachment.getParent().toFile().deleteOnExit();
+        attachment.toFile().deleteOnExit();
+        Path config = dir.resolve("config.json");
+        config.toFile().deleteOnExit();
+        Files.writeString(config, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 2, \"emails\": [\"a@test.com\", \"b@test.com\"],"
+                + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\", \"attachments\": [\"pieces/doc.pdf\"]}]}");
+
+        Configuration configuration = new Configuration(config.toString());
+        assertEquals(dir.toAbsolutePath().resolve("pieces/doc.pdf"),
+                configuration.getMessages().get(0).getAttachments().get(0).getPath());
+    }
+
+    /**
+     * Teste que l'empreinte de la campagne change quand les adresses changent, même en nombre égal.
+     */
+    @Test
+    public void testFingerprintCoversAddresses() throws Exception {
+        Path dir = Files.createTempDirectory("config");
+        dir.toFile().deleteOnExit();
+        Path config = dir.resolve("config.json");
+        config.toFile().deleteOnExit();
+        long[] fingerprints = new long[3];
+        String[] addresses = {"\"a@test.com\", \"b@test.com\"", "\"a@test.com\", \"c@test.com\"", "\"b@test.com\", \"a@test.com\""};
+        for (int i = 0; i < addresses.length; i++) {
+            Files.writeString(config, "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                    + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 2, \"emails\": [" + addresses[i] + "],"
+                    + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"}]}");
+            fingerprints[i] = new Configuration(config.toString()).getCampaignFingerprint();
+        }
+        assertNotEquals(fingerprints[0], fingerprints[1]);
+        assertNotEquals(fingerprints[0], fingerprints[2]);
+        // Une configuration relue à l'identique garde son empreinte
+        assertEquals(fingerprints[2], new Configuration(config.toString()).getCampaignFingerprint());
+    }
+
+    /**
+     * Teste que l'empreinte de la campagne change avec les pièces jointes et leur contenu.
+     */
+    @Test
+    public void testFingerprintCoversAttachments() throws Exception {
+        Path dir = Files.createTempDirectory("config");
+        dir.toFile().deleteOnExit();
+        Path config = dir.resolve("config.json");
+        config.toFile().deleteOnExit();
+        Path attachment = dir.resolve("piece.txt");
+        attachment.toFile().deleteOnExit();
+        Files.writeString(attachment, "contenu");
+        String prefix = "{\"smtpHost\": \"localhost\", \"smtpPort\": 25, \"numberOfGroups\": 1,"
+                + " \"minNumberOfEmailsPerGroup\": 2, \"maxNumberOfEmailsPerGroup\": 2, \"emails\": [\"a@test.com\", \"b@test.com\"],"
+                + " \"messages\": [{\"subject\": \"Sujet\", \"body\": \"Corps\"";
+
+        Files.writeString(config, prefix + "}]}");
+        long withoutAttachment = new Configuration(config.toString()).getCampaignFingerprint();
+        Files.writeString(config, prefix + ", \"attachments\": [\"" + attachment.toString().replace("\\", "\\\\") + "\"]}]}");
+        long withAttachment = new Configuration(config.toString()).getCampaignFingerprint();
+        Files.writeString(attachment, "contenu modifié");
+        long modified = new Configuration(config.toString()).getCampaignFingerprint();
+
+        assertNotEquals(withoutAttachment, withAttachment);
+        assertNotEquals(withAttachment, modified);
+    }
 }
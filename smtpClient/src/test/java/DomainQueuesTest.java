@@ -0,0 +1,98 @@
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.DomainQueues;
+import dai.dispatch.Relay;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.model.Email;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour DomainQueues.
+ * Teste le tour de rôle entre domaines, les limites propres à chaque domaine et l'envoi d'une campagne
+ * dont un domaine est limité en débit.
+ */
+public class DomainQueuesTest {
+    private static final Message MESSAGE = new Message("Sujet", "Corps");
+
+    private static List<Email> emails(String domain, int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Email("sender@test.com",
+                List.of("r" + i + "@" + domain), MESSAGE)).toList();
+    }
+
+    /**
+     * Teste que les domaines en attente sont servis à tour de rôle, quel que soit l'ordre d'arrivée.
+     */
+    @Test
+    public void testRoundRobin() {
+        DomainQueues queues = DomainQueues.unlimited(100);
+        emails("A.com", 6).forEach(email -> queues.add(email, 0));
+        emails("b.com", 2).forEach(email -> queues.add(email, 0));
+
+        List<String> order = new ArrayList<>();
+        DomainQueues.Entry entry;
+        while ((entry = queues.poll()) != null) {
+            order.add(entry.domain());
+        }
+        assertEquals(List.of("a.com", "b.com", "a.com", "b.com", "a.com", "a.com", "a.com", "a.com"), order);
+        assertEquals(2, queues.getDomainCount());
+    }
+
+    /**
+     * Teste qu'un domaine à sa limite de transactions simultanées laisse passer les autres.
+     */
+    @Test
+    public void testDomainLimit() {
+        DomainQueues queues = new DomainQueues(domain -> AdaptiveSendController.fixed(2), 100);
+        emails("slow.com", 5).forEach(email -> queues.add(email, 0));
+        emails("fast.com", 3).forEach(email -> queues.add(email, 0));
+
+        List<DomainQueues.Entry> slow = new ArrayList<>();
+        List<String> order = new ArrayList<>();
+        DomainQueues.Entry entry;
+        while ((entry = queues.poll()) != null) {
+            order.add(entry.domain());
+            if (entry.domain().equals("slow.com")) {
+                slow.add(entry);
+            }
+        }
+        assertEquals(List.of("slow.com", "fast.com", "slow.com", "fast.com"), order);
+        assertEquals(4, queues.getQueuedCount());
+
+        queues.release(slow.get(0), AdaptiveSendController.Signal.SUCCESS, 1_000_000);
+        assertEquals("slow.com", queues.poll().domain());
+        assertNull(queues.poll());
+    }
+
+    /**
+     * Teste qu'un domaine limité en débit, placé en tête de la source, ne retarde pas les autres domaines.
+     */
+    @Test
+    public void testSlowDomainDoesNotStallCampaign() throws Exception {
+        List<Email> emails = Stream.concat(emails("slow.com", 10).stream(), emails("fast.com", 200).stream()).toList();
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            // 10 messages par seconde pour slow.com, sans limite pour fast.com
+            DomainQueues queues = new DomainQueues(domain -> domain.equals("slow.com")
+                    ? new AdaptiveSendController(1, 4, 4, 1, 10, 10) : AdaptiveSendController.fixed(4), 1000);
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(new RelayPool(List.of(new Relay("127.0.0.1",
+                    server.getPort()))), 4, AdaptiveSendController.fixed(4), RetryScheduler.none(), queues)) {
+                dispatcher.open();
+                dispatcher.dispatch(emails.iterator(), outcome -> completed.add(DomainQueues.domainOf(outcome.getEmail())));
+            }
+            assertEquals(210, server.getMessages());
+        }
+        assertEquals(210, completed.size());
+        assertTrue(completed.lastIndexOf("fast.com") < completed.lastIndexOf("slow.com"),
+                "Les e-mails de fast.com ne doivent pas attendre ceux de slow.com");
+    }
+}
@@ -0,0 +1,76 @@
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.EncodedMessageCache;
+import dai.network.SMTPClient;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour EncodedMessageCache.
+ * Teste la réutilisation des messages encodés et l'éviction selon la taille du cache.
+ */
+public class EncodedMessageCacheTest {
+
+    /**
+     * Teste qu'un message n'est encodé qu'une fois et que le contenu écrit depuis le cache
+     * est identique au contenu encodé à la volée.
+     */
+    @Test
+    public void testCachedContentMatchesDirectEncoding() {
+        SMTPClient client = new SMTPClient("smtp.example.com", 25);
+        Message message = new Message("Sujet accentué", "Corps du message été. ".repeat(200));
+        Email email = new Email("sender@example.com", List.of("a@example.com", "b@example.com"), message);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertDoesNotThrow(() -> client.writeContent(email, out));
+
+        String expected = client.prepareContent(email.getSender(), email.getRecipients(), email.getSubject(), email.getBody());
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Teste les succès et échecs du cache pour un même message.
+     */
+    @Test
+    public void testHitsAndMisses() {
+        EncodedMessageCache cache = new EncodedMessageCache(1024 * 1024);
+        Message message = new Message("Sujet", "Corps");
+
+        EncodedMessageCache.EncodedMessage first = cache.get(message);
+        EncodedMessageCache.EncodedMessage second = cache.get(message);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(first.size(), cache.getCurrentBytes());
+    }
+
+    /**
+     * Teste l'éviction du message le moins récemment utilisé lorsque la taille maximale est dépassée.
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        Message first = new Message("Premier", "x".repeat(300));
+        Message second = new Message("Deuxième", "y".repeat(300));
+        Message third = new Message("Troisième", "z".repeat(300));
+        long entrySize = new EncodedMessageCache(1024 * 1024).get(first).size();
+        EncodedMessageCache cache = new EncodedMessageCache(entrySize * 2 + 100);
+
+        cache.get(first);
+        cache.get(second);
+        cache.get(first);
+        cache.get(third);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getCurrentBytes() <= entrySize * 2 + 100);
+        cache.get(first);
+        assertEquals(2, cache.getHits());
+        cache.get(second);
+        assertEquals(4, cache.getMisses());
+    }
+}
@@ -0,0 +1,76 @@
+import dai.model.AddressStore;
+import dai.model.Group;
+import dai.model.GroupGenerator;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour GroupGenerator.
+ * Teste la taille des groupes, le tirage sans remise et la reproductibilité par la graine.
+ */
+public class GroupGeneratorTest {
+
+    private static AddressStore victims(int count) {
+        AddressStore store = new AddressStore(count);
+        for (int i = 0; i < count; i++) {
+            store.add("victim" + i + "@example.com");
+        }
+        return store;
+    }
+
+    /**
+     * Teste que chaque groupe a une taille comprise entre le minimum et le maximum
+     * et qu'aucune victime n'apparaît dans deux groupes.
+     */
+    @Test
+    public void testGroupSizesAndNoReuse() {
+        GroupGenerator generator = new GroupGenerator(victims(1000), List.of(new Message("Sujet", "Corps")), 100, 3, 8, 42);
+        Set<String> seen = new HashSet<>();
+        int groups = 0;
+
+        while (generator.hasNext()) {
+            Group group = generator.next();
+            int size = group.getRecipients().size() + 1;
+            assertTrue(size >= 3 && size <= 8);
+            assertTrue(seen.add(group.getSender()));
+            group.getRecipients().forEach(r -> assertTrue(seen.add(r)));
+            groups++;
+        }
+        assertEquals(100, groups);
+    }
+
+    /**
+     * Teste que la même graine produit les mêmes groupes.
+     */
+    @Test
+    public void testSameSeedSameGroups() {
+        AddressStore store = victims(200);
+        List<Message> messages = List.of(new Message("A", "a"), new Message("B", "b"));
+
+        List<String> first = new GroupGenerator(store, messages, 20, 2, 5, 7).stream()
+                .map(g -> g.getSender() + g.getRecipients() + g.getMessage().getSubject())
+                .collect(Collectors.toList());
+        List<String> second = new GroupGenerator(store, messages, 20, 2, 5, 7).stream()
+                .map(g -> g.getSender() + g.getRecipients() + g.getMessage().getSubject())
+                .collect(Collectors.toList());
+
+        assertEquals(20, first.size());
+        assertEquals(first, second);
+    }
+
+    /**
+     * Teste le refus d'une configuration qui ne permet pas de former tous les groupes.
+     */
+    @Test
+    public void testNotEnoughVictims() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GroupGenerator(victims(10), List.of(new Message("Sujet", "Corps")), 3, 2, 4, 1));
+    }
+}
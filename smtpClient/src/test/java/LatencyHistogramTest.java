@@ -0,0 +1,80 @@
+import dai.metrics.CommandTimer;
+import dai.metrics.LatencyHistogram;
+import dai.metrics.SmtpCommand;
+import dai.metrics.SmtpMetrics;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour LatencyHistogram et CommandTimer.
+ * Teste la précision des centiles, l'enregistrement concurrent et l'association des réponses aux commandes.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Teste que les centiles sont exacts à la précision des cases près.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(11);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual <= expected + expected / 16 + 1,
+                    percentile + " : attendu " + expected + ", obtenu " + actual);
+        }
+        assertEquals(values[values.length - 1] / 1_000.0, histogram.getMaxMicros());
+    }
+
+    /**
+     * Teste qu'aucun enregistrement n'est perdu lorsque plusieurs threads enregistrent à la fois.
+     */
+    @Test
+    public void testConcurrentRecords() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        IntStream.range(0, 400_000).parallel().forEach(i -> histogram.record(i % 1000));
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(499.5 / 1_000, histogram.getMeanMicros(), 1e-9);
+    }
+
+    /**
+     * Teste que les réponses d'un lot de commandes sont associées dans l'ordre aux commandes envoyées.
+     */
+    @Test
+    public void testPipelinedCommands() {
+        SmtpMetrics metrics = new SmtpMetrics();
+        CommandTimer timer = new CommandTimer(metrics);
+        timer.sent(SmtpCommand.MAIL);
+        for (int i = 0; i < 40; i++) {
+            timer.sent(SmtpCommand.RCPT);
+        }
+        timer.sent(SmtpCommand.DATA);
+
+        timer.replied(250);
+        for (int i = 0; i < 40; i++) {
+            timer.replied(i == 0 ? 550 : 250);
+        }
+        timer.replied(354);
+
+        assertEquals(1, metrics.getLatency(SmtpCommand.MAIL).getCount());
+        assertEquals(40, metrics.getLatency(SmtpCommand.RCPT).getCount());
+        assertEquals(1, metrics.getLatency(SmtpCommand.DATA).getCount());
+        assertEquals(40, metrics.getReplies2xx());
+        assertEquals(1, metrics.getReplies3xx());
+        assertEquals(1, metrics.getReplies5xx());
+    }
+}
@@ -0,0 +1,138 @@
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour la fenêtre de PIPELINING de l'enveloppe.
+ * Teste qu'un grand groupe de destinataires est envoyé par lots dont les réponses sont lues
+ * avant d'écrire le lot suivant, au lieu d'un seul lot qui pourrait bloquer la connexion TCP.
+ */
+public class PipelineWindowTest {
+    private static final int QUIET_MILLIS = 100;
+
+    /**
+     * Serveur qui ne répond qu'une fois que le client s'est arrêté d'écrire, c'est-à-dire qu'il attend des réponses,
+     * et qui mesure le plus grand nombre de commandes d'enveloppe reçues d'un seul tenant.
+     */
+    private static final class LockstepServer implements AutoCloseable {
+        private final ServerSocket server = new ServerSocket(0);
+        private final String extensions;
+        private final Thread thread = Thread.ofVirtual().start(this::serve);
+        private volatile int largestBurst;
+
+        LockstepServer(String extensions) throws IOException {
+            this.extensions = extensions;
+        }
+
+        private void serve() {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(QUIET_MILLIS);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                out.write("220 lockstep\r\n".getBytes(StandardCharsets.US_ASCII));
+                StringBuilder line = new StringBuilder();
+                StringBuilder replies = new StringBuilder();
+                boolean inData = false;
+                int burst = 0;
+                while (true) {
+                    int b;
+                    try {
+                        b = in.read();
+                    } catch (SocketTimeoutException e) {
+                        // Le client attend les réponses de ce qu'il a envoyé
+                        largestBurst = Math.max(largestBurst, burst);
+                        burst = 0;
+                        out.write(replies.toString().getBytes(StandardCharsets.US_ASCII));
+                        replies.setLength(0);
+                        continue;
+                    }
+                    if (b < 0) {
+                        return;
+                    }
+                    if (b != '\n') {
+                        line.append((char) b);
+                        continue;
+                    }
+                    String command = line.toString().strip();
+                    line.setLength(0);
+                    if (inData) {
+                        if (command.equals(".")) {
+                            inData = false;
+                            replies.append("250 Ok\r\n");
+                        }
+                    } else if (command.startsWith("EHLO")) {
+                        replies.append("250-lockstep\r\n").append(extensions);
+                    } else if (command.startsWith("MAIL") || command.startsWith("RCPT") || command.startsWith("RSET")) {
+                        burst++;
+                        replies.append("250 Ok\r\n");
+                    } else if (command.equals("DATA")) {
+                        inData = true;
+                        replies.append("354 Go ahead\r\n");
+                    } else if (command.startsWith("BDAT")) {
+                        in.readNBytes(Integer.parseInt(command.split(" ")[1]));
+                        replies.append("250 Ok\r\n");
+                    } else if (command.equals("QUIT")) {
+                        out.write(replies.append("221 Bye\r\n").toString().getBytes(StandardCharsets.US_ASCII));
+                        return;
+                    } else {
+                        replies.append("500 Unknown\r\n");
+                    }
+                }
+            } catch (IOException e) {
+                // Serveur fermé
+            }
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        int getLargestBurst() {
+            return largestBurst;
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+
+    /**
+     * Teste qu'aucun lot de l'enveloppe ne dépasse la fenêtre, avec DATA comme avec BDAT,
+     * et que tous les destinataires sont acceptés.
+     */
+    @Test
+    public void testEnvelopeWindow() throws Exception {
+        List<String> recipients = IntStream.range(0, 450).mapToObj(i -> "r" + i + "@test.com").toList();
+        for (String extensions : List.of("250 PIPELINING\r\n", "250-PIPELINING\r\n250 CHUNKING\r\n")) {
+            try (LockstepServer server = new LockstepServer(extensions)) {
+                SMTPClient client = new SMTPClient("127.0.0.1", server.getPort());
+                DeliveryResult result = assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+                    client.connect();
+                    DeliveryResult sent = client.sendEmail("s@test.com", recipients, "Sujet", "Corps");
+                    client.close();
+                    return sent;
+                });
+                assertTrue(result.isDelivered(), extensions);
+                assertEquals(recipients, new ArrayList<>(result.getAcceptedRecipients()));
+                assertTrue(server.getLargestBurst() > 1);
+                assertTrue(server.getLargestBurst() <= SMTPClient.PIPELINE_WINDOW, "Lot de " + server.getLargestBurst());
+            }
+        }
+    }
+}
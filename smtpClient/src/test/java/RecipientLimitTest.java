@@ -0,0 +1,150 @@
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.CampaignReport;
+import dai.dispatch.Relay;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.dispatch.SendOutcome;
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour le découpage des groupes selon la limite de destinataires du serveur.
+ * Teste la limite apprise d'un refus 452, la limite configurée et la livraison partielle
+ * lorsqu'une transaction suivante échoue.
+ */
+public class RecipientLimitTest {
+    private static final String HOST = "127.0.0.1";
+
+    private static List<String> recipients(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "r" + i + "@test.com").toList();
+    }
+
+    /**
+     * Teste que les destinataires reportés par 452 sont repris, et que la limite apprise découpe
+     * d'emblée les e-mails suivants.
+     */
+    @Test
+    public void testLearnedLimit() throws Exception {
+        for (String[] extensions : List.of(new String[]{}, new String[]{"PIPELINING"}, new String[]{"PIPELINING", "CHUNKING"})) {
+            try (SmtpSinkServer server = new SmtpSinkServer().withExtensions(extensions).withMaxRecipients(100).start()) {
+                SMTPClient client = new SMTPClient(HOST, server.getPort());
+                client.connect();
+                List<String> recipients = recipients(350);
+                for (int i = 0; i < 2; i++) {
+                    DeliveryResult result = client.sendEmail("s@test.com", recipients, "Sujet", "Corps");
+                    assertTrue(result.isDelivered(), String.join(",", extensions));
+                    assertEquals(recipients, result.getAcceptedRecipients());
+                    assertTrue(result.getRejectedRecipients().isEmpty());
+                }
+                client.close();
+                // 100 + 100 + 100 + 50 par e-mail
+                assertEquals(8, server.getMessages(), String.join(",", extensions));
+                assertEquals(700, server.getRecipients());
+            }
+        }
+    }
+
+    /**
+     * Teste qu'une limite configurée découpe les groupes sans attendre de refus.
+     */
+    @Test
+    public void testConfiguredLimit() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").withMaxRecipients(40).start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort(), 30);
+            client.connect();
+            DeliveryResult result = client.sendEmail("s@test.com", recipients(100), "Sujet", "Corps");
+            client.close();
+
+            assertTrue(result.isDelivered());
+            assertEquals(100, result.getAcceptedRecipients().size());
+            // 30 + 30 + 30 + 10 : une limite apprise de 40 n'aurait donné que trois transactions
+            assertEquals(4, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste qu'un refus temporaire de la deuxième transaction laisse la première livrée
+     * et ne laisse à tenter que les destinataires de la deuxième et des suivantes.
+     */
+    @Test
+    public void testPartialDelivery() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING")
+                .withReply(".", 2, "451 4.3.0 Try again later").start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort(), 2);
+            client.connect();
+            DeliveryResult result = client.sendEmail("s@test.com", recipients(6), "Sujet", "Corps");
+            client.close();
+
+            assertTrue(result.isDelivered());
+            assertTrue(result.isPartiallyDelivered());
+            assertEquals(451, result.getFinalReplyCode());
+            assertEquals(recipients(2), result.getAcceptedRecipients());
+            assertEquals(recipients(6).subList(2, 6), result.getPendingRecipients());
+            assertTrue(result.getRejectedRecipients().isEmpty());
+        }
+    }
+
+    /**
+     * Teste qu'un refus définitif de DATA dans la deuxième transaction laisse la première livrée :
+     * les destinataires de la deuxième et des suivantes sont refusés, sans nouvelle tentative.
+     */
+    @Test
+    public void testPermanentFailureAfterDelivery() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING")
+                .withReply("DATA", 2, "554 5.6.0 Content rejected").start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort(), 2);
+            client.connect();
+            DeliveryResult result = client.sendEmail("s@test.com", recipients(6), "Sujet", "Corps");
+            client.close();
+
+            assertTrue(result.isDelivered());
+            assertFalse(result.isPartiallyDelivered());
+            assertEquals(250, result.getFinalReplyCode());
+            assertEquals(recipients(2), result.getAcceptedRecipients());
+            assertEquals(recipients(6).subList(2, 6), List.copyOf(result.getRejectedRecipients().keySet()));
+            result.getRejectedRecipients().values().forEach(response -> assertTrue(response.startsWith("554"), response));
+            assertEquals(1, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste que le répartiteur ne renvoie un e-mail livré en partie qu'à ses destinataires restants :
+     * aucun destinataire de la première transaction ne le reçoit deux fois.
+     */
+    @Test
+    public void testRetryOnlyPendingRecipients() throws Exception {
+        List<SendOutcome> outcomes = new ArrayList<>();
+        CampaignReport report;
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING")
+                .withReply(".", 2, "451 4.3.0 Try again later").start()) {
+            Email email = new Email("s@test.com", recipients(4), new Message("Sujet", "Corps"), 0);
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(new RelayPool(List.of(new Relay(HOST, server.getPort(), 1, 2))),
+                    1, AdaptiveSendController.fixed(1), new RetryScheduler(3, 1, 10))) {
+                dispatcher.open();
+                report = dispatcher.dispatch(List.of(email).iterator(), outcomes::add);
+            }
+            // Première transaction livrée, deuxième refusée, puis nouvelle tentative des deux derniers destinataires
+            assertEquals(2, server.getMessages());
+            assertEquals(6, server.getRecipients());
+        }
+
+        assertEquals(1, outcomes.size());
+        DeliveryResult result = outcomes.get(0).getResult();
+        assertTrue(result.isDelivered());
+        assertFalse(result.isPartiallyDelivered());
+        assertEquals(recipients(4), result.getAcceptedRecipients());
+        assertEquals(0, outcomes.get(0).getEmail().getId());
+        assertEquals(1, report.getDeliveredCount());
+        assertEquals(1, report.getRetryCount());
+    }
+}
@@ -0,0 +1,123 @@
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.CampaignReport;
+import dai.dispatch.Relay;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.model.Email;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour RelayPool.
+ * Teste la répartition pondérée, la mise à l'écart des relais défaillants et leur retour après une sonde.
+ */
+public class RelayPoolTest {
+    private static final String HOST = "127.0.0.1";
+
+    private static Iterator<Email> emails(int count) {
+        Message message = new Message("Sujet", "Corps");
+        return IntStream.range(0, count).mapToObj(i -> new Email("sender" + i + "@test.com",
+                List.of("r" + i + "@test.com"), message, i)).iterator();
+    }
+
+    /**
+     * Teste que chaque relais reçoit une part proportionnelle à son poids, sans rafale.
+     */
+    @Test
+    public void testWeightedSelection() {
+        Relay heavy = new Relay("a.example.com", 25, 3);
+        Relay light = new Relay("b.example.com", 25, 1);
+        RelayPool pool = new RelayPool(List.of(heavy, light));
+        int heavyCount = 0;
+        int run = 0;
+        for (int i = 0; i < 400; i++) {
+            if (pool.select() == heavy) {
+                heavyCount++;
+                run++;
+                // a a b a | a a b a : au plus trois choix consécutifs, à la jonction de deux périodes
+                assertTrue(run <= 3, "Le relais le plus lourd ne doit pas être choisi en rafale");
+            } else {
+                run = 0;
+            }
+        }
+        assertEquals(300, heavyCount);
+    }
+
+    /**
+     * Teste qu'un relais injoignable est écarté, sondé, puis rétabli, et que tous les relais restent
+     * choisis lorsqu'aucun n'est sain.
+     */
+    @Test
+    public void testUnhealthyRelayProbed() {
+        Relay first = new Relay("a.example.com", 25);
+        Relay second = new Relay("b.example.com", 25);
+        RelayPool pool = new RelayPool(List.of(first, second), 0);
+        for (int i = 0; i < 3; i++) {
+            pool.recordConnectFailure(first);
+        }
+        assertFalse(pool.isHealthy(first));
+        for (int i = 0; i < 10; i++) {
+            assertSame(second, pool.select());
+        }
+
+        assertEquals(List.of(first), pool.dueProbes());
+        assertTrue(pool.dueProbes().isEmpty(), "Une seule sonde à la fois par relais");
+        pool.recordProbe(first, false);
+        assertFalse(pool.isHealthy(first));
+        assertEquals(List.of(first), pool.dueProbes());
+        pool.recordProbe(first, true);
+        assertTrue(pool.isHealthy(first));
+
+        for (Relay relay : List.of(first, second)) {
+            for (int i = 0; i < 3; i++) {
+                pool.recordConnectFailure(relay);
+            }
+        }
+        assertNotSame(pool.select(), pool.select());
+    }
+
+    /**
+     * Teste la répartition d'une campagne sur deux relais selon leur poids,
+     * puis sa livraison complète malgré un relais injoignable.
+     */
+    @Test
+    public void testCampaignAcrossRelays() throws Exception {
+        try (SmtpSinkServer heavy = new SmtpSinkServer().withExtensions("PIPELINING").start();
+             SmtpSinkServer light = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            RelayPool pool = new RelayPool(List.of(new Relay(HOST, heavy.getPort(), 2), new Relay(HOST, light.getPort(), 1)));
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(pool, 6, AdaptiveSendController.fixed(6),
+                    RetryScheduler.none())) {
+                dispatcher.open();
+                assertEquals(300, dispatcher.dispatch(emails(300)).getDeliveredCount());
+            }
+            assertEquals(200, heavy.getMessages());
+            assertEquals(100, light.getMessages());
+        }
+
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            Relay dead = new Relay(HOST, deadPort);
+            RelayPool pool = new RelayPool(List.of(new Relay(HOST, server.getPort()), dead), 10);
+            CampaignReport report;
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(pool, 4, AdaptiveSendController.fixed(4),
+                    new RetryScheduler(5, 10, 50))) {
+                dispatcher.open();
+                report = dispatcher.dispatch(emails(200));
+            }
+            assertEquals(200, report.getDeliveredCount());
+            assertEquals(200, server.getMessages());
+            assertFalse(pool.isHealthy(dead));
+        }
+    }
+}
@@ -1,12 +1,20 @@
+import dai.network.DotStuffingOutputStream;
 import dai.network.SMTPClient;
+import dai.model.Attachment;
 import dai.model.Email;
 import org.junit.Test;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -197,5 +205,66 @@ public class SMTPClientTest {
         SMTPClient client = new SMTPClient("smtp.example.com", 25);
         assertDoesNotThrow(client::close);
     }
-}
 
+    /**
+     * Teste l'encodage du corps d'un long message.
+     * Vérifie que les lignes base64 ne dépassent pas 76 caractères et que le corps décodé est identique.
+     */
+    @Test
+    public void testPrepareContentWrapsBody() {
+        SMTPClient client = new SMTPClient("smtp.example.com", 25);
+        String body = "Corps accentué du message. ".repeat(500);
+
+        String content = client.prepareContent("sender@example.com", List.of("recipient@example.com"), "Sujet", body);
+        String encodedBody = content.substring(content.indexOf("\r\n\r\n") + 4);
+
+        for (String line : encodedBody.split("\r\n")) {
+            assertTrue(line.length() <= 76);
+        }
+        byte[] decoded = Base64.getMimeDecoder().decode(encodedBody);
+        assertEquals(body, new String(decoded, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Teste le dot-stuffing du contenu.
+     * Vérifie qu'un point est ajouté devant chaque ligne commençant par un point.
+     */
+    @Test
+    public void testDotStuffing() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> {
+            try (DotStuffingOutputStream data = new DotStuffingOutputStream(out)) {
+                data.write(".first\r\nmiddle.\r\n..second\r\n".getBytes(StandardCharsets.US_ASCII));
+                data.write('.');
+            }
+        });
+        assertEquals("..first\r\nmiddle.\r\n...second\r\n..", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Teste l'écriture d'un message avec une pièce jointe.
+     * Vérifie que le message est en multipart/mixed et que la pièce jointe décodée est identique au fichier.
+     */
+    @Test
+    public void testWriteContentWithAttachment() {
+        SMTPClient client = new SMTPClient("smtp.example.com", 25);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] data = new byte[5000];
+        new Random(42).nextBytes(data);
+
+        assertDoesNotThrow(() -> {
+            Path file = Files.createTempFile("attachment", ".bin");
+            file.toFile().deleteOnExit();
+            Files.write(file, data);
+            client.writeContent("sender@example.com", List.of("recipient@example.com"), "Sujet", "Corps",
+                    List.of(Attachment.of(file)), out);
+        });
+        String content = out.toString(StandardCharsets.US_ASCII);
+
+        assertTrue(content.contains("Content-Type: multipart/mixed;"));
+        assertTrue(content.contains("Content-Disposition: attachment;"));
+        String part = content.substring(content.lastIndexOf("Content-Disposition: attachment;"));
+        String encoded = part.substring(part.indexOf("\r\n\r\n") + 4, part.indexOf("\r\n--"));
+        assertArrayEquals(data, Base64.getMimeDecoder().decode(encoded));
+    }
+}
@@ -0,0 +1,120 @@
+import dai.journal.SendJournal;
+import dai.model.Email;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour SendJournal.
+ * Teste la reprise d'un journal, la graine conservée et la lecture d'un journal tronqué.
+ */
+public class SendJournalTest {
+
+    private static Path journalFile() throws IOException {
+        Path file = Files.createTempFile("journal", ".bin");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+        return file;
+    }
+
+    /**
+     * Teste que les e-mails livrés sont sautés à la reprise et que la graine d'origine est conservée.
+     */
+    @Test
+    public void testResume() throws IOException {
+        Path file = journalFile();
+        try (SendJournal journal = SendJournal.open(file, 42, 7)) {
+            journal.record(0, 250, "250 2.0.0 Ok", true);
+            journal.record(1, 550, "550 5.1.1 no such user", false);
+            journal.record(2, 250, "250 2.0.0 Ok", true);
+        }
+
+        try (SendJournal journal = SendJournal.open(file, 99, 7)) {
+            assertEquals(42, journal.getSeed());
+            assertEquals(3, journal.getRecordCount());
+            assertEquals(2, journal.getDeliveredCount());
+
+            Message message = new Message("Sujet", "Corps");
+            List<Email> emails = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                emails.add(new Email("a@test.com", List.of("b@test.com"), message, i));
+            }
+            List<Long> remaining = new ArrayList<>();
+            Iterator<Email> it = journal.skipDelivered(emails.iterator());
+            it.forEachRemaining(e -> remaining.add(e.getId()));
+            assertEquals(List.of(1L, 3L), remaining);
+        }
+    }
+
+    /**
+     * Teste qu'un enregistrement endommagé termine la lecture sans perdre les précédents,
+     * et que les nouveaux enregistrements le remplacent.
+     */
+    @Test
+    public void testDamagedRecord() throws IOException {
+        Path file = journalFile();
+        try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+            journal.record(0, 250, "Ok", true);
+            journal.record(1, 250, "Ok", true);
+        }
+        // Corrompt le dernier octet de réponse du second enregistrement
+        long secondRecordEnd = 20 + 2 * (4 + 8 + 2 + 1 + 2 + 2 + 4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), secondRecordEnd - 5);
+        }
+
+        try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+            assertEquals(1, journal.getRecordCount());
+            assertTrue(journal.isDelivered(0));
+            assertFalse(journal.isDelivered(1));
+            journal.record(1, 250, "Ok", true);
+        }
+        try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+            assertEquals(2, journal.getRecordCount());
+            assertTrue(journal.isDelivered(1));
+        }
+    }
+
+    /**
+     * Teste que les reprises successives réutilisent la place restante du fichier au lieu de l'agrandir.
+     */
+    @Test
+    public void testReopenKeepsSize() throws IOException {
+        Path file = journalFile();
+        try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+            journal.record(0, 250, "Ok", true);
+        }
+        long size = Files.size(file);
+        for (int i = 1; i <= 5; i++) {
+            try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+                journal.record(i, 250, "Ok", true);
+            }
+        }
+        assertEquals(size, Files.size(file));
+        try (SendJournal journal = SendJournal.open(file, 1, 1)) {
+            assertEquals(6, journal.getRecordCount());
+            assertEquals(6, journal.getDeliveredCount());
+        }
+    }
+
+    /**
+     * Teste le refus d'un journal créé pour une autre configuration.
+     */
+    @Test
+    public void testOtherConfiguration() throws IOException {
+        Path file = journalFile();
+        SendJournal.open(file, 1, 1).close();
+        assertThrows(IOException.class, () -> SendJournal.open(file, 1, 2));
+    }
+}
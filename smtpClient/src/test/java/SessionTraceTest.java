@@ -0,0 +1,85 @@
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import dai.network.SessionTrace;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour la trace du dialogue SMTP.
+ * Teste que la trace est vidée dans un fichier après l'échec d'une transaction,
+ * et qu'elle ne garde que les derniers échanges d'une longue session.
+ */
+public class SessionTraceTest {
+    private static final String HOST = "127.0.0.1";
+
+    /**
+     * Teste qu'une transaction refusée vide la trace du dialogue, commandes et réponses comprises.
+     */
+    @Test
+    public void testDumpOnFailure() throws Exception {
+        Path directory = Files.createTempDirectory("smtp-trace");
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING")
+                .withReply(".", 2, "451 4.3.0 Try again later").start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort(), 0, SMTPClient.DEFAULT_MAX_IN_FLIGHT, directory);
+            client.connect();
+            assertTrue(client.sendEmail("s@test.com", List.of("a@test.com"), "Sujet", "Corps").isDelivered());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count(), "Aucune trace tant que les transactions réussissent");
+            }
+
+            DeliveryResult result = client.sendEmail("s@test.com", List.of("b@test.com"), "Sujet", "Corps");
+            client.close();
+            assertFalse(result.isDelivered());
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.toList();
+        }
+        assertEquals(1, files.size());
+        String trace = Files.readString(files.get(0));
+        assertTrue(trace.contains("C: MAIL FROM: <s@test.com>"), trace);
+        assertTrue(trace.contains("C: RCPT TO: <b@test.com>"), trace);
+        assertTrue(trace.contains("S: 451 4.3.0 Try again later"), trace);
+        assertTrue(trace.contains("#: Échec de la transaction"), trace);
+    }
+
+    /**
+     * Teste que la trace d'une longue session, vidée à la demande, est bornée et se termine par les derniers échanges.
+     */
+    @Test
+    public void testRingBuffer() throws Exception {
+        Path directory = Files.createTempDirectory("smtp-trace");
+        Path file;
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort());
+            client.connect();
+            // 20 e-mails de 50 destinataires : bien plus de lignes que la trace ne peut en garder
+            for (int i = 0; i < 20; i++) {
+                int first = i * 50;
+                client.sendEmail("s@test.com", IntStream.range(first, first + 50)
+                        .mapToObj(j -> "r" + j + "@test.com").toList(), "Sujet", "Corps");
+            }
+            file = client.dumpTrace(directory);
+            client.close();
+        }
+
+        String trace = Files.readString(file);
+        // Les premiers échanges ont été écrasés : ni l'accueil ni les premiers destinataires ne restent
+        assertFalse(trace.contains("S: 220"), "L'accueil doit avoir été écrasé");
+        assertFalse(trace.contains("<r0@test.com>"));
+        assertTrue(trace.contains("C: RCPT TO: <r999@test.com>"));
+        assertTrue(trace.length() < 2 * SessionTrace.DEFAULT_CAPACITY, "La trace doit rester bornée");
+        // Chaque ligne est complète : le plus ancien enregistrement n'est pas coupé
+        for (String line : trace.split("\n")) {
+            assertTrue(line.matches("\\S+ [CS#]: .*"), line);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import dai.network.SmtpReply;
+import dai.network.SmtpReplyParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour SmtpReplyParser.
+ * Teste l'analyse des réponses SMTP simples, multi-lignes et fragmentées.
+ */
+public class SmtpReplyParserTest {
+
+    /**
+     * Teste la lecture d'une réponse sur une seule ligne avec un code de statut étendu.
+     */
+    @Test
+    public void testSingleLineReplyWithEnhancedCode() throws IOException {
+        SmtpReply reply = new SmtpReplyParser().read(stream("550 5.1.1 User unknown\r\n"), new SmtpReply());
+
+        assertEquals(550, reply.getCode());
+        assertTrue(reply.isPermanentFailure());
+        assertEquals("5.1.1", reply.getEnhancedCode());
+        assertEquals(1, reply.getLineCount());
+        assertEquals("5.1.1 User unknown", reply.getLine(0));
+    }
+
+    /**
+     * Teste la lecture d'une réponse multi-lignes à EHLO et la recherche d'extensions.
+     */
+    @Test
+    public void testMultiLineEhloReply() throws IOException {
+        SmtpReply reply = new SmtpReplyParser().read(
+                stream("250-mail.example.com\r\n250-SIZE 10240000\r\n250-PIPELINING\r\n250 CHUNKING\r\n"), new SmtpReply());
+
+        assertEquals(250, reply.getCode());
+        assertEquals(4, reply.getLineCount());
+        assertFalse(reply.hasEnhancedCode());
+        assertTrue(reply.hasKeyword("pipelining"));
+        assertTrue(reply.hasKeyword("CHUNKING"));
+        assertFalse(reply.hasKeyword("8BITMIME"));
+        assertEquals("SIZE 10240000", reply.getLine(1));
+    }
+
+    /**
+     * Teste la lecture de réponses successives avec la même instance réutilisée.
+     * Vérifie que les octets lus au-delà d'une réponse sont conservés pour la suivante.
+     */
+    @Test
+    public void testConsecutiveRepliesReuseInstance() throws IOException {
+        SmtpReplyParser parser = new SmtpReplyParser();
+        SmtpReply reply = new SmtpReply();
+        ByteArrayInputStream in = stream("250 2.1.0 Ok\r\n452 4.5.3 Too many recipients\r\n354 go ahead\r\n");
+
+        assertEquals(250, parser.read(in, reply).getCode());
+        assertEquals(452, parser.read(in, reply).getCode());
+        assertTrue(reply.isTransientFailure());
+        assertEquals("4.5.3", reply.getEnhancedCode());
+        assertEquals(354, parser.read(in, reply).getCode());
+        assertTrue(reply.isIntermediate());
+        assertFalse(reply.hasEnhancedCode());
+    }
+
+    /**
+     * Teste une réponse reçue en plusieurs morceaux, comme avec un canal non bloquant.
+     */
+    @Test
+    public void testFragmentedReply() throws IOException {
+        SmtpReplyParser parser = new SmtpReplyParser();
+        SmtpReply reply = new SmtpReply();
+
+        assertFalse(parser.consume(buffer("220-first li"), reply));
+        assertFalse(parser.consume(buffer("ne\r\n220 sec"), reply));
+        assertTrue(parser.consume(buffer("ond line\r\n"), reply));
+        assertEquals(220, reply.getCode());
+        assertEquals("first line", reply.getLine(0));
+        assertEquals("second line", reply.getLine(1));
+    }
+
+    /**
+     * Teste le rejet d'une ligne sans code de réponse valide.
+     */
+    @Test
+    public void testInvalidReply() {
+        assertThrows(IOException.class, () -> new SmtpReplyParser().read(stream("hello\r\n"), new SmtpReply()));
+        assertThrows(IOException.class, () -> new SmtpReplyParser().read(stream("250-a\r\n251 b\r\n"), new SmtpReply()));
+        assertThrows(IOException.class, () -> new SmtpReplyParser().read(stream("250-incomplete\r\n"), new SmtpReply()));
+    }
+
+    /**
+     * Teste qu'une ligne de plus de 512 octets, ou une réponse sans fin, est refusée au lieu d'être accumulée,
+     * et qu'une ligne de longueur maximale est acceptée.
+     */
+    @Test
+    public void testReplyLengthLimits() throws IOException {
+        String longest = "250 " + "x".repeat(506) + "\r\n";
+        assertEquals(250, new SmtpReplyParser().read(stream(longest), new SmtpReply()).getCode());
+
+        SmtpReplyParser parser = new SmtpReplyParser();
+        SmtpReply reply = new SmtpReply();
+        assertThrows(IOException.class, () -> parser.consume(buffer("250 " + "x".repeat(507) + "\r\n"), reply));
+        // Après l'erreur, la réponse suivante est lue normalement
+        assertTrue(parser.consume(buffer("221 Bye\r\n"), reply));
+        assertEquals("Bye", reply.getLine(0));
+
+        String endless = "250-" + "x".repeat(500) + "\r\n";
+        assertThrows(IOException.class, () -> new SmtpReplyParser().read(stream(endless.repeat(100)), new SmtpReply()));
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
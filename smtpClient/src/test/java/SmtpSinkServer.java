@@ -0,0 +1,486 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serveur SMTP de test, non bloquant, qui accepte les messages sans les conserver.
+ * Il écoute sur un port local libre et se configure avant le démarrage :
+ * extensions annoncées, délai de réponse par commande, réponses d'erreur injectées
+ * et nombre maximal de destinataires par transaction.
+ * <p>
+ * Toutes les connexions sont servies par un seul thread : le serveur ne limite pas le débit
+ * d'un client local et permet de mesurer celui-ci sans réseau.
+ */
+public class SmtpSinkServer implements AutoCloseable {
+    private static final byte[] END_OF_DATA = {'\r', '\n', '.', '\r', '\n'};
+
+    /**
+     * Réponse injectée pour une commande sur N.
+     */
+    private record Injection(int every, String reply) {
+    }
+
+    private final List<String> extensions = new ArrayList<>();
+    private final Map<String, Long> latencies = new HashMap<>();
+    private final Map<String, Injection> injections = new HashMap<>();
+    private final Map<String, AtomicLong> commandCounts = new HashMap<>();
+    private int maxRecipients = Integer.MAX_VALUE;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong recipients = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Ajoute des extensions annoncées en réponse à EHLO (ex. PIPELINING, CHUNKING).
+     *
+     * @param keywords Les lignes d'extension.
+     * @return Le serveur.
+     */
+    public SmtpSinkServer withExtensions(String... keywords) {
+        extensions.addAll(List.of(keywords));
+        return this;
+    }
+
+    /**
+     * Retarde la réponse à une commande.
+     *
+     * @param command Le verbe de la commande (MAIL, RCPT, DATA, BDAT), ou « . » pour la fin du contenu.
+     * @param millis Le délai en millisecondes.
+     * @return Le serveur.
+     */
+    public SmtpSinkServer withLatency(String command, long millis) {
+        latencies.put(command, TimeUnit.MILLISECONDS.toNanos(millis));
+        return this;
+    }
+
+    /**
+     * Répond par une erreur à une commande sur N.
+     *
+     * @param command Le verbe de la commande, ou « . » pour la fin du contenu.
+     * @param every La fréquence : 1 pour toutes les commandes, 3 pour une sur trois.
+     * @param reply La réponse, par exemple « 451 4.7.1 Try again later ».
+     * @return Le serveur.
+     */
+    public SmtpSinkServer withReply(String command, int every, String reply) {
+        injections.put(command, new Injection(every, reply));
+        return this;
+    }
+
+    /**
+     * Refuse les destinataires au-delà d'un nombre par transaction avec 452.
+     *
+     * @param max Le nombre maximal de destinataires.
+     * @return Le serveur.
+     */
+    public SmtpSinkServer withMaxRecipients(int max) {
+        maxRecipients = max;
+        return this;
+    }
+
+    /**
+     * Démarre le serveur sur un port local libre.
+     *
+     * @return Le serveur.
+     * @throws IOException Si le port ne peut pas être ouvert.
+     */
+    public SmtpSinkServer start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::loop, "smtp-sink");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Boucle d'événements : accepte les connexions, lit les commandes et écrit les réponses arrivées à échéance.
+     */
+    private void loop() {
+        List<Connection> delayed = new ArrayList<>();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                long timeout = 0;
+                for (Connection connection : delayed) {
+                    long wait = connection.nextDue() - now;
+                    if (wait > 0) {
+                        timeout = timeout == 0 ? wait : Math.min(timeout, wait);
+                    }
+                }
+                if (timeout > 0) {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
+                } else if (delayed.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Connection connection) {
+                            connection.close();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                delayed.clear();
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection && key.isValid()) {
+                        try {
+                            connection.flush();
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                        if (connection.hasPending()) {
+                            delayed.add(connection);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            // Les réponses d'un lot partent sans attendre l'acquittement des précédentes
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.incrementAndGet();
+            connection.reply("220 sink ready", null);
+        }
+    }
+
+    /**
+     * Décide de la réponse à une commande : réponse injectée une fois sur N, sinon la réponse normale.
+     *
+     * @param command Le verbe de la commande.
+     * @param normal La réponse normale.
+     * @return La réponse à envoyer.
+     */
+    private String decide(String command, String normal) {
+        Injection injection = injections.get(command);
+        if (injection == null) {
+            return normal;
+        }
+        long count = commandCounts.computeIfAbsent(command, c -> new AtomicLong()).incrementAndGet();
+        return count % injection.every() == 0 ? injection.reply() : normal;
+    }
+
+    /**
+     * Attend que le serveur ait accepté un nombre de messages.
+     *
+     * @param count Le nombre de messages attendu.
+     * @param timeoutMillis Le délai maximal en millisecondes.
+     * @return Vrai si le nombre a été atteint.
+     * @throws InterruptedException Si l'attente est interrompue.
+     */
+    public boolean awaitMessages(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (messages.get() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Connexion d'un client, menée comme une machine à états.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        private final StringBuilder line = new StringBuilder();
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private final ArrayDeque<Long> pendingDue = new ArrayDeque<>();
+        private SelectionKey key;
+        private long lastDue;
+        private boolean inData;
+        private int endMatch;
+        private long chunkRemaining;
+        private boolean lastChunk;
+        private boolean inTransaction;
+        private int transactionRecipients;
+        private boolean closeAfterReply;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                close();
+                return;
+            }
+            bytes.addAndGet(count);
+            readBuffer.flip();
+            while (readBuffer.hasRemaining() && channel.isOpen()) {
+                if (chunkRemaining > 0) {
+                    int skip = (int) Math.min(chunkRemaining, readBuffer.remaining());
+                    readBuffer.position(readBuffer.position() + skip);
+                    chunkRemaining -= skip;
+                    if (chunkRemaining == 0) {
+                        endChunk();
+                    }
+                } else if (inData) {
+                    byte b = readBuffer.get();
+                    if (b == END_OF_DATA[endMatch]) {
+                        endMatch++;
+                    } else {
+                        endMatch = b == '\r' ? 1 : 0;
+                    }
+                    if (endMatch == END_OF_DATA.length) {
+                        inData = false;
+                        endMessage(".");
+                    }
+                } else {
+                    char c = (char) (readBuffer.get() & 0xFF);
+                    if (c == '\n') {
+                        int length = line.length();
+                        String command = length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+                        line.setLength(0);
+                        onCommand(command);
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+            readBuffer.compact();
+        }
+
+        private void onCommand(String command) {
+            String verb = (command.length() >= 4 ? command.substring(0, 4) : command).toUpperCase(Locale.ROOT);
+            switch (verb) {
+                case "EHLO" -> {
+                    StringBuilder sb = new StringBuilder("250");
+                    sb.append(extensions.isEmpty() ? " " : "-").append("sink");
+                    for (int i = 0; i < extensions.size(); i++) {
+                        sb.append("\r\n250").append(i == extensions.size() - 1 ? " " : "-").append(extensions.get(i));
+                    }
+                    reply(sb.toString(), "EHLO");
+                }
+                case "HELO", "NOOP" -> reply("250 Ok", verb);
+                case "MAIL" -> {
+                    transactionRecipients = 0;
+                    String response = decide("MAIL", "250 2.1.0 Ok");
+                    inTransaction = response.startsWith("2");
+                    reply(response, "MAIL");
+                }
+                case "RCPT" -> {
+                    String response = !inTransaction ? "503 5.5.1 Need MAIL command"
+                            : ++transactionRecipients > maxRecipients ? "452 4.5.3 Too many recipients"
+                            : decide("RCPT", "250 2.1.5 Ok");
+                    if (response.startsWith("2")) {
+                        recipients.incrementAndGet();
+                    } else if (inTransaction) {
+                        transactionRecipients--;
+                    }
+                    reply(response, "RCPT");
+                }
+                case "DATA" -> {
+                    String response = transactionRecipients == 0 ? "554 5.5.1 No valid recipients"
+                            : decide("DATA", "354 End data with <CR><LF>.<CR><LF>");
+                    if (response.startsWith("354")) {
+                        inData = true;
+                        // Le CRLF de la commande DATA compte pour la fin d'un message vide
+                        endMatch = 2;
+                    }
+                    reply(response, "DATA");
+                }
+                case "BDAT" -> {
+                    String[] parts = command.split(" ");
+                    chunkRemaining = Long.parseLong(parts[1]);
+                    lastChunk = parts.length > 2 && parts[2].equalsIgnoreCase("LAST");
+                    if (chunkRemaining == 0) {
+                        endChunk();
+                    }
+                }
+                case "RSET" -> {
+                    inTransaction = false;
+                    transactionRecipients = 0;
+                    reply("250 2.0.0 Ok", "RSET");
+                }
+                case "QUIT" -> {
+                    closeAfterReply = true;
+                    reply("221 2.0.0 Bye", "QUIT");
+                }
+                default -> reply("500 5.5.2 Command not recognized", null);
+            }
+        }
+
+        private void endChunk() {
+            if (lastChunk) {
+                endMessage("BDAT");
+            } else {
+                reply(decide("BDAT", "250 2.0.0 Chunk accepted"), "BDAT");
+            }
+        }
+
+        private void endMessage(String command) {
+            String response = transactionRecipients == 0 ? "554 5.5.1 No valid recipients" : decide(".", "250 2.0.0 Ok queued");
+            if (response.startsWith("2")) {
+                messages.incrementAndGet();
+            }
+            inTransaction = false;
+            transactionRecipients = 0;
+            reply(response, command);
+        }
+
+        /**
+         * Prépare une réponse, envoyée après le délai configuré pour la commande,
+         * sans jamais dépasser une réponse précédente de la même connexion.
+         *
+         * @param text La réponse, sans le CRLF final.
+         * @param command La commande à laquelle elle répond, pour son délai.
+         */
+        void reply(String text, String command) {
+            Long latency = command == null ? null : latencies.get(command);
+            long due = Math.max(lastDue, latency == null ? 0 : System.nanoTime() + latency);
+            lastDue = due;
+            pending.add(ByteBuffer.wrap((text + "\r\n").getBytes(StandardCharsets.US_ASCII)));
+            pendingDue.add(due);
+        }
+
+        boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        long nextDue() {
+            return pendingDue.isEmpty() ? Long.MAX_VALUE : pendingDue.peek();
+        }
+
+        void flush() throws IOException {
+            long now = System.nanoTime();
+            // Toutes les réponses arrivées à échéance partent en une seule écriture
+            int due = 0;
+            for (long time : pendingDue) {
+                if (time > now) {
+                    break;
+                }
+                due++;
+            }
+            if (due > 0) {
+                ByteBuffer[] buffers = new ByteBuffer[due];
+                int i = 0;
+                for (ByteBuffer buffer : pending) {
+                    if (i == due) {
+                        break;
+                    }
+                    buffers[i++] = buffer;
+                }
+                channel.write(buffers);
+                while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+                    pending.poll();
+                    pendingDue.poll();
+                }
+                if (due > 0 && buffers[due - 1].hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            if (pending.isEmpty() && closeAfterReply) {
+                close();
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Connexion déjà fermée par le client
+            }
+        }
+    }
+
+    // region Accessors
+
+    public int getPort() {
+        return ((InetSocketAddress) server.socket().getLocalSocketAddress()).getPort();
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getRecipients() {
+        return recipients.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    // endregion Accessors
+}
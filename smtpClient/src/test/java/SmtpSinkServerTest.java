@@ -0,0 +1,214 @@
+import dai.dispatch.AdaptiveSendController;
+import dai.dispatch.CampaignDispatcher;
+import dai.dispatch.CampaignReport;
+import dai.dispatch.NioCampaignDispatcher;
+import dai.dispatch.Relay;
+import dai.dispatch.RelayPool;
+import dai.dispatch.RetryScheduler;
+import dai.model.Attachment;
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.ContentException;
+import dai.network.DeliveryResult;
+import dai.network.SMTPClient;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests d'intégration du client contre SmtpSinkServer, sans réseau ni serveur externe.
+ * Teste chaque combinaison d'extensions, les erreurs injectées et le débit des deux moteurs.
+ */
+public class SmtpSinkServerTest {
+    private static final String HOST = "127.0.0.1";
+    private static final Message MESSAGE = new Message("Sujet été", "Corps du message\r\n.\r\nligne après un point");
+
+    private static Iterator<Email> emails(int count, int recipients) {
+        return IntStream.range(0, count).mapToObj(i -> new Email("sender" + i + "@test.com",
+                IntStream.range(0, recipients).mapToObj(j -> "r" + i + "-" + j + "@test.com").toList(), MESSAGE, i)).iterator();
+    }
+
+    /**
+     * Teste l'envoi de plusieurs messages sur une même session avec chaque combinaison d'extensions.
+     */
+    @Test
+    public void testExtensions() throws Exception {
+        for (String[] extensions : List.of(new String[]{}, new String[]{"PIPELINING"}, new String[]{"CHUNKING"},
+                new String[]{"PIPELINING", "CHUNKING"})) {
+            try (SmtpSinkServer server = new SmtpSinkServer().withExtensions(extensions).start()) {
+                SMTPClient client = new SMTPClient(HOST, server.getPort());
+                client.connect();
+                for (int i = 0; i < 5; i++) {
+                    DeliveryResult result = client.sendEmail("a@test.com", List.of("b@test.com", "c@test.com"),
+                            MESSAGE.getSubject(), MESSAGE.getBody());
+                    assertTrue(result.isDelivered(), String.join(",", extensions));
+                }
+                client.close();
+                assertEquals(5, server.getMessages(), String.join(",", extensions));
+                assertEquals(10, server.getRecipients());
+            }
+        }
+    }
+
+    /**
+     * Teste le report des destinataires au-delà de la limite du serveur et les refus définitifs injectés.
+     */
+    @Test
+    public void testRejectedRecipients() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").withMaxRecipients(3)
+                .withReply("RCPT", 2, "550 5.1.1 No such user").start()) {
+            SMTPClient client = new SMTPClient(HOST, server.getPort());
+            client.connect();
+            List<String> recipients = Stream.of("a", "b", "c", "d", "e", "f").map(r -> r + "@test.com").toList();
+            DeliveryResult result = client.sendEmail("s@test.com", recipients, "Sujet", "Corps");
+            client.close();
+
+            // Le destinataire reporté par 452 passe dans une seconde transaction, où il est refusé à son tour
+            assertTrue(result.isDelivered());
+            assertEquals(List.of("a@test.com", "c@test.com", "e@test.com"), result.getAcceptedRecipients());
+            assertTrue(result.getRejectedRecipients().get("b@test.com").startsWith("550"));
+            assertTrue(result.getRejectedRecipients().get("f@test.com").startsWith("550"));
+            assertEquals(250, result.getFinalReplyCode());
+        }
+    }
+
+    /**
+     * Teste que les refus temporaires injectés sont retentés jusqu'à la livraison de tous les messages.
+     */
+    @Test
+    public void testTransientFailuresRetried() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING")
+                .withReply("MAIL", 4, "451 4.7.1 Try again later").withLatency(".", 2).start()) {
+            CampaignReport report;
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(HOST, server.getPort(), 4,
+                    AdaptiveSendController.fixed(4), new RetryScheduler(5, 10, 50))) {
+                dispatcher.open();
+                report = dispatcher.dispatch(emails(200, 2));
+            }
+            assertEquals(200, report.getDeliveredCount());
+            assertEquals(0, report.getFailedCount());
+            assertTrue(report.getRetryCount() > 0);
+            assertEquals(200, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste qu'une erreur inattendue, à la mise en forme d'un e-mail ou chez le destinataire des issues,
+     * fait échouer l'e-mail concerné sans bloquer la fin de la campagne.
+     */
+    @Test
+    public void testUnexpectedErrorsDoNotStall() throws Exception {
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            List<Email> emails = new ArrayList<>();
+            emails(20, 1).forEachRemaining(emails::add);
+            // Sans sujet, la mise en forme du contenu échoue avec une NullPointerException
+            emails.add(10, new Email("broken@test.com", List.of("r@test.com"), null, "Corps"));
+            CampaignReport report = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                try (CampaignDispatcher dispatcher = new CampaignDispatcher(HOST, server.getPort(), 4)) {
+                    dispatcher.open();
+                    return dispatcher.dispatch(emails.iterator(), outcome -> {
+                        throw new IllegalStateException("Destinataire des issues en erreur");
+                    });
+                }
+            });
+            assertEquals(20, report.getDeliveredCount());
+            assertEquals(1, report.getFailedCount());
+            assertEquals(20, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste qu'une pièce jointe illisible fait échouer définitivement ses e-mails, sans nouvelle tentative
+     * ni échec imputé au relais, et que les sessions interrompues sont rétablies pour les e-mails suivants.
+     */
+    @Test
+    public void testUnreadableAttachmentIsPermanent() throws Exception {
+        Path missing = Files.createTempFile("attachment", ".bin");
+        Files.delete(missing);
+        Message broken = new Message("Sujet", "Corps", List.of(Attachment.of(missing)));
+        List<Email> emails = new ArrayList<>();
+        emails(20, 1).forEachRemaining(emails::add);
+        for (int i = 0; i < 30; i++) {
+            emails.add(Math.min(2 * i, emails.size()), new Email("broken@test.com", List.of("b" + i + "@test.com"), broken, 100 + i));
+        }
+
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            Relay relay = new Relay(HOST, server.getPort());
+            RelayPool relays = new RelayPool(List.of(relay));
+            CampaignReport report;
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(relays, 4, AdaptiveSendController.fixed(4),
+                    new RetryScheduler(5, 10, 50))) {
+                dispatcher.open();
+                report = dispatcher.dispatch(emails.iterator());
+            }
+            assertEquals(20, report.getDeliveredCount());
+            assertEquals(30, report.getFailedCount());
+            assertEquals(0, report.getRetryCount());
+            assertTrue(report.getFailures().stream().allMatch(outcome -> outcome.getError() instanceof ContentException));
+            assertTrue(relays.isHealthy(relay));
+            assertEquals(20, server.getMessages());
+        }
+    }
+
+    /**
+     * Teste l'envoi par le moteur non bloquant de messages avec une pièce jointe plus grande que ses tampons,
+     * transmise depuis le fichier encodé en plusieurs écritures.
+     */
+    @Test
+    public void testNonBlockingAttachments() throws Exception {
+        int count = 20;
+        byte[] data = new byte[1 << 20];
+        new Random(42).nextBytes(data);
+        Path file = Files.createTempFile("attachment", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, data);
+        Message message = new Message("Sujet", "Corps\r\n.\r\nligne après un point", List.of(Attachment.of(file)));
+        Iterator<Email> emails = IntStream.range(0, count)
+                .mapToObj(i -> new Email("sender@test.com", List.of("r" + i + "@test.com"), message, i)).iterator();
+
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING").start()) {
+            CampaignReport report = new NioCampaignDispatcher(HOST, server.getPort(), 4).dispatch(emails);
+            assertEquals(count, report.getDeliveredCount());
+            assertEquals(count, server.getMessages());
+            // Chaque message transporte la pièce jointe encodée en base64, soit au moins 4/3 de sa taille
+            assertTrue(server.getBytes() > count * (data.length / 3L * 4));
+        }
+    }
+
+    /**
+     * Teste le débit des deux moteurs sur un grand nombre de messages.
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        int count = 20_000;
+        try (SmtpSinkServer server = new SmtpSinkServer().withExtensions("PIPELINING", "CHUNKING").start()) {
+            CampaignReport nio = new NioCampaignDispatcher(HOST, server.getPort(), 16).dispatch(emails(count, 3));
+            assertEquals(count, nio.getDeliveredCount());
+            assertEquals(count, server.getMessages());
+
+            CampaignReport blocking;
+            try (CampaignDispatcher dispatcher = new CampaignDispatcher(HOST, server.getPort(), 16)) {
+                dispatcher.open();
+                blocking = dispatcher.dispatch(emails(count, 3));
+            }
+            assertEquals(count, blocking.getDeliveredCount());
+            assertEquals(2L * count, server.getMessages());
+            assertEquals(6L * count, server.getRecipients());
+
+            List<String> rates = new ArrayList<>();
+            rates.add(String.format("NIO : %.0f messages/s", nio.getMessagesPerSecond()));
+            rates.add(String.format("bloquant : %.0f messages/s", blocking.getMessagesPerSecond()));
+            System.out.println("Débit contre SmtpSinkServer : " + String.join(", ", rates));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import dai.model.Email;
+import dai.model.Message;
+import dai.network.DeliveryResult;
+import dai.network.NioSmtpEngine;
+import dai.network.SMTPClient;
+import dai.network.SmtpTimeouts;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour les délais d'attente des sessions SMTP.
+ * Teste qu'un serveur qui accepte la connexion sans jamais répondre fait échouer la session
+ * au lieu de la bloquer, avec le client bloquant comme avec le moteur non bloquant.
+ */
+public class SmtpTimeoutTest {
+    private static final SmtpTimeouts TIMEOUTS = new SmtpTimeouts(1000, 300);
+
+    /**
+     * Serveur muet : accepte les connexions et les garde ouvertes sans rien envoyer.
+     */
+    private static final class SilentServer implements AutoCloseable {
+        private final ServerSocket server = new ServerSocket(0);
+        private final List<Socket> accepted = new ArrayList<>();
+        private final Thread thread = Thread.ofVirtual().start(this::accept);
+
+        SilentServer() throws IOException {
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    synchronized (accepted) {
+                        accepted.add(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // Serveur fermé
+            }
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (accepted) {
+                for (Socket socket : accepted) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Teste que le client bloquant abandonne l'attente de l'accueil après le délai de lecture.
+     */
+    @Test
+    public void testBlockingClientReadTimeout() throws Exception {
+        try (SilentServer server = new SilentServer()) {
+            SMTPClient client = new SMTPClient("127.0.0.1", server.getPort(), 0, SMTPClient.DEFAULT_MAX_IN_FLIGHT, null,
+                    TIMEOUTS);
+            assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> assertThrows(SocketTimeoutException.class, client::connect));
+            assertFalse(client.isConnected());
+        }
+    }
+
+    /**
+     * Teste que le moteur non bloquant fait échouer les sessions muettes et signale leurs e-mails en erreur.
+     */
+    @Test
+    public void testNonBlockingEngineReadTimeout() throws Exception {
+        Message message = new Message("Sujet", "Corps");
+        List<Email> emails = List.of(new Email("s@test.com", List.of("a@test.com"), message, 0),
+                new Email("s@test.com", List.of("b@test.com"), message, 1));
+        List<IOException> errors = new ArrayList<>();
+        try (SilentServer server = new SilentServer()) {
+            NioSmtpEngine engine = new NioSmtpEngine(List.of(new InetSocketAddress("127.0.0.1", server.getPort())), 2,
+                    "localhost", TIMEOUTS);
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> engine.run(emails.iterator(), new NioSmtpEngine.Listener() {
+                @Override
+                public void onCompleted(Email email, DeliveryResult result) {
+                    fail("Aucune transaction ne doit aboutir");
+                }
+
+                @Override
+                public void onFailed(Email email, IOException error) {
+                    errors.add(error);
+                }
+            }));
+        }
+        // Les sessions ont échoué avant de prendre un e-mail : le moteur signale ensuite tous les e-mails restants
+        assertEquals(2, errors.size());
+    }
+}
@@ -0,0 +1,83 @@
+import dai.dispatch.RetryScheduler;
+import dai.dispatch.TimingWheel;
+import dai.model.Email;
+import dai.model.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Classe de tests pour TimingWheel et RetryScheduler.
+ * Teste l'expiration des échéances à leur tic, y compris lointaines, et l'épuisement des nouvelles tentatives.
+ */
+public class TimingWheelTest {
+
+    /**
+     * Teste que chaque échéance expire exactement au tic qui la contient, quelle que soit la roue où elle est rangée.
+     */
+    @Test
+    public void testExpiresOnTime() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 1_000);
+        Random random = new Random(5);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            // Jusqu'à une dizaine d'heures : au-delà des quatre roues de 10 ms
+            long deadline = 1_000 + (long) Math.pow(random.nextDouble(), 4) * 400_000_000L;
+            wheel.schedule(deadline, deadline);
+        }
+        assertEquals(count, wheel.size());
+
+        List<Long> expired = new ArrayList<>();
+        long now = 1_000;
+        while (wheel.size() > 0) {
+            now += 1 + random.nextInt(50_000);
+            long current = now;
+            wheel.advance(now, deadline -> {
+                assertTrue(deadline <= current, "expiration anticipée : " + deadline);
+                expired.add(deadline);
+            });
+            for (Long deadline : expired) {
+                assertTrue(deadline > current - 50_010, "expiration tardive : " + deadline);
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Teste qu'une échéance déjà passée expire au prochain avancement.
+     */
+    @Test
+    public void testPastDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 5_000);
+        wheel.schedule("passée", 0);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(5_000, expired::add);
+        assertEquals(List.of("passée"), expired);
+    }
+
+    /**
+     * Teste que les tentatives sont reprises après leur délai, puis épuisées.
+     */
+    @Test
+    public void testRetriesExhausted() throws InterruptedException {
+        RetryScheduler retries = new RetryScheduler(2, 20, 40);
+        Email email = new Email("a@test.com", List.of("b@test.com"), new Message("Sujet", "Corps"), 0);
+
+        assertTrue(retries.schedule(email, 0));
+        assertNull(retries.poll());
+        Thread.sleep(40);
+        RetryScheduler.Retry retry = retries.poll();
+        assertNotNull(retry);
+        assertSame(email, retry.email());
+        assertEquals(1, retry.attempt());
+
+        assertTrue(retries.schedule(email, retry.attempt()));
+        assertFalse(retries.schedule(email, 2));
+        assertEquals(1, retries.getPendingCount());
+        assertFalse(RetryScheduler.none().schedule(email, 0));
+    }
+}